@@ -21,12 +21,15 @@ CREATE TABLE Movie (
 
 CREATE TABLE Venue (
 	`venue_no` SMALLINT UNSIGNED NOT NULL, -- Venue number, e.g. Venue 17
+	`site_no` SMALLINT UNSIGNED NOT NULL DEFAULT 1, -- Cinema site (within the chain) that this venue belongs to.
 	`no_of_rows` TINYINT UNSIGNED NOT NULL DEFAULT 6, -- Number of seat rows at venue.
 	`no_of_cols` TINYINT UNSIGNED NOT NULL DEFAULT 8, -- Number of seat columns at venue.
 	CHECK(`no_of_rows` > 0), -- Venue must have at least 1 seat row.
 	CHECK(`no_of_cols` > 0), -- Venue must have at least 1 seat column.
 	CHECK(`venue_no` > 0), -- Venue number cannot be zero.
-	PRIMARY KEY(`venue_no`)
+	CHECK(`site_no` > 0), -- Site number cannot be zero.
+	PRIMARY KEY(`venue_no`),
+	INDEX(`site_no`) -- Kiosks only load the venues of their own site.
 );
 
 CREATE TABLE Screening (
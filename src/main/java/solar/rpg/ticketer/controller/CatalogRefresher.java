@@ -0,0 +1,203 @@
+package solar.rpg.ticketer.controller;
+
+import solar.rpg.ticketer.data.Database;
+import solar.rpg.ticketer.models.Movie;
+import solar.rpg.ticketer.models.Screening;
+import solar.rpg.ticketer.models.Venue;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks up changes to the catalog while the kiosk is running: movies, venues, and screenings that have been added,
+ * modified, or removed in the database, and screenings that have just become active, e.g. at midnight.
+ * <p>
+ * Every so often, the version of each catalog row is read, which is cheap compared to loading the rows. The versions are
+ * compared to those of the last refresh, and only the rows that have changed are loaded. The changes are then handed to
+ * DataController to be applied all at once. A refresh is also made as soon as the next screening becomes active,
+ * rather than waiting for the next regular refresh.
+ * <p>
+ * A venue's layout determines what its seat IDs mean, so a venue whose layout has changed, or a screening that has moved
+ * to a venue with a different layout, is left as it is until the next restart.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see DataController
+ * @since 0.1
+ */
+final class CatalogRefresher {
+
+    /**
+     * The changes that a refresh has found, ready to be applied.
+     */
+    static final class Changes {
+        final Map<String, Movie> movies = new HashMap<>();
+        final Map<Integer, Venue> venues = new HashMap<>();
+        final Map<Integer, Screening> screenings = new HashMap<>();
+        final Set<String> removedMovies = new HashSet<>();
+        final Set<Integer> removedVenues = new HashSet<>();
+        final Set<Integer> removedScreenings = new HashSet<>();
+
+        /**
+         * @return True, if nothing has changed.
+         */
+        boolean isEmpty() {
+            return movies.isEmpty() && venues.isEmpty() && screenings.isEmpty()
+                    && removedMovies.isEmpty() && removedVenues.isEmpty() && removedScreenings.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d movies, %d venues and %d screenings changed; %d movies, %d venues and %d screenings removed",
+                    movies.size(), venues.size(), screenings.size(), removedMovies.size(), removedVenues.size(), removedScreenings.size());
+        }
+    }
+
+    private final DataController controller;
+    private final Database database;
+
+    // Versions of the catalog rows as of the last refresh. Only touched by the refresh thread, after construction.
+    private Map<String, Long> movieVersions;
+    private Map<Integer, Long> venueVersions;
+    private Map<Integer, Long> screeningVersions;
+
+    private final ScheduledExecutorService refresher;
+
+    // The refresh that is made when the next screening becomes active.
+    private ScheduledFuture<?> activation;
+
+    /**
+     * Reads the current versions of the catalog. This should be done before the catalog is loaded, so that anything
+     * that changes while it is being loaded is picked up by the first refresh.
+     *
+     * @param controller The controller to apply changes to.
+     * @param database   The database to read changes from.
+     */
+    CatalogRefresher(DataController controller, Database database) throws SQLException {
+        this.controller = controller;
+        this.database = database;
+        movieVersions = new HashMap<>();
+        venueVersions = new HashMap<>();
+        screeningVersions = new HashMap<>();
+        database.loadCatalogVersions(movieVersions, venueVersions, screeningVersions);
+        refresher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "catalog-refresh");
+            // The refresh thread should not keep the program alive once the window has closed.
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts refreshing the catalog regularly.
+     *
+     * @param periodSeconds Seconds between refreshes.
+     */
+    void start(long periodSeconds) {
+        refresher.scheduleWithFixedDelay(this::refresh, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        refresher.execute(this::scheduleActivation);
+    }
+
+    /**
+     * Finds and applies whatever has changed since the last refresh.
+     */
+    private void refresh() {
+        try {
+            Map<String, Long> movies = new HashMap<>();
+            Map<Integer, Long> venues = new HashMap<>();
+            Map<Integer, Long> screenings = new HashMap<>();
+            database.loadCatalogVersions(movies, venues, screenings);
+
+            Changes changes = new Changes();
+            Set<String> changedMovies = changed(movieVersions, movies, changes.removedMovies);
+            Set<Integer> changedVenues = changed(venueVersions, venues, changes.removedVenues);
+            Set<Integer> changedScreenings = changed(screeningVersions, screenings, changes.removedScreenings);
+
+            // Loaded screenings refer to the old models of the movies and venues that have changed, so they must be re-created too.
+            for (Screening screening : controller.getScreenings())
+                if (screenings.containsKey(screening.getID()) && (changedMovies.contains(screening.getMovie().getName())
+                        || changedVenues.contains(screening.getVenue().getVenueNum())))
+                    changedScreenings.add(screening.getID());
+
+            database.loadMovies(changes.movies, changedMovies);
+            database.loadVenues(changes.venues, changedVenues);
+            changes.venues.values().removeIf(venue -> {
+                Venue current = controller.findVenueByID(venue.getVenueNum());
+                if (current == null || sameLayout(current, venue)) return false;
+                System.out.println(String.format(">> WARNING!! The layout of venue #%d has changed, and will be used after a restart.", venue.getVenueNum()));
+                return true;
+            });
+            database.loadScreenings(changes.screenings, changedScreenings,
+                    name -> changes.movies.containsKey(name) ? changes.movies.get(name) : controller.findMovieByTitle(name),
+                    venueNum -> changes.venues.containsKey(venueNum) ? changes.venues.get(venueNum) : controller.findVenueByID(venueNum));
+            Set<Integer> kept = new HashSet<>();
+            changes.screenings.values().removeIf(screening -> {
+                Screening current = controller.findScreeningByID(screening.getID());
+                if (current == null || sameLayout(current.getVenue(), screening.getVenue())) return false;
+                System.out.println(String.format(">> WARNING!! Screening #%d has moved to a venue with a different layout, and will be moved after a restart.", screening.getID()));
+                return kept.add(screening.getID());
+            });
+
+            // A changed screening that could not be loaded is no longer active, e.g. its start date was moved forward.
+            for (int ID : changedScreenings)
+                if (!changes.screenings.containsKey(ID) && !kept.contains(ID) && controller.findScreeningByID(ID) != null)
+                    changes.removedScreenings.add(ID);
+
+            if (!changes.isEmpty()) {
+                controller.applyCatalogChanges(changes);
+                System.out.println(String.format(">> Catalog refreshed: %s", changes));
+            }
+            movieVersions = movies;
+            venueVersions = venues;
+            screeningVersions = screenings;
+        } catch (SQLException | RuntimeException ex) {
+            // Try again at the next refresh, keeping the old versions so nothing is missed.
+            System.out.println(String.format(">> WARNING!! Unable to refresh the catalog: %s", ex));
+        }
+        scheduleActivation();
+    }
+
+    /**
+     * @param previous Versions as of the last refresh.
+     * @param current  Versions as of now.
+     * @param removed  Receives the keys that no longer exist.
+     * @param <K>      The type of the keys.
+     * @return The keys that are new, or whose versions are different.
+     */
+    private static <K> Set<K> changed(Map<K, Long> previous, Map<K, Long> current, Set<K> removed) {
+        Set<K> result = new HashSet<>();
+        current.forEach((key, version) -> {
+            if (!version.equals(previous.get(key))) result.add(key);
+        });
+        for (K key : previous.keySet())
+            if (!current.containsKey(key)) removed.add(key);
+        return result;
+    }
+
+    /**
+     * @return True, if two venues have the same layout, so that seat IDs mean the same seats in both.
+     */
+    private static boolean sameLayout(Venue first, Venue second) {
+        return first.getLayout().getEncoding().equals(second.getLayout().getEncoding());
+    }
+
+    /**
+     * Refreshes the catalog as soon as the next screening becomes active, instead of at the next regular refresh.
+     */
+    private void scheduleActivation() {
+        try {
+            Timestamp next = database.findNextScreeningStart();
+            if (activation != null) activation.cancel(false);
+            // Allow a second for the database's clock to agree that the screening has started.
+            if (next != null)
+                activation = refresher.schedule(this::refresh, Math.max(0, next.getTime() - System.currentTimeMillis()) + 1000, TimeUnit.MILLISECONDS);
+        } catch (SQLException | RuntimeException ex) {
+            System.out.println(String.format(">> WARNING!! Unable to find when the next screening starts: %s", ex));
+        }
+    }
+}
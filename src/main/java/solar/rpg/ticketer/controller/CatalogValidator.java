@@ -0,0 +1,104 @@
+package solar.rpg.ticketer.controller;
+
+import solar.rpg.ticketer.controller.index.TicketStore;
+import solar.rpg.ticketer.models.Movie;
+import solar.rpg.ticketer.models.Screening;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Finds overlapping screenings and out-of-range tickets in the loaded catalog.
+ * Screenings are grouped by movie, as only screenings of the same movie may not overlap.
+ * Each movie is then validated independently (and in parallel) with a single sweep over its screenings, sorted by start date.
+ * The sweep leaves behind an index of valid date ranges, which the ticket rows are then checked against in parallel.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see DataController
+ * @since 0.1
+ */
+final class CatalogValidator {
+
+    // Results of the most recent validation.
+    private final Set<Integer> overlapping;
+    private final ConcurrentHashMap<Integer, long[]> intervals;
+    private int[] outOfRange;
+
+    CatalogValidator() {
+        overlapping = ConcurrentHashMap.newKeySet();
+        intervals = new ConcurrentHashMap<>();
+        outOfRange = new int[0];
+    }
+
+    /**
+     * Validates the given screenings and tickets. Neither is modified.
+     *
+     * @param screenings The loaded screenings.
+     * @param tickets    The loaded tickets.
+     */
+    void validate(Collection<Screening> screenings, TicketStore tickets) {
+        long start = System.nanoTime();
+        overlapping.clear();
+        intervals.clear();
+
+        Map<Movie, List<Screening>> screeningsByMovie = screenings.stream().collect(Collectors.groupingBy(Screening::getMovie));
+        screeningsByMovie.values().parallelStream().forEach(this::sweep);
+        long swept = System.nanoTime();
+
+        // Tickets of removed screenings are left to the caller, as they are removed along with their screening.
+        // Otherwise, tickets outside of their screening's date range are invalid.
+        // The read lock is held by this thread, which keeps every row in place for the parallel workers too.
+        outOfRange = tickets.read(() -> IntStream.range(0, tickets.rows()).parallel().filter(row -> {
+            if (!tickets.isLive(row)) return false;
+            long[] interval = intervals.get(tickets.getScreeningID(row));
+            if (interval == null) return false;
+            long date = TimeUnit.MINUTES.toMillis(tickets.getMinute(row));
+            return date < interval[0] || date > interval[1];
+        }).toArray());
+
+        System.out.println(String.format(">>> Cross-validated %d screenings of %d movies in %.2fms, and %d tickets in %.2fms",
+                screenings.size(), screeningsByMovie.size(), (swept - start) / 1000000D, tickets.size(), (System.nanoTime() - swept) / 1000000D));
+    }
+
+    /**
+     * Finds overlapping screenings of a single movie, and indexes the date ranges of the valid ones.
+     *
+     * @param screenings All screenings of the movie.
+     */
+    private void sweep(List<Screening> screenings) {
+        // Sort by start date; ties are broken by ID so that the same screening is always kept.
+        Screening[] sorted = screenings.toArray(new Screening[0]);
+        Arrays.sort(sorted, Comparator.comparing(Screening::getStartDate).thenComparingInt(Screening::getID));
+
+        // Sweep through the screenings, remembering the latest end date of the ones that have been kept.
+        // A screening that starts before then overlaps with a kept screening, so it is removed (only one of the two).
+        long latestEnd = Long.MIN_VALUE;
+        for (Screening screening : sorted) {
+            long start = screening.getStartDate().getTime(), end = screening.getEndDate().getTime();
+            if (start < latestEnd) {
+                overlapping.add(screening.getID());
+                continue;
+            }
+            latestEnd = end;
+            intervals.put(screening.getID(), new long[]{start, end});
+        }
+    }
+
+    /**
+     * @return IDs of screenings that overlap with another screening of the same movie.
+     */
+    Set<Integer> getOverlapping() {
+        return overlapping;
+    }
+
+    /**
+     * @return Row numbers of tickets of valid screenings that are outside of their screening's date range.
+     */
+    int[] getOutOfRange() {
+        return outOfRange;
+    }
+}
@@ -1,19 +1,48 @@
 package solar.rpg.ticketer.controller;
 
+import solar.rpg.ticketer.controller.index.AdjacentSeatSearch;
+import solar.rpg.ticketer.controller.index.AvailabilityIndex;
+import solar.rpg.ticketer.controller.index.BestAvailable;
+import solar.rpg.ticketer.controller.index.CheckIns;
+import solar.rpg.ticketer.controller.index.FacetIndex;
+import solar.rpg.ticketer.controller.index.OccupancyIndex;
+import solar.rpg.ticketer.controller.index.OccupancyCubes;
+import solar.rpg.ticketer.controller.index.PopularityIndex;
+import solar.rpg.ticketer.controller.index.ScheduleIndex;
+import solar.rpg.ticketer.controller.index.SeatClaims;
+import solar.rpg.ticketer.controller.index.SortedScreenings;
+import solar.rpg.ticketer.controller.index.TicketCodes;
+import solar.rpg.ticketer.controller.index.TicketIndex;
+import solar.rpg.ticketer.controller.index.TicketStore;
+import solar.rpg.ticketer.controller.index.TicketTimeline;
+import solar.rpg.ticketer.controller.index.TitleIndex;
+import solar.rpg.ticketer.controller.index.UsernameIndex;
 import solar.rpg.ticketer.data.Configuration;
 import solar.rpg.ticketer.data.Database;
+import solar.rpg.ticketer.data.PartialDeleteException;
+import solar.rpg.ticketer.data.TicketWriter;
 import solar.rpg.ticketer.models.Movie;
 import solar.rpg.ticketer.models.Screening;
+import solar.rpg.ticketer.models.Showtime;
 import solar.rpg.ticketer.models.Ticket;
 import solar.rpg.ticketer.models.Venue;
+import solar.rpg.ticketer.models.VenueLayout;
 import solar.rpg.ticketer.views.MainView;
 
 import javax.swing.*;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
 import java.sql.SQLException;
 import java.sql.Timestamp;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -24,6 +53,10 @@ import java.util.stream.Collectors;
  * <li>Creating, removing, and maintaining ticket instances.</li>
  * <li>Performing miscellaneous calculation operations.</li>
  * </ul>
+ * <p>
+ * The controller is safe to use from several threads. The catalog is held in concurrent maps, and occupancy is read
+ * from copy-on-write snapshots, so reads never block. Bookings and cancellations of the same time slot are serialised
+ * by one of a fixed set of striped locks, so that claiming a seat is atomic without one global lock.
  *
  * @author Joshua Skinner
  * @version 1.0
@@ -31,10 +64,30 @@ import java.util.stream.Collectors;
  */
 public class DataController {
 
-    // Useful data formatters; re-usable so initialise them once.
-    private static final DateFormat DAY_OF_WEEK_FORMATTER = new SimpleDateFormat("EEEE");
-    private static final DateFormat MONTH_FORMATTER = new SimpleDateFormat("MMMM");
-    private static final DateFormat TIME_FORMATTER = new SimpleDateFormat("hh:mma");
+    // Useful data formatters; immutable and thread-safe so initialise them once.
+    private static final DateTimeFormatter DAY_OF_WEEK_FORMATTER = DateTimeFormatter.ofPattern("EEEE");
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("MMMM");
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("hh:mma");
+
+    // Number of striped locks that guard booking mutations. Must be a power of two.
+    private static final int BOOKING_LOCK_STRIPES = 64;
+
+    // How many times a group booking searches again, if its seats are taken while it is being made.
+    private static final int GROUP_BOOKING_ATTEMPTS = 3;
+
+    // Past time slots and ended screenings are expired by a timing wheel of one-second ticks, which turns every 8.5 minutes.
+    private static final long EXPIRY_TICK_MILLIS = 1000;
+    private static final int EXPIRY_WHEEL_SIZE = 512;
+
+    // Ticket code secret that older settings files shipped with; never used to sign codes.
+    private static final String PLACEHOLDER_SECRET = "change_this_secret";
+
+    // Tickets are admitted from an hour before their time slot starts, until its movie finishes.
+    private static final long CHECK_IN_OPENS_MILLIS = 60 * 60 * 1000;
+
+    // Bookings count half as much towards trending every 12 hours, and the 30 most popular movies and screenings are ranked.
+    private static final long TRENDING_HALF_LIFE_MILLIS = 12 * 60 * 60 * 1000;
+    private static final int TRENDING_CAPACITY = 30;
 
     private final MainView main;
 
@@ -42,20 +95,66 @@ public class DataController {
     private Configuration config;
     private Database database;
 
+    // Bookings and cancellations are persisted through this; the database, unless the controller was created without one.
+    private TicketWriter ticketWriter;
+
+    // The cinema site that this kiosk belongs to. Only this site's partition of the catalog is loaded; 0 loads every site.
+    private int site;
+
     // This controller stores all the model states, and it is not freely available.
-    private final HashMap<String, Integer> currentGenres;
-    private final HashMap<String, Movie> movies;
-    private final HashMap<Integer, Venue> venues;
-    private final HashMap<Integer, Screening> screenings;
-    private final List<Ticket> tickets;
+    private final ConcurrentHashMap<String, Integer> currentGenres;
+    private final ConcurrentHashMap<String, Movie> movies;
+    private final ConcurrentHashMap<Integer, Venue> venues;
+    private final ConcurrentHashMap<Integer, Screening> screenings;
+    private final TicketStore tickets;
+
+    // Derived from the loaded movies.
+    private final TitleIndex titles;
+
+    // Serialises bookings and cancellations of the same time slot.
+    private final ReentrantLock[] bookingLocks;
+
+    // Derived from the loaded tickets; must be kept in sync whenever tickets are added or removed.
+    private final OccupancyIndex occupancy;
+    private final UsernameIndex usernames;
+    private final SeatClaims claims;
+    private final AvailabilityIndex availability;
+    private final TicketTimeline timeline;
+    private final CheckIns checkIns;
+    private final OccupancyCubes bookedSeats;
+    private final List<TicketIndex> ticketIndexes;
+
+    // Ranks movies and screenings by recent bookings. Unlike the ticket indexes, tickets that expire still count.
+    private final PopularityIndex popularity;
+
+    // Issues and verifies ticket codes for checking in at the door.
+    private TicketCodes codes;
+
+    // Searches for adjacent free seats across showtimes.
+    private final AdjacentSeatSearch seatSearch;
+
+    // Forgets time slots once their movie has finished, and screenings once they have ended, so a long-running kiosk does not
+    // keep them in memory or on the grid. Time slot keys that are scheduled to expire are kept, so each is only scheduled once.
+    private final TimingWheel expiries;
+    private final Set<Long> expiringSlots;
+
+    // Tickets that are still being saved to, or deleted from, the database. They cannot be cancelled until that is done,
+    // so that the database and the loaded tickets never disagree about a booking that is cancelled while it is being made.
+    private final Set<Ticket> writing;
+
+    // Picks up changes made to the catalog in the database while the kiosk is running, if enabled.
+    private CatalogRefresher refresher;
+
+    // Held while the catalog is being changed, so that expiries and refreshes are each applied all at once.
+    private final Object catalogLock = new Object();
+
+    // Derived from the loaded screenings.
+    private ScheduleIndex schedules;
+    private volatile SortedScreenings sortedScreenings;
+    private volatile FacetIndex facets;
 
     public DataController(MainView main) throws IllegalStateException {
-        this.main = main;
-        this.currentGenres = new HashMap<>();
-        this.movies = new HashMap<>();
-        this.venues = new HashMap<>();
-        this.screenings = new HashMap<>();
-        this.tickets = new ArrayList<>();
+        this(main, null);
 
         // Read configuration for MySQL database configuration settings.
         System.out.println("> Reading configuration...");
@@ -72,16 +171,74 @@ public class DataController {
         }
         System.out.println("...success!");
 
+        // Older configuration files do not specify a site, in which case the whole chain is loaded.
+        try {
+            site = config.hasKey("site_no") ? config.getInteger("site_no") : 0;
+        } catch (NumberFormatException ex) {
+            System.out.println("> WARNING: Invalid 'site_no' value, loading every site instead.");
+            site = 0;
+        }
+
+        // Time slots can be booked up to 14 days ahead, unless configured otherwise.
+        int horizonDays = 14;
+        try {
+            if (config.hasKey("booking_horizon_days"))
+                horizonDays = Math.max(1, config.getInteger("booking_horizon_days"));
+        } catch (NumberFormatException ex) {
+            System.out.println("> WARNING: Invalid 'booking_horizon_days' value, using 14 days instead.");
+        }
+        schedules = new ScheduleIndex(ZoneId.systemDefault(), horizonDays);
+
+        // Ticket codes are signed with a secret shared by every kiosk. Without one, codes only work until this kiosk restarts.
+        // The placeholder that older settings files shipped with is public, so anyone could sign codes with it.
+        String secret = config.hasKey("ticket_code_secret") ? config.getString("ticket_code_secret").trim() : "";
+        if (secret.equals(PLACEHOLDER_SECRET)) {
+            System.out.println("> WARNING: 'ticket_code_secret' has not been changed from the placeholder, so it is ignored.");
+            secret = "";
+        }
+        if (!secret.isEmpty())
+            codes = new TicketCodes(secret.getBytes(StandardCharsets.UTF_8));
+        else {
+            System.out.println("> WARNING: No 'ticket_code_secret' value, ticket codes will not be valid after a restart.");
+            byte[] random = new byte[32];
+            new SecureRandom().nextBytes(random);
+            codes = new TicketCodes(random);
+        }
+
         // Attempt to connect to database and load required data.
         System.out.println("> Connecting to database...");
         try {
-            database = new Database(this, config.getString("mysql_user"), config.getString("mysql_pass"), config.getString("mysql_host"), config.getString("mysql_port"), config.getString("mysql_database"));
+            database = new Database(this, config.getString("mysql_user"), config.getString("mysql_pass"), config.getString("mysql_host"), config.getString("mysql_port"), config.getString("mysql_database"), site);
+            ticketWriter = database;
 
             // Load in all the data from the database.
             System.out.println(">> Checking tables...");
             database.createTables();
+
+            // Route the tickets of individual venues to their own shard, if configured.
+            for (String key : config.getKeysWithPrefix("ticket_shard_")) {
+                System.out.println(String.format(">> Connecting to ticket shard for %s...", key));
+                try {
+                    database.addShard(Integer.parseInt(key.substring("ticket_shard_".length())), config.getString(key));
+                } catch (NumberFormatException ex) {
+                    throw new IllegalStateException(String.format("'%s' does not end with a valid venue number", key));
+                }
+            }
+
+            // Changes to the catalog are picked up every minute, unless configured otherwise. A value of 0 turns this off.
+            int refreshSeconds = 60;
+            try {
+                if (config.hasKey("catalog_refresh_seconds"))
+                    refreshSeconds = Math.max(0, config.getInteger("catalog_refresh_seconds"));
+            } catch (NumberFormatException ex) {
+                System.out.println("> WARNING: Invalid 'catalog_refresh_seconds' value, refreshing every 60 seconds instead.");
+            }
+            if (refreshSeconds > 0)
+                refresher = new CatalogRefresher(this, database);
+
             System.out.println(">> Loading available Movies...");
             database.loadMovies(movies);
+            movies.keySet().forEach(titles::add);
             System.out.println(">> Loading available Venues...");
             database.loadVenues(venues);
             System.out.println(">> Loading available Screenings...");
@@ -92,6 +249,23 @@ public class DataController {
             // Perform cross-validation routines to ensure that data is integrous.
             System.out.println(">> Performing cross-validation...");
             crossValidate();
+
+            // Index the remaining, valid tickets in bulk, and sort the remaining screenings for the grid.
+            List<Ticket> loaded = new ArrayList<>(tickets.size());
+            tickets.forEachView(loaded::add);
+            ticketIndexes.forEach(index -> index.addAll(loaded));
+            for (Ticket ticket : loaded) {
+                expireLater(ticket.getScreening(), ticket.getSelectedDate());
+                popularity.loaded(ticket);
+            }
+            sortedScreenings = new SortedScreenings(screenings.values());
+            facets = new FacetIndex(sortedScreenings, schedules::scheduleOf);
+
+            // Forget each screening once it ends, in case the kiosk is left running until then.
+            screenings.values().forEach(screening -> expiries.schedule(screening.getEndDate().getTime(), () -> expireScreening(screening)));
+            expiries.start();
+            if (refresher != null)
+                refresher.start(refreshSeconds);
         } catch (SQLException | IllegalStateException e) {
             // Database was not loaded. Do not continue with execution.
             JOptionPane.showMessageDialog(null, String.format("Unable to connect to database at '%s:%s'. Reason:\n%s\n" +
@@ -104,6 +278,64 @@ public class DataController {
         System.out.println("...success!");
     }
 
+    /**
+     * Creates every index and lock, without loading anything.
+     *
+     * @param main         The kiosk's window, or null if there is none.
+     * @param ticketWriter Persists bookings and cancellations, or null if the database is connected to later.
+     */
+    private DataController(MainView main, TicketWriter ticketWriter) {
+        this.main = main;
+        this.ticketWriter = ticketWriter;
+        this.currentGenres = new ConcurrentHashMap<>();
+        this.movies = new ConcurrentHashMap<>();
+        this.venues = new ConcurrentHashMap<>();
+        this.screenings = new ConcurrentHashMap<>();
+        this.titles = new TitleIndex();
+        this.bookingLocks = new ReentrantLock[BOOKING_LOCK_STRIPES];
+        for (int i = 0; i < BOOKING_LOCK_STRIPES; i++)
+            bookingLocks[i] = new ReentrantLock();
+        this.tickets = new TicketStore(screenings::get);
+        this.occupancy = new OccupancyIndex();
+        this.usernames = new UsernameIndex(tickets);
+        this.claims = new SeatClaims();
+        this.availability = new AvailabilityIndex();
+        this.timeline = new TicketTimeline();
+        this.checkIns = new CheckIns();
+        this.bookedSeats = new OccupancyCubes(ZoneId.systemDefault());
+        this.ticketIndexes = Arrays.asList(occupancy, usernames, claims, availability, timeline, checkIns, bookedSeats);
+        this.popularity = new PopularityIndex(TRENDING_HALF_LIFE_MILLIS, TRENDING_CAPACITY, System::currentTimeMillis);
+        this.seatSearch = new AdjacentSeatSearch(showtime -> showtime.getScreening().getVenue().getLayout()
+                .markGaps(claims.snapshot(showtime.getScreening(), showtime.getDate().getTime())));
+        this.expiries = new TimingWheel(EXPIRY_TICK_MILLIS, EXPIRY_WHEEL_SIZE, "expiry-wheel");
+        this.expiringSlots = ConcurrentHashMap.newKeySet();
+        this.writing = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Creates a controller without a window or a database, e.g. to exercise bookings and check-ins in tests.
+     * The catalog is made up of the given screenings, and no tickets are booked yet. Nothing expires by itself,
+     * as the expiry wheel is not started.
+     *
+     * @param ticketWriter Persists bookings and cancellations in place of the database.
+     * @param codes        Issues and verifies ticket codes.
+     * @param catalog      The screenings, along with their movies and venues.
+     */
+    DataController(TicketWriter ticketWriter, TicketCodes codes, Collection<Screening> catalog) {
+        this(null, ticketWriter);
+        this.codes = codes;
+        schedules = new ScheduleIndex(ZoneId.systemDefault(), 14);
+        for (Screening screening : catalog) {
+            screenings.put(screening.getID(), screening);
+            venues.put(screening.getVenue().getVenueNum(), screening.getVenue());
+            if (movies.put(screening.getMovie().getName(), screening.getMovie()) == null)
+                titles.add(screening.getMovie().getName());
+        }
+        updateGenres(catalog.stream().map(screening -> screening.getMovie().getGenre()).collect(Collectors.toSet()));
+        sortedScreenings = new SortedScreenings(screenings.values());
+        facets = new FacetIndex(sortedScreenings, schedules::scheduleOf);
+    }
+
     // Setting this to true will remove erroneous rows from the database permanently, otherwise they are just logged and removed at runtime.
     private static final boolean DELETE_CORRUPTED_ROWS = false;
 
@@ -116,69 +348,338 @@ public class DataController {
      * an external database editing tool, such as phpMyAdmin.
      */
     private void crossValidate() {
-        // Ensure screenings of the same movie do not have overlapping date ranges.
-        List<Integer> invalid = new ArrayList<>();
-        screenings.values().forEach(first -> {
-            // Don't re-compare screenings that have been marked as invalid.
-            // Ignore exact copies, only compare against others.
-            // Only compare screenings with the same movie title.
-            // If one screening's end date comes after the other's start date, it is invalid.
-            // The reverse is also true; if one's start date comes before the other's end date, it is also invalid.
-            screenings.values().stream().filter(second -> !invalid.contains(first.getID()) && !invalid.contains(second.getID()))
-                    .filter(second -> first != second).filter(second -> first.getMovie().equals(second.getMovie()))
-                    .filter(second -> first.getEndDate().after(second.getStartDate()) || first.getStartDate().before(second.getEndDate()))
-                    .forEach(second -> invalid.add(second.getID()));
-        });
+        // Ensure screenings of the same movie do not have overlapping date ranges,
+        // and ensure Tickets fall within the date ranges of their screenings.
+        CatalogValidator validator = new CatalogValidator();
+        validator.validate(screenings.values(), tickets);
+
         // Purge overlapping screenings (only one is selected to be removed, not both).
         // Remove all local copies pertaining to this invalid screening.
         // If enabled, reflect the exact same changes in the database also so they do not come back next restart.
-        if (invalid.size() != 0)
-            invalid.forEach(ID -> {
-                System.out.println(">> WARNING!! Screening ID #%s has been detected overlapping with other screenings. It has been removed as a result.");
-                screenings.remove(ID);
-                tickets.removeAll(findTicketsByScreening(ID));
-                if (DELETE_CORRUPTED_ROWS)
-                    database.safeDeleteScreening(ID);
-            });
-
-        // Ensure Tickets fall within the date ranges of their screenings.
-        List<Ticket> invalidTickets = new ArrayList<>();
-        // Invalid tickets start before or after their screening's date range.
-        tickets.forEach(temp -> {
-            Screening screening = temp.getScreening();
-            if (temp.getSelectedDate().before(screening.getStartDate()) || temp.getSelectedDate().after(screening.getEndDate()))
-                invalidTickets.add(temp);
+        Set<Integer> invalid = validator.getOverlapping();
+        invalid.forEach(ID -> {
+            System.out.println(String.format(">> WARNING!! Screening ID #%s has been detected overlapping with other screenings. It has been removed as a result.", ID));
+            screenings.remove(ID);
+            if (DELETE_CORRUPTED_ROWS)
+                database.safeDeleteScreening(ID);
         });
+
         // Purge invalid tickets.
         // If enabled, delete the invalid tickets in the database so that they do not re-appear on restart.
-        if (invalidTickets.size() != 0)
-            invalidTickets.forEach(temp -> {
-                System.out.println(">> WARNING!! A data was found outside of its screening's date range and was removed! Perhaps you were messing around with the timestamps in phpMyAdmin?");
-                if (DELETE_CORRUPTED_ROWS)
-                    database.deleteTicket(temp);
+        int[] invalidTickets = validator.getOutOfRange();
+        BitSet invalidRows = new BitSet(tickets.rows());
+        List<Ticket> corrupted = new ArrayList<>();
+        for (int row : invalidTickets) {
+            System.out.println(">> WARNING!! A data was found outside of its screening's date range and was removed! Perhaps you were messing around with the timestamps in phpMyAdmin?");
+            if (DELETE_CORRUPTED_ROWS)
+                corrupted.add(tickets.view(row));
+            invalidRows.set(row);
+        }
+        if (!corrupted.isEmpty())
+            try {
+                database.deleteTickets(corrupted);
+            } catch (SQLException ex) {
+                // They are still removed locally below, and will be found and removed again on the next startup.
+                ex.printStackTrace();
+            }
+
+        // Remove all local copies of all invalid tickets, including those of removed screenings.
+        if (!invalid.isEmpty() || invalidTickets.length != 0)
+            tickets.removeIf(row -> invalidRows.get(row) || invalid.contains(tickets.getScreeningID(row)));
+    }
+
+    /**
+     * Adds a newly booked ticket to every ticket index. Loaded tickets are added in bulk instead.
+     *
+     * @param ticket The ticket to index.
+     */
+    private void index(Ticket ticket) {
+        ticketIndexes.forEach(index -> index.add(ticket));
+        expireLater(ticket.getScreening(), ticket.getSelectedDate());
+    }
+
+    /**
+     * Makes sure that a time slot is forgotten once its movie has finished, if it is not already going to be.
+     * Until then, its tickets stay loaded so that late arrivals can still be checked in.
+     *
+     * @param screening The screening.
+     * @param date      The time slot.
+     */
+    private void expireLater(Screening screening, Timestamp date) {
+        if (expiringSlots.add(OccupancyIndex.key(screening.getID(), date.getTime())))
+            expiries.schedule(slotEnd(screening, date), () -> expireSlot(screening, date));
+    }
+
+    /**
+     * @param screening The screening.
+     * @param date      The time slot.
+     * @return When the time slot's movie finishes, as epoch milliseconds.
+     */
+    private static long slotEnd(Screening screening, Timestamp date) {
+        return date.getTime() + TimeUnit.MINUTES.toMillis(screening.getMovie().getRunningTime());
+    }
+
+    /**
+     * Forgets a time slot whose movie has finished: its tickets are removed from the ticket store and every ticket index, and
+     * any seats that are still claimed are released. The tickets are left in the database, just like tickets that have
+     * passed are not loaded on startup.
+     *
+     * @param screening The screening.
+     * @param date      The time slot.
+     * @return The number of tickets that were removed.
+     */
+    private int expireSlot(Screening screening, Timestamp date) {
+        // Anything booked or claimed from here on schedules the time slot to expire again.
+        expiringSlots.remove(OccupancyIndex.key(screening.getID(), date.getTime()));
+        int expired = mutate(screening, date, () -> {
+            int removed = 0;
+            for (Ticket past : timeline.find(screening.getID(), TicketStore.toMinute(date)))
+                if (tickets.remove(past)) {
+                    ticketIndexes.forEach(index -> index.remove(past));
+                    removed++;
+                }
+            ticketIndexes.forEach(index -> index.expire(screening, date.getTime()));
+            popularity.expire(screening.getID(), date.getTime());
+            return removed;
+        });
+        if (expired != 0)
+            System.out.println(String.format(">> Expired %d tickets of screening #%d at %s", expired, screening.getID(), date));
+        return expired;
+    }
+
+    /**
+     * Forgets a screening that has ended, along with anything left of its time slots, and updates the grid and filters to match.
+     *
+     * @param screening The screening.
+     */
+    private void expireScreening(Screening screening) {
+        synchronized (catalogLock) {
+            // A catalog refresh may have changed or removed the screening since this was scheduled.
+            if (screenings.get(screening.getID()) != screening) return;
+            forgetScreening(screening);
+            updateGenres(Collections.singleton(screening.getMovie().getGenre()));
+            publishCatalog();
+        }
+        System.out.println(String.format(">> Screening #%d of %s has ended and was removed", screening.getID(), screening.getMovie().getName()));
+    }
+
+    /**
+     * Removes a screening from the catalog, along with whatever is left of its time slots. The tickets are left in the database.
+     *
+     * @param screening The screening.
+     */
+    private void forgetScreening(Screening screening) {
+        // Once a screening has ended, every time slot should have expired already; but make sure.
+        for (Ticket left : timeline.findBetween(TicketStore.toMinute(screening.getStartDate()), TicketStore.toMinute(screening.getEndDate())))
+            if (left.getScreening().getID() == screening.getID()) expireSlot(screening, left.getSelectedDate());
+        screenings.remove(screening.getID());
+        claims.expire(screening);
+        schedules.forget(screening);
+        popularity.forget(screening.getID());
+    }
+
+    /**
+     * Applies changes that have been made to the catalog in the database, all at once. Only what has changed is
+     * updated: the loaded movies, venues, and screenings, the title index, and the cached schedules. The screenings
+     * are then re-sorted and re-indexed for the grid, and the grid and filters are updated to match.
+     *
+     * @param changes New, modified, and removed movies, venues, and screenings.
+     */
+    void applyCatalogChanges(CatalogRefresher.Changes changes) {
+        synchronized (catalogLock) {
+            Set<String> genres = new HashSet<>();
+            venues.putAll(changes.venues);
+            changes.movies.forEach((name, movie) -> {
+                Movie old = movies.put(name, movie);
+                if (old == null) titles.add(name);
+                else genres.add(old.getGenre());
+                genres.add(movie.getGenre());
+            });
+            for (int ID : changes.removedScreenings) {
+                Screening old = screenings.get(ID);
+                if (old == null) continue;
+                forgetScreening(old);
+                genres.add(old.getMovie().getGenre());
+            }
+            changes.screenings.forEach((ID, screening) -> {
+                Screening old = screenings.put(ID, screening);
+                // Its screening times may have changed.
+                if (old != null) {
+                    schedules.forget(old);
+                    genres.add(old.getMovie().getGenre());
+                    // Its booked seats are counted under its venue and movie, which may have changed.
+                    if (old.getVenue().getVenueNum() != screening.getVenue().getVenueNum()
+                            || !old.getMovie().getName().equals(screening.getMovie().getName()))
+                        moveBookedSeats(old, screening);
+                }
+                genres.add(screening.getMovie().getGenre());
+                expiries.schedule(screening.getEndDate().getTime(), () -> expireScreening(screening));
             });
-        // Remove all local copies of all invalid tickets.
-        tickets.removeAll(invalidTickets);
+
+            // Movies and venues are only removed once no screening refers to them.
+            for (String name : changes.removedMovies)
+                if (screenings.values().stream().noneMatch(screening -> screening.getMovie().getName().equals(name)) && movies.remove(name) != null)
+                    titles.remove(name);
+            for (int venueNum : changes.removedVenues)
+                if (screenings.values().stream().noneMatch(screening -> screening.getVenue().getVenueNum() == venueNum))
+                    venues.remove(venueNum);
+
+            updateGenres(genres);
+            publishCatalog();
+        }
+    }
+
+    /**
+     * Moves the booked seats of a screening from where they were counted to where they are counted now.
+     *
+     * @param from The screening as it was.
+     * @param to   The screening as it is now.
+     */
+    private void moveBookedSeats(Screening from, Screening to) {
+        tickets.read(() -> {
+            for (int row = 0; row < tickets.rows(); row++)
+                if (tickets.isLive(row) && tickets.getScreeningID(row) == from.getID()) {
+                    long date = TimeUnit.MINUTES.toMillis(tickets.getMinute(row));
+                    bookedSeats.count(from, date, -1);
+                    bookedSeats.count(to, date, 1);
+                }
+            return null;
+        });
+    }
+
+    /**
+     * Adds genres that loaded screenings have, and removes those that none have any more.
+     *
+     * @param genres The genres that may have changed.
+     */
+    private void updateGenres(Collection<String> genres) {
+        for (String genre : genres)
+            if (screenings.values().stream().anyMatch(screening -> screening.getMovie().getGenre().equals(genre)))
+                currentGenres.putIfAbsent(genre, currentGenres.size());
+            else currentGenres.remove(genre);
+    }
+
+    /**
+     * Re-sorts and re-indexes the loaded screenings for the grid, then shows them.
+     * Each is replaced in one go, so readers never see a half-built order or index.
+     */
+    private void publishCatalog() {
+        SortedScreenings sorted = new SortedScreenings(screenings.values());
+        facets = new FacetIndex(sorted, schedules::scheduleOf);
+        sortedScreenings = sorted;
+        SwingUtilities.invokeLater(main::catalogChanged);
+    }
+
+    /**
+     * @param screening The screening.
+     * @param date      The time slot.
+     * @return The striped lock that guards bookings of this time slot.
+     */
+    private ReentrantLock bookingLock(Screening screening, Timestamp date) {
+        long key = OccupancyIndex.key(screening.getID(), date.getTime()) * 0x9E3779B97F4A7C15L;
+        return bookingLocks[(int) (key >>> 32) & (BOOKING_LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Runs a booking mutation of a time slot, so that no other mutation of the same time slot runs at the same time.
+     * This is done under the time slot's striped lock.
+     *
+     * @param screening The screening.
+     * @param date      The time slot.
+     * @param mutation  Changes the tickets of the time slot.
+     * @param <T>       The type of the result.
+     * @return The mutation's result.
+     */
+    private <T> T mutate(Screening screening, Timestamp date, Supplier<T> mutation) {
+        ReentrantLock lock = bookingLock(screening, date);
+        lock.lock();
+        try {
+            return mutation.get();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * Deletes a ticket- both locally and externally.
+     * Deletes a ticket- both externally and locally.
      *
      * @param toDelete Ticket to delete.
+     * @throws SQLException If the ticket could not be deleted from the database, in which case it is still booked.
+     * @see #deleteTickets(List)
      */
-    public void deleteTicket(Ticket toDelete) {
-        tickets.remove(toDelete);
-        database.deleteTicket(toDelete);
+    public void deleteTicket(Ticket toDelete) throws SQLException {
+        deleteTickets(Collections.singletonList(toDelete));
     }
 
     /**
-     * Deletes a list of tickets.
+     * Deletes a list of tickets at once, e.g. a whole booking- both externally and locally.
+     * First, each time slot's tickets are set aside in one mutation, so that no other session can cancel them too.
+     * Their seats stay booked in the meantime, so nobody can book them either. The tickets are then deleted from
+     * the database, with one transaction per shard. Finally, each time slot's tickets are removed from the ticket store
+     * and every ticket index in one mutation.
      *
      * @param toDelete The tickets to delete.
-     * @see #deleteTicket(Ticket)
+     * @return The number of tickets that were deleted. Tickets that another session has deleted already, or is still
+     * booking or cancelling, are left out.
+     * @throws SQLException If the tickets could not be deleted from the database. If that happened after some shards had
+     *                      already committed, it is a {@link PartialDeleteException}: the tickets that it lists are
+     *                      deleted and the rest are still booked. Otherwise, they are all still booked.
+     */
+    public int deleteTickets(List<Ticket> toDelete) throws SQLException {
+        List<Ticket> deleting = new ArrayList<>(toDelete.size());
+        for (List<Ticket> slot : groupBySlot(toDelete))
+            deleting.addAll(mutate(slot.get(0).getScreening(), slot.get(0).getSelectedDate(), () -> {
+                List<Ticket> found = new ArrayList<>(slot.size());
+                for (Ticket ticket : slot)
+                    if (tickets.find(ticket.getScreening().getID(), TicketStore.toMinute(ticket.getSelectedDate()), ticket.getSeatID()) != -1
+                            && writing.add(ticket)) found.add(ticket);
+                return found;
+            }));
+        if (deleting.isEmpty()) return 0;
+
+        try {
+            ticketWriter.deleteTickets(deleting);
+        } catch (PartialDeleteException ex) {
+            // The shards that committed before the failure no longer have these tickets, so they are not booked any more.
+            removeDeleted(ex.getDeleted());
+            writing.removeAll(deleting);
+            throw ex;
+        } catch (SQLException ex) {
+            writing.removeAll(deleting);
+            throw ex;
+        }
+        return removeDeleted(deleting);
+    }
+
+    /**
+     * Removes tickets that have been deleted from the database from the ticket store and every ticket index, with one
+     * mutation per time slot. They can then be booked or cancelled again.
+     *
+     * @param deleted Tickets that were set aside for deleting, and have been deleted.
+     * @return The number of tickets that were removed.
+     */
+    private int removeDeleted(Collection<Ticket> deleted) {
+        int removed = 0;
+        for (List<Ticket> slot : groupBySlot(deleted))
+            removed += mutate(slot.get(0).getScreening(), slot.get(0).getSelectedDate(), () -> {
+                List<Ticket> gone = tickets.removeAll(slot);
+                ticketIndexes.forEach(index -> index.removeAll(gone));
+                gone.forEach(popularity::cancelled);
+                writing.removeAll(slot);
+                return gone.size();
+            });
+        return removed;
+    }
+
+    /**
+     * @param tickets Tickets of any time slots.
+     * @return The tickets, grouped by time slot, in order of first appearance.
      */
-    public void deleteTickets(List<Ticket> toDelete) {
-        toDelete.forEach(this::deleteTicket);
+    private static Collection<List<Ticket>> groupBySlot(Collection<Ticket> tickets) {
+        LinkedHashMap<Long, List<Ticket>> bySlot = new LinkedHashMap<>();
+        for (Ticket ticket : tickets)
+            bySlot.computeIfAbsent(OccupancyIndex.key(ticket.getScreening().getID(), ticket.getSelectedDate().getTime()), key -> new ArrayList<>()).add(ticket);
+        return bySlot.values();
     }
 
     /**
@@ -191,6 +692,17 @@ public class DataController {
         return movies.get(movie);
     }
 
+    /**
+     * Searches for movies by title, tolerating typos and partially typed words.
+     *
+     * @param query What has been typed so far, e.g. "star wa".
+     * @param limit Maximum amount of results.
+     * @return Titles of matching movies, best match first.
+     */
+    public List<String> searchMovieTitles(String query, int limit) {
+        return titles.search(query, limit);
+    }
+
     /**
      * Attempts to retrieve a Venue by its number.
      *
@@ -219,22 +731,99 @@ public class DataController {
     }
 
     /**
-     * @param screening The unique identifier of a particular screening.
-     * @return All tickets that have been booked for this screening.
+     * Finds all tickets of a particular screening for a particular time slot.
+     *
+     * @param screening The screening in question.
+     * @param date      The particular time slot in question.
+     * @return All tickets that match the above two criteria, in seat order.
      */
-    private List<Ticket> findTicketsByScreening(int screening) {
-        return tickets.stream().filter(temp -> temp.getScreening().getID() == screening).collect(Collectors.toList());
+    public List<Ticket> findTicketsByScreeningAndTime(int screening, Timestamp date) {
+        return timeline.find(screening, TicketStore.toMinute(date));
     }
 
     /**
-     * Finds all tickets of a particular screening for a particular time slot.
+     * Staff reporting: finds all tickets booked for any time slot in a time range, e.g. every ticket between 6pm and 10pm.
+     *
+     * @param from The earliest time slot (inclusive).
+     * @param to   The latest time slot (inclusive).
+     * @return The tickets, ordered by time slot, then screening, then seat.
+     */
+    public List<Ticket> findTicketsBetween(Timestamp from, Timestamp to) {
+        return timeline.findBetween(TicketStore.toMinute(from), TicketStore.toMinute(to));
+    }
+
+    /**
+     * Staff reporting: lists everyone booked into a time slot, for checking them in at the door.
      *
      * @param screening The screening in question.
      * @param date      The particular time slot in question.
-     * @return All tickets that match the above two criteria.
+     * @return Usernames in alphabetical order, mapped to their seats in seat order.
      */
-    public List<Ticket> findTicketsByScreeningAndTime(int screening, Timestamp date) {
-        return tickets.stream().filter(temp -> temp.getScreening().getID() == screening && temp.getSelectedDate().equals(date)).collect(Collectors.toList());
+    public LinkedHashMap<String, List<String>> generateDoorList(Screening screening, Timestamp date) {
+        TreeMap<String, List<String>> byUsername = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Ticket ticket : timeline.find(screening.getID(), TicketStore.toMinute(date)))
+            byUsername.computeIfAbsent(ticket.getUsername(), username -> new ArrayList<>()).add(ticket.getAllocatedSeat());
+        return new LinkedHashMap<>(byUsername);
+    }
+
+    /**
+     * @param ticket A booked ticket.
+     * @return The ticket's signed code, which is shown to the customer and scanned at the door.
+     * @see #checkIn(String)
+     */
+    public String getTicketCode(Ticket ticket) {
+        return codes.issue(ticket.getScreening().getID(), TicketStore.toMinute(ticket.getSelectedDate()), ticket.getSeatID(), ticket.getUsername());
+    }
+
+    /**
+     * Staff check-in: validates a ticket code at the door, and marks the ticket as used so that it cannot be used again.
+     * Tickets are only admitted from an hour before their time slot starts until its movie finishes.
+     * The code's signature is verified without any lookups, and the rest is lock-free, so any number of doors can
+     * check tickets in at the same time.
+     *
+     * @param code The scanned or typed ticket code.
+     * @return Whether the ticket holder may enter, and if not, why; along with the ticket, if the code belongs to one.
+     */
+    public CheckIns.Outcome checkIn(String code) {
+        TicketCodes.Code verified = codes.verify(code);
+        if (verified == null) return new CheckIns.Outcome(CheckIns.Result.INVALID, null);
+
+        // The code must still match a booked ticket, as the ticket may have been cancelled and the seat booked by someone else.
+        Screening screening = screenings.get(verified.getScreeningID());
+        Ticket ticket = screening == null ? null : timeline.get(verified.getScreeningID(), verified.getMinute(), verified.getSeatID());
+        if (ticket == null || !verified.isFor(ticket.getUsername())) return new CheckIns.Outcome(CheckIns.Result.NOT_BOOKED, null);
+
+        // A ticket for another time slot is not used up by showing it at the wrong time.
+        long now = System.currentTimeMillis();
+        if (now < ticket.getSelectedDate().getTime() - CHECK_IN_OPENS_MILLIS)
+            return new CheckIns.Outcome(CheckIns.Result.TOO_EARLY, ticket);
+        if (now >= slotEnd(screening, ticket.getSelectedDate()))
+            return new CheckIns.Outcome(CheckIns.Result.FINISHED, ticket);
+        return new CheckIns.Outcome(checkIns.use(screening, ticket.getSelectedDate().getTime(), verified.getSeatID())
+                ? CheckIns.Result.ADMITTED : CheckIns.Result.ALREADY_USED, ticket);
+    }
+
+    /**
+     * Staff maintenance: forgets the time slots whose movie has already finished, so their tickets no longer take up memory.
+     * Each time slot is expired straight away, just as if its scheduled expiry had run, so whatever the ticket indexes
+     * keep for it is thrown away too. The tickets are left in the database, just like tickets that have passed are
+     * not loaded on startup.
+     *
+     * @return The number of tickets that were forgotten.
+     */
+    public int purgePastTickets() {
+        // Find each past time slot once, by the first of its tickets. Slots that are still showing are kept for check-ins.
+        long now = System.currentTimeMillis();
+        LinkedHashMap<Long, Ticket> pastSlots = new LinkedHashMap<>();
+        for (Ticket past : timeline.findBefore(TicketStore.toMinute(new Timestamp(now))))
+            if (slotEnd(past.getScreening(), past.getSelectedDate()) <= now)
+                pastSlots.putIfAbsent(OccupancyIndex.key(past.getScreening().getID(), past.getSelectedDate().getTime()), past);
+
+        int purged = 0;
+        for (Ticket first : pastSlots.values())
+            purged += expireSlot(first.getScreening(), first.getSelectedDate());
+        System.out.println(String.format(">> Purged %d past tickets", purged));
+        return purged;
     }
 
     /**
@@ -244,7 +833,18 @@ public class DataController {
      * @return All tickets that belong to the username.
      */
     public List<Ticket> findTicketsByUsername(String username) {
-        return tickets.stream().filter(temp -> temp.getUsername().equals(username)).collect(Collectors.toList());
+        return usernames.find(username);
+    }
+
+    /**
+     * Suggests usernames that tickets have been booked under, for auto-completion.
+     *
+     * @param prefix What has been typed so far.
+     * @param limit  Maximum amount of suggestions.
+     * @return Matching usernames, in alphabetical order.
+     */
+    public List<String> suggestUsernames(String prefix, int limit) {
+        return usernames.suggest(prefix, limit);
     }
 
     /**
@@ -255,11 +855,261 @@ public class DataController {
      * @return Number of seats available in this screening at the specified time.
      */
     public int calculateNumberOfAvailableSeats(Screening screening, Timestamp date) {
-        int remaining = screening.getVenue().getTotalSeats();
-        for (Ticket ticket : tickets)
-            if (ticket.getScreening().equals(screening) && ticket.getSelectedDate().equals(date))
-                remaining--;
-        return remaining;
+        return availability.countRemaining(screening, date.getTime());
+    }
+
+    /**
+     * Calculates the number of available seats for several time slots of a screening at once.
+     *
+     * @param screening The screening to check.
+     * @param dates     Time slots of the screening, e.g. from {@link #calculateTimes(Screening)}.
+     * @return Number of seats available at each time slot, in the same order.
+     */
+    public int[] calculateAvailability(Screening screening, List<Timestamp> dates) {
+        return availability.countRemaining(screening, dates);
+    }
+
+    /**
+     * Finds the movies that are being booked the most right now, e.g. for a kiosk's home screen.
+     * Recent bookings count for more than older ones; see {@link PopularityIndex}.
+     *
+     * @param limit Maximum amount of results, up to 30.
+     * @return The loaded movies with the most recent bookings, most popular first.
+     */
+    public List<Movie> findTrendingMovies(int limit) {
+        List<Movie> result = new ArrayList<>();
+        for (String title : popularity.topMovies(TRENDING_CAPACITY)) {
+            if (result.size() == limit) break;
+            // Skip movies that are no longer loaded.
+            Movie movie = movies.get(title);
+            if (movie != null) result.add(movie);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the screenings that are being booked the most right now, e.g. for a kiosk's home screen.
+     *
+     * @param limit Maximum amount of results, up to 30.
+     * @return The loaded screenings with the most recent bookings, most popular first.
+     * @see #findTrendingMovies(int)
+     */
+    public List<Screening> findTrendingScreenings(int limit) {
+        List<Screening> result = new ArrayList<>();
+        for (int ID : popularity.topScreenings(TRENDING_CAPACITY)) {
+            if (result.size() == limit) break;
+            Screening screening = screenings.get(ID);
+            if (screening != null) result.add(screening);
+        }
+        return result;
+    }
+
+    /**
+     * @param screening The screening.
+     * @return The screening's place among the trending screenings, starting from 1, or 0 if it is not trending.
+     */
+    public int findTrendingRank(Screening screening) {
+        return popularity.topScreenings(TRENDING_CAPACITY).indexOf(screening.getID()) + 1;
+    }
+
+    /**
+     * Moves the trending screenings to the front, most popular first. The rest stay in the order they were in.
+     *
+     * @param shown Screenings to order, e.g. those that match the grid's filters.
+     * @return The same screenings, with the trending ones first.
+     */
+    public Screening[] sortByTrending(Screening[] shown) {
+        HashMap<Integer, Screening> byID = new HashMap<>();
+        for (Screening screening : shown)
+            byID.put(screening.getID(), screening);
+        Screening[] result = new Screening[shown.length];
+        int size = 0;
+        for (int ID : popularity.topScreenings(TRENDING_CAPACITY)) {
+            Screening trending = byID.remove(ID);
+            if (trending != null) result[size++] = trending;
+        }
+        for (Screening screening : shown)
+            if (byID.containsKey(screening.getID())) result[size++] = screening;
+        return result;
+    }
+
+    /**
+     * Seats that are booked in the loaded time slots, by venue, weekday, and hour, and by movie and weekday.
+     * The counts are kept up to date as tickets are booked, cancelled, and expired, so reading them is always cheap.
+     *
+     * @return Booked seats, for occupancy reports. Should only be read from.
+     * @see #calculateOfferedSeats()
+     */
+    public OccupancyCubes getBookedSeats() {
+        return bookedSeats;
+    }
+
+    /**
+     * Counts the seats that are offered in every time slot of the loaded screenings that has not finished yet, to compare
+     * to the booked seats. That includes the time slots that are showing right now, as their tickets are still loaded.
+     * This is worked out from the cached schedules, so it does not query the database. Time slots that have tickets
+     * but are not in the schedules, e.g. after {@code booking_horizon_days} is lowered, are offered as well, so that
+     * no more seats are ever booked than offered.
+     *
+     * @return Offered seats, by venue, weekday, and hour, and by movie and weekday.
+     * @see #getBookedSeats()
+     */
+    public OccupancyCubes calculateOfferedSeats() {
+        long start = System.nanoTime();
+        OccupancyCubes result = new OccupancyCubes(ZoneId.systemDefault());
+        HashSet<Long> counted = new HashSet<>();
+        for (Screening screening : screenings.values())
+            for (Timestamp time : schedules.unfinished(screening))
+                if (counted.add(OccupancyIndex.key(screening.getID(), time.getTime())))
+                    result.count(screening, time.getTime(), screening.getVenue().getTotalSeats());
+        for (long slot : expiringSlots) {
+            Screening screening = screenings.get((int) (slot >>> 32));
+            if (screening != null && counted.add(slot))
+                result.count(screening, TimeUnit.MINUTES.toMillis(slot & 0xFFFFFFFFL), screening.getVenue().getTotalSeats());
+        }
+        System.out.println(String.format(">> Counted offered seats of %d time slots in %.2fms", counted.size(), (System.nanoTime() - start) / 1000000D));
+        return result;
+    }
+
+    /**
+     * Calculates how many seats are left across every time slot of a screening that is still to come today.
+     *
+     * @param screening The screening to check.
+     * @return Number of seats left today, or -1 if there are no more time slots today.
+     */
+    public int calculateSeatsLeftToday(Screening screening) {
+        List<Timestamp> today = schedules.upcomingToday(screening);
+        if (today.isEmpty()) return -1;
+        return Arrays.stream(availability.countRemaining(screening, today)).sum();
+    }
+
+    /**
+     * Checks if a seat has already been booked for a specific screening date.
+     *
+     * @param screening The screening to check.
+     * @param date      The particular date & time of the screening.
+     * @param row       Seat row, starting from 0.
+     * @param col       Seat column, starting from 0.
+     * @return True, if the seat is taken.
+     */
+    public boolean isSeatTaken(Screening screening, Timestamp date, int row, int col) {
+        return occupancy.isOccupied(screening, date.getTime(), screening.getVenue().getSeatID(row, col));
+    }
+
+    /**
+     * Checks if a seat is unavailable to select, because it is booked or because another session has selected it.
+     *
+     * @param screening The screening to check.
+     * @param date      The particular date & time of the screening.
+     * @param row       Seat row, starting from 0.
+     * @param col       Seat column, starting from 0.
+     * @return True, if the seat is claimed.
+     */
+    public boolean isSeatClaimed(Screening screening, Timestamp date, int row, int col) {
+        return claims.isClaimed(screening, date.getTime(), screening.getVenue().getSeatID(row, col));
+    }
+
+    /**
+     * Claims a seat for a booking session, so that no other session can select or book it.
+     *
+     * @param screening The screening.
+     * @param date      The time slot.
+     * @param seat      Worded seat allocation, e.g. B12.
+     * @return True, if the seat was free and is now claimed.
+     */
+    public boolean claimSeat(Screening screening, Timestamp date, String seat) {
+        expireLater(screening, date);
+        return claims.claim(screening, date.getTime(), screening.getVenue().getSeatID(seat));
+    }
+
+    /**
+     * Claims several seats for a booking session, all or nothing.
+     *
+     * @param screening The screening.
+     * @param date      The time slot.
+     * @param seats     Worded seat allocations, e.g. B12.
+     * @return Seats that were already claimed, in which case none were claimed. Empty if every seat is now claimed.
+     */
+    public List<String> claimSeats(Screening screening, Timestamp date, Collection<String> seats) {
+        Venue venue = screening.getVenue();
+        expireLater(screening, date);
+        int[] conflicts = claims.claimAll(screening, date.getTime(), seats.stream().mapToInt(venue::getSeatID).toArray());
+        List<String> result = new ArrayList<>(conflicts.length);
+        for (int seatID : conflicts)
+            result.add(venue.getSeatLabel(seatID));
+        return result;
+    }
+
+    /**
+     * Finds the best seats for a party among the seats that are not booked or selected by anyone.
+     * The seats are not claimed; see {@link #claimSeats(Screening, Timestamp, Collection)}.
+     *
+     * @param screening The screening.
+     * @param date      The time slot.
+     * @param party     Number of seats needed.
+     * @return Worded seat allocations, e.g. B12, or an empty list if there are not enough free seats.
+     * @see BestAvailable
+     */
+    public List<String> findBestSeats(Screening screening, Timestamp date, int party) {
+        Venue venue = screening.getVenue();
+        BitSet taken = venue.getLayout().markGaps(claims.snapshot(screening, date.getTime()));
+        int[] seatIDs = BestAvailable.find(taken, venue.getNoOfRows(), venue.getNoOfCols(), party);
+        List<String> result = new ArrayList<>(seatIDs.length);
+        for (int seatID : seatIDs)
+            result.add(venue.getSeatLabel(seatID));
+        return result;
+    }
+
+    /**
+     * Finds showtimes of any screening where a party can sit together, among the seats that are not booked or selected by anyone.
+     *
+     * @param party Number of adjacent seats needed.
+     * @param from  The earliest start time to consider, as epoch milliseconds.
+     * @param until The latest start time to consider, as epoch milliseconds.
+     * @param limit Maximum amount of results.
+     * @param order Whether the soonest showtimes or the best seats come first.
+     * @return Up to the limit of showtimes, with the best adjacent seats at each. The seats are not claimed.
+     * @see AdjacentSeatSearch
+     */
+    public List<AdjacentSeatSearch.Hit> findSeatsTogether(int party, long from, long until, int limit, AdjacentSeatSearch.Order order) {
+        long start = System.nanoTime();
+        List<Showtime> candidates = new ArrayList<>();
+        for (Screening screening : sortedScreenings.get(SortedScreenings.SortKey.START_DATE))
+            for (Timestamp time : schedules.upcoming(screening))
+                if (time.getTime() >= from && time.getTime() <= until) candidates.add(new Showtime(screening, time));
+        candidates.sort(Comparator.comparing(Showtime::getDate).thenComparingInt(showtime -> showtime.getScreening().getID()));
+
+        List<AdjacentSeatSearch.Hit> result = seatSearch.search(candidates, party, limit, order);
+        System.out.println(String.format(">> Searched %d showtimes for %d adjacent seats in %.2fms", candidates.size(), party, (System.nanoTime() - start) / 1000000D));
+        return result;
+    }
+
+    /**
+     * Releases seats that were claimed by a booking session, but not booked.
+     *
+     * @param screening The screening.
+     * @param date      The time slot.
+     * @param seats     Worded seat allocations, e.g. B12.
+     */
+    public void releaseSeats(Screening screening, Timestamp date, Collection<String> seats) {
+        for (String seat : seats)
+            claims.release(screening, date.getTime(), screening.getVenue().getSeatID(seat));
+    }
+
+    /**
+     * @return The cinema site that this kiosk serves, or 0 if it serves every site.
+     */
+    public int getSite() {
+        return site;
+    }
+
+    /**
+     * Chain-level reporting: counts booked tickets at every site, not just the loaded partition.
+     *
+     * @return Site numbers, mapped to the number of in-date tickets booked at that site.
+     */
+    public HashMap<Integer, Integer> countChainTicketsBySite() {
+        return database.countTicketsBySite();
     }
 
     /**
@@ -269,6 +1119,20 @@ public class DataController {
         return screenings.values();
     }
 
+    /**
+     * @return The current active screenings, in every available order.
+     */
+    public SortedScreenings getSortedScreenings() {
+        return sortedScreenings;
+    }
+
+    /**
+     * @return Filters the current active screenings by genre, venue, day, time of day, and running time.
+     */
+    public FacetIndex getFacets() {
+        return facets;
+    }
+
     /**
      * @return List of genres found in the loaded screenings.
      */
@@ -277,53 +1141,12 @@ public class DataController {
     }
 
     /**
-     * Calculates all potential booking times within the next 14 days for a screening.
+     * Calculates all potential booking times within the booking horizon (14 days by default) for a screening.
      *
      * @return The list of available booking times.
      */
-    public LinkedList<Timestamp> calculateTimes(Screening screening) {
-        // Set up minimum, maximum, and current timestamps.
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(new Date());
-
-        // Go ahead 14 days to determine maximum then go back.
-        cal.add(Calendar.DAY_OF_WEEK, 14);
-        Timestamp max = new Timestamp(cal.getTime().getTime());
-        cal.setTime(new Date());
-
-        // If calculated maximum occurs after end of screening range, set it to that instead.
-        if (max.after(screening.getEndDate())) max = screening.getEndDate();
-
-        LinkedList<Timestamp> result = new LinkedList<>();
-        // Continually loop, adding 1 day each time until we've determined all reasonable days.
-        while (max.after(cal.getTime())) {
-            // Determine the calendar time of now.
-            Calendar now = Calendar.getInstance();
-            now.setTime(cal.getTime());
-            now.set(Calendar.SECOND, 0);
-            now.set(Calendar.MILLISECOND, 0);
-            String dayOfWeek = DAY_OF_WEEK_FORMATTER.format(now.getTime());
-
-            // For every incremental day, check what screening times fall upon this day.
-            screening.getScreeningTimes().stream().filter(time -> time.getDayOfWeek().equals(dayOfWeek)).forEach(time -> {
-                try {
-                    // Determine time of day that the screening will take place, then add it.
-                    String[] times = time.getTime().split(":");
-                    int hours = Integer.parseInt(times[0]), minutes = Integer.parseInt(times[1]);
-                    now.set(Calendar.HOUR_OF_DAY, hours);
-                    now.set(Calendar.MINUTE, minutes);
-
-                    // Only add this timestamp after checking that it hasn't passed yet.
-                    Timestamp timestamp = new Timestamp(now.getTime().getTime());
-                    if (timestamp.before(new Date())) return;
-                    result.add(timestamp);
-                } catch (Exception ex) {
-                    System.out.println("> WARNING: Unable to process time value '" + time.getTime() + "' for screening ID #" + screening.getID());
-                }
-            });
-            cal.add(Calendar.DAY_OF_WEEK, 1);
-        }
-        return result;
+    public List<Timestamp> calculateTimes(Screening screening) {
+        return schedules.upcoming(screening);
     }
 
     /**
@@ -335,12 +1158,11 @@ public class DataController {
      * @return Human friendly formatted date as explained above.
      */
     public String friendlyDate(Date calculatedDate) {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(calculatedDate);
-        String dayOfWeek = DAY_OF_WEEK_FORMATTER.format(cal.getTime());
-        String dayNum = ordinal(cal.get(Calendar.DAY_OF_MONTH));
-        String month = MONTH_FORMATTER.format(cal.getTime());
-        String time = TIME_FORMATTER.format(cal.getTime());
+        ZonedDateTime date = Instant.ofEpochMilli(calculatedDate.getTime()).atZone(ZoneId.systemDefault());
+        String dayOfWeek = DAY_OF_WEEK_FORMATTER.format(date);
+        String dayNum = ordinal(date.getDayOfMonth());
+        String month = MONTH_FORMATTER.format(date);
+        String time = TIME_FORMATTER.format(date);
         return dayOfWeek + ", " + dayNum + " of " + month + ", " + time;
     }
 
@@ -366,69 +1188,190 @@ public class DataController {
 
     /**
      * Converts a worded seat allocation, e.g. B12, to an array index position.
-     * Seat B12 in this case would become [2, 12].
+     * Seat B12 in this case would become [1, 11]. This assumes a venue without gaps; see {@link Venue#getSeatID(String)}.
      *
      * @param seatAlloc Worded seat allocation.
      * @return Array index position.
      */
     public int[] seatAllocToArrayPos(String seatAlloc) {
         // This method is unused, but I will keep it here just in case.
-        int row = seatAlloc.charAt(0) - 'A';
-        int col = Integer.parseInt(seatAlloc.substring(1)) - 1;
+        int split = 0;
+        while (!Character.isDigit(seatAlloc.charAt(split))) split++;
+        int row = VenueLayout.rowNumber(seatAlloc.substring(0, split));
+        int col = Integer.parseInt(seatAlloc.substring(split)) - 1;
         return new int[]{row, col};
     }
 
     /**
      * Converts a seat's array index position into a worded seat allocation.
-     * e.g. [2, 12] will become seat B12.
+     * e.g. [1, 11] will become seat B12. This assumes a venue without gaps; see {@link Venue#getSeatLabel(int)}.
      *
      * @param seatArrayPos Array index position.
      * @return Worded seat allocation.
      */
     public String seatArrayPosToAlloc(int[] seatArrayPos) {
-        char row = (char) ('A' + seatArrayPos[0]);
-        return row + "" + (seatArrayPos[1] + 1);
+        return VenueLayout.rowLabel(seatArrayPos[0]) + (seatArrayPos[1] + 1);
+    }
+
+    /**
+     * Books a set of seats for a time slot, all or nothing. This is safe to call from several threads at once;
+     * if two sessions try to book the same seat, exactly one of them succeeds.
+     * Sessions should claim the seats first (see {@link #claimSeats(Screening, Timestamp, Collection)}),
+     * in which case the booking cannot conflict; the claims then belong to the booked tickets.
+     *
+     * @param screening The screening.
+     * @param date      The time slot.
+     * @param seats     Worded seat allocations, e.g. B12.
+     * @param username  The username to book the tickets under.
+     * @return Seats that had already been booked, in which case nothing was booked. Empty if the booking succeeded.
+     * @throws SQLException If the tickets could not be saved, in which case nothing was booked and the seats are free again.
+     */
+    public List<String> book(Screening screening, Timestamp date, Collection<String> seats, String username) throws SQLException {
+        return book(screening, date, seats, username, new ArrayList<>());
+    }
+
+    /**
+     * Same as {@link #book(Screening, Timestamp, Collection, String)}, but also hands back the booked tickets.
+     *
+     * @param result Receives the booked tickets, if the booking succeeded.
+     */
+    private List<String> book(Screening screening, Timestamp date, Collection<String> seats, String username, List<Ticket> result) throws SQLException {
+        List<String> taken = mutate(screening, date, () -> {
+            // First, make sure none of the seats have been taken in the meantime.
+            List<String> booked = new ArrayList<>();
+            for (String seat : seats)
+                if (occupancy.isOccupied(screening, date.getTime(), screening.getVenue().getSeatID(seat)))
+                    booked.add(seat);
+            if (!booked.isEmpty()) return booked;
+
+            // Then create the tickets and add them to the existing ticket store too!
+            for (String seat : seats) {
+                Ticket ticket = new Ticket(screening, date, seat, username);
+                tickets.add(ticket);
+                index(ticket);
+                popularity.booked(ticket);
+                result.add(ticket);
+            }
+            // The tickets cannot be cancelled until they have been saved.
+            writing.addAll(result);
+            return booked;
+        });
+        if (!taken.isEmpty()) return taken;
+
+        // Finally, insert all the tickets into the database. The seats are already claimed, so this can happen outside of the mutation.
+        try {
+            ticketWriter.saveTickets(result);
+        } catch (SQLException ex) {
+            // The booking was not saved, so take the tickets back out; removing them from the claims frees their seats.
+            mutate(screening, date, () -> {
+                List<Ticket> gone = tickets.removeAll(result);
+                ticketIndexes.forEach(index -> index.removeAll(gone));
+                gone.forEach(popularity::cancelled);
+                writing.removeAll(result);
+                return gone;
+            });
+            result.clear();
+            throw ex;
+        }
+        writing.removeAll(result);
+        return Collections.emptyList();
+    }
+
+    /**
+     * Books seats for a large party at whichever of several showtimes fits it best. Every showtime is searched in parallel
+     * for its best available seats, and the best pick overall is the one that splits the party into the fewest blocks,
+     * with the seats closest to the ideal viewing point. Ties go to the showtime listed first.
+     * <p>
+     * The picked seats are claimed all or nothing, and then booked all or nothing. If another session takes one of them
+     * in the meantime, the search is simply run again against the new occupancy.
+     *
+     * @param candidates The showtimes that the party could attend, in order of preference.
+     * @param party      Number of seats needed.
+     * @param username   The username to book the tickets under.
+     * @return The booked tickets, or an empty list if no showtime has enough free seats.
+     * @throws SQLException If the picked seats could not be saved, in which case nothing was booked.
+     * @see BestAvailable#allocate(BitSet, int, int, int)
+     */
+    public List<Ticket> bookGroup(List<Showtime> candidates, int party, String username) throws SQLException {
+        for (int attempt = 0; attempt < GROUP_BOOKING_ATTEMPTS; attempt++) {
+            // Search every showtime against a snapshot of its claims; snapshots are lock-free, so this runs in parallel.
+            BestAvailable.Allocation[] picks = candidates.parallelStream().map(candidate -> {
+                Venue venue = candidate.getScreening().getVenue();
+                return BestAvailable.allocate(venue.getLayout().markGaps(claims.snapshot(candidate.getScreening(), candidate.getDate().getTime())),
+                        venue.getNoOfRows(), venue.getNoOfCols(), party);
+            }).toArray(BestAvailable.Allocation[]::new);
+            int best = -1;
+            for (int i = 0; i < picks.length; i++)
+                if (picks[i].isFound() && (best == -1 || picks[i].compareTo(picks[best]) < 0)) best = i;
+            if (best == -1) return Collections.emptyList();
+
+            Showtime showtime = candidates.get(best);
+            Screening screening = showtime.getScreening();
+            List<String> seats = new ArrayList<>(party);
+            for (int seatID : picks[best].getSeatIDs())
+                seats.add(screening.getVenue().getSeatLabel(seatID));
+            if (!claimSeats(screening, showtime.getDate(), seats).isEmpty()) continue;
+
+            List<Ticket> result = new ArrayList<>(party);
+            List<String> taken = book(screening, showtime.getDate(), seats, username, result);
+            if (taken.isEmpty()) return result;
+            seats.removeAll(taken);
+            releaseSeats(screening, showtime.getDate(), seats);
+        }
+        System.out.println(">> Group booking of " + party + " seats gave up after " + GROUP_BOOKING_ATTEMPTS + " attempts");
+        return Collections.emptyList();
     }
 
     /**
      * Once a user clicks "Make Booking", this method creates
      * the tickets and reflects the changes in the database.
+     *
+     * @return True, if the booking was made; false if a selected seat was booked by someone else in the meantime,
+     * or the booking could not be saved.
      */
-    public void compileBooking() {
-        // First, create all the tickets.
-        List<Ticket> result = new ArrayList<>();
-        for (Iterator<String> it = main.state().seatIterator(); it.hasNext(); ) {
-            String seat = it.next();
-            Ticket ticket = new Ticket(getSelectedScreening(), main.state().getSelectedTime(), seat, main.state().getBookingUsername());
-            result.add(ticket);
+    public boolean compileBooking() {
+        Screening screening = getSelectedScreening();
+        Timestamp time = main.state().getSelectedTime();
+        List<String> seats = new ArrayList<>();
+        main.state().seatIterator().forEachRemaining(seats::add);
+        List<String> taken;
+        try {
+            taken = book(screening, time, seats, main.state().getBookingUsername());
+        } catch (SQLException ex) {
+            // The seats were freed when the booking was taken back, so the selection no longer holds any claims.
+            main.state().forgetSeatSelection();
+            ex.printStackTrace();
+            JOptionPane.showMessageDialog(null, String.format("Unable to save your booking, nothing has been booked. Reason:\n%s\nPlease try again.", ex.getMessage()),
+                    "Unable to Save!", JOptionPane.ERROR_MESSAGE);
+            return false;
         }
-        // Add them all to the existing ticket list too!
-        tickets.addAll(result);
 
-        // Second, insert all the tickets into the database.
-        result.forEach(ticket -> database.saveTicket(ticket));
+        // The selected seats are either booked now, or given back below, so the selection no longer holds any claims.
+        main.state().forgetSeatSelection();
+        if (!taken.isEmpty()) {
+            // The taken seats are claimed by their tickets; give back the rest so the user can pick again.
+            seats.removeAll(taken);
+            releaseSeats(screening, time, seats);
+            JOptionPane.showMessageDialog(null, "Sorry, the following seat(s) have just been booked by someone else: " + String.join(", ", taken) +
+                    "\nPlease select different seats.", "Seats Unavailable", JOptionPane.WARNING_MESSAGE);
+            return false;
+        }
 
         // Send a message to the user!
         JOptionPane.showMessageDialog(null, "Your booking has been saved & confirmed!\nTo view your tickets, please click \"View Tickets\".\nThank you!", "Booking Success!", JOptionPane.INFORMATION_MESSAGE);
+        return true;
     }
 
     /**
      * Re-maps a username query ticket list into something more easily presentable.
-     * In this case, it takes each tick it, and groups them by screening, or rather, by movie.
+     * In this case, it takes each ticket, and groups them by screening, or rather, by movie.
      * Grouping is done by movie because it is simplier and two screenings of the same movie cannot happen.
+     * The grouping is maintained as tickets are booked and deleted, so this is only a copy.
      *
      * @return Movies, mapped to individual lists of tickets.
      * @see #findTicketsByUsername(String)
      */
-    public HashMap<Movie, List<Ticket>> remapTickets() {
-        HashMap<Movie, List<Ticket>> result = new HashMap<>();
-
-        main.state().getQueryTickets().forEach(ticket -> {
-            Movie movie = ticket.getScreening().getMovie();
-            List<Ticket> ticketsInMovie = result.getOrDefault(movie, new ArrayList<>());
-            if (ticketsInMovie.isEmpty()) result.put(movie, ticketsInMovie);
-            ticketsInMovie.add(ticket);
-        });
-        return result;
+    public LinkedHashMap<Movie, List<Ticket>> remapTickets() {
+        return usernames.findGrouped(main.state().getQueryUsername());
     }
 }
@@ -1,5 +1,8 @@
 package solar.rpg.ticketer.controller;
 
+import solar.rpg.ticketer.controller.index.FacetIndex;
+import solar.rpg.ticketer.controller.index.SortedScreenings;
+import solar.rpg.ticketer.controller.index.TitleIndex;
 import solar.rpg.ticketer.models.Screening;
 import solar.rpg.ticketer.models.Ticket;
 import solar.rpg.ticketer.views.MainView;
@@ -8,8 +11,6 @@ import solar.rpg.ticketer.views.booking.ArrangementView;
 import javax.swing.*;
 import java.sql.Timestamp;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 /**
  * This controller is responsible for controlling & maintaining the <em>logical</em>
@@ -29,19 +30,15 @@ public class StateController {
     private int selectedPage = 1;
     private int selectedScreening = -1;
 
-    // Calculations for regular grid view.
-    private final int maxPage;
-    private final int lastPageModulo;
-
-    // Calculations & elements for sorted grid view.
-    private String sortBy = "";
-    private final LinkedList<Screening> sortedScreenings;
-    private int maxSortedPage;
-    private int lastSortedPageModulo;
+    // Order & filters of the grid view, and the sorted screenings that are being paged through.
+    private SortedScreenings.SortKey sortKey = SortedScreenings.SortKey.START_DATE;
+    private final EnumMap<FacetIndex.Facet, Set<String>> filters;
+    private String searchQuery = "";
+    private Screening[] shownScreenings;
 
     // Current state of booking arrangements.
     private ArrangementView.ArrangementState state;
-    private LinkedList<Timestamp> availableTimes;
+    private List<Timestamp> availableTimes;
     private Timestamp selectedTime;
     private int noOfAttendees;
     private final Set<String> selectedSeats;
@@ -53,12 +50,9 @@ public class StateController {
 
     public StateController(MainView main) {
         this.main = main;
-        this.sortedScreenings = new LinkedList<>();
         this.selectedSeats = new LinkedHashSet<>();
-
-        // Calculate maximum amount of pages of screenings that can be shown.
-        maxPage = (int) Math.ceil(main.data().getScreenings().size() / 6D);
-        lastPageModulo = main.data().getScreenings().size() % 6;
+        this.filters = new EnumMap<>(FacetIndex.Facet.class);
+        this.shownScreenings = main.data().getSortedScreenings().get(sortKey);
     }
 
     /**
@@ -95,75 +89,133 @@ public class StateController {
     }
 
     /**
-     * Updates genre sorting preferences.
+     * Selects or deselects a value of a facet to filter the grid by. Values of the same facet are alternatives,
+     * e.g. "Comedy or Drama", whereas different facets must all match, e.g. "Comedy on a Monday".
      *
-     * @param sortBy The new genre to sort by, if any.
-     */
-    public void changeSortBy(String sortBy) {
-        this.sortBy = sortBy;
-        if (!sortBy.isEmpty()) {
-            // Find all screenings that fit under the genre category.
-            sortedScreenings.clear();
-            main.data().getScreenings().stream().filter(screening -> screening.getMovie().getGenre().equals(sortBy)).forEach(screening -> sortedScreenings.add(screening));
-
-            // Calculate maximum amount of pages of screenings that can be shown.
-            maxSortedPage = (int) Math.ceil(sortedScreenings.size() / 6D);
-            lastSortedPageModulo = sortedScreenings.size() % 6;
+     * @param facet    The facet.
+     * @param value    The facet's value.
+     * @param selected True to filter by the value, false to stop filtering by it.
+     */
+    public void changeFilter(FacetIndex.Facet facet, String value, boolean selected) {
+        if (selected)
+            filters.computeIfAbsent(facet, key -> new HashSet<>()).add(value);
+        else if (filters.containsKey(facet)) {
+            filters.get(facet).remove(value);
+            if (filters.get(facet).isEmpty()) filters.remove(facet);
         }
+        refreshShownScreenings();
+    }
 
-        // Reflect the changes on the current screening grid output.
-        main.booking().movieGrid().reset();
-        main.booking().movieGrid().update();
+    /**
+     * Stops filtering the grid at all.
+     */
+    public void clearFilters() {
+        filters.clear();
+        refreshShownScreenings();
     }
 
     /**
-     * This is unused, but I will keep it anyway.
+     * Only shows screenings of movies whose titles match a search query, best match first.
      *
-     * @return What genre the movie grid is being sorted by, if anything.
+     * @param searchQuery What has been typed into the search box. An empty query shows every screening, and so does a
+     *                    query that is too short to search for, so the grid is not emptied while typing the first letter.
      */
-    public String getSortBy() {
-        return sortBy;
+    public void changeSearch(String searchQuery) {
+        this.searchQuery = TitleIndex.isSearchable(searchQuery) ? searchQuery.trim() : "";
+        refreshShownScreenings();
     }
 
     /**
-     * Calculates up to 6 screenings to show on the movie grid view.
-     * This is based on the current "page", where page 1 represents the first six in the map.
-     *
-     * @return Screening for page content.
+     * @param facet The facet.
+     * @return The facet's values, mapped to how many screenings they would show given the other facets' filters.
      */
-    public LinkedList<Screening> paginate() {
-        if (sortBy.isEmpty())
-            return paginate(main.data().getScreenings().iterator(), maxPage, lastPageModulo);
-        else return paginate(sortedScreenings.iterator(), maxSortedPage, lastSortedPageModulo);
+    public LinkedHashMap<String, Integer> countFilterMatches(FacetIndex.Facet facet) {
+        return main.data().getFacets().counts(facet, filters);
     }
 
     /**
-     * Once the sorted/un-sorted values have been ascertained, pagination can be calculated.
+     * Updates the order that screenings are shown in.
      *
-     * @param iterator       The iterator containing the data.
-     * @param maxPage        The maximum page.
-     * @param lastPageModulo The modulo for the last page.
-     * @return Screening for page content.
+     * @param sortKey The new sort key.
+     */
+    public void changeSortKey(SortedScreenings.SortKey sortKey) {
+        this.sortKey = sortKey;
+        refreshShownScreenings();
+    }
+
+    /**
+     * @return The order that screenings are shown in.
+     */
+    public SortedScreenings.SortKey getSortKey() {
+        return sortKey;
+    }
+
+    /**
+     * Shows the screenings that are left after the catalog has changed, e.g. once a screening has ended.
+     * Filter values that no longer match any screening are deselected, and the grid stays on the same page if it still exists.
+     */
+    public void refreshCatalog() {
+        filters.forEach((facet, values) -> values.retainAll(main.data().getFacets().values(facet)));
+        filters.values().removeIf(Set::isEmpty);
+        refreshStayingOnPage();
+    }
+
+    /**
+     * Re-ranks the grid if it is ordered by what is trending, as bookings may have changed what is. The grid stays on the same page.
+     */
+    public void refreshTrending() {
+        if (sortKey == SortedScreenings.SortKey.TRENDING) refreshStayingOnPage();
+    }
+
+    /**
+     * Same as {@link #refreshShownScreenings()}, but stays on the same page if it still exists.
      */
-    private LinkedList<Screening> paginate(Iterator<Screening> iterator, int maxPage, int lastPageModulo) {
-        if (getSelectedPage() > maxPage) throw new IllegalArgumentException("Cannot paginate when page > maxPage?");
-        LinkedList<Screening> result;
+    private void refreshStayingOnPage() {
+        int page = selectedPage;
+        refreshShownScreenings();
+        setSelectedPage(Math.min(page, getMaxPage()));
+        main.booking().movieGrid().update();
+    }
 
-        // Bring the iterator to the correct starting position.
-        int startingIndex = Math.max(0, (getSelectedPage() - 1) * 6);
-        IntStream.range(0, startingIndex).forEachOrdered(i -> iterator.next());
+    /**
+     * Picks the precomputed array matching the current order, filters it if needed, and reflects it on the screening grid.
+     */
+    private void refreshShownScreenings() {
+        shownScreenings = filters.isEmpty() ? main.data().getSortedScreenings().get(sortKey) : main.data().getFacets().filter(sortKey, filters);
+        if (sortKey == SortedScreenings.SortKey.TRENDING)
+            shownScreenings = main.data().sortByTrending(shownScreenings);
+        if (!searchQuery.isEmpty()) {
+            // Keep only screenings of matching movies, with the best matching movies first (otherwise in the chosen order).
+            HashMap<String, Integer> ranks = new HashMap<>();
+            for (String title : main.data().searchMovieTitles(searchQuery, 100))
+                ranks.put(title, ranks.size());
+            shownScreenings = Arrays.stream(shownScreenings).filter(screening -> ranks.containsKey(screening.getMovie().getName()))
+                    .sorted(Comparator.comparingInt(screening -> ranks.get(screening.getMovie().getName()))).toArray(Screening[]::new);
+        }
 
-        // Add screenings to page as long as there is still more to come.
-        result = IntStream.range(0, (getSelectedPage() != maxPage || lastPageModulo == 0 ? 6 : lastPageModulo))
-                .mapToObj(i -> iterator.next()).collect(Collectors.toCollection(LinkedList::new));
-        return result;
+        // Reflect the changes on the current screening grid output.
+        main.booking().movieGrid().reset();
+        main.booking().movieGrid().update();
+    }
+
+    /**
+     * Calculates up to 6 screenings to show on the movie grid view.
+     * This is based on the current "page", where page 1 represents the first six in the current order.
+     * The screenings are already sorted, so any page is a slice of the array.
+     *
+     * @return Screening for page content.
+     */
+    public LinkedList<Screening> paginate() {
+        if (getSelectedPage() > getMaxPage()) throw new IllegalArgumentException("Cannot paginate when page > maxPage?");
+        int from = (getSelectedPage() - 1) * 6;
+        return new LinkedList<>(Arrays.asList(shownScreenings).subList(from, Math.min(from + 6, shownScreenings.length)));
     }
 
     /**
      * @return The maximum page of screening results.
      */
     public int getMaxPage() {
-        return sortBy.isEmpty() ? maxPage : maxSortedPage;
+        return Math.max(1, (shownScreenings.length + 5) / 6);
     }
 
     /**
@@ -181,11 +233,13 @@ public class StateController {
      */
     public void setArrangementState(ArrangementView.ArrangementState state) {
         this.state = state;
+        // Give back claimed seats while the screening and time they belong to are still known.
+        if (state == ArrangementView.ArrangementState.UNDECIDED || state == ArrangementView.ArrangementState.DECIDE_WHEN)
+            resetSeatSelection();
         switch (state) {
             case UNDECIDED:
                 selectedScreening = -1;
             case DECIDE_WHEN:
-                selectedSeats.clear();
                 selectedTime = null;
                 availableTimes = null;
                 noOfAttendees = -1;
@@ -203,14 +257,14 @@ public class StateController {
      *
      * @param availableTimes Available screening times.
      */
-    public void setAvailableTimes(LinkedList<Timestamp> availableTimes) {
+    public void setAvailableTimes(List<Timestamp> availableTimes) {
         this.availableTimes = availableTimes;
     }
 
     /**
      * @return List of available screening times for the selected screening.
      */
-    public LinkedList<Timestamp> getAvailableTimes() {
+    public List<Timestamp> getAvailableTimes() {
         return availableTimes;
     }
 
@@ -247,27 +301,44 @@ public class StateController {
     }
 
     /**
-     * Adds a seat to the currently selected seats.
+     * Adds a seat to the currently selected seats, claiming it so that no other session can select it.
      *
      * @param seat The seat to add to the selection set.
-     * @return True if seat was not already in the set; otherwise false.
+     * @return True if seat was not already in the set and has been claimed; otherwise false.
      */
     public boolean addSeatSelection(String seat) {
         if (selectedSeats.size() >= noOfAttendees) {
             JOptionPane.showMessageDialog(null, "You cannot select any more seats! Please proceed to the next section.\nIf you wish to remove a selected seat, please click it again.", "All Seats Selected!", JOptionPane.WARNING_MESSAGE);
             return false;
         }
+        if (selectedSeats.contains(seat) || !main.data().claimSeat(main.data().getSelectedScreening(), selectedTime, seat))
+            return false;
         return selectedSeats.add(seat);
     }
 
     /**
-     * Removes a selected seat from the currently selected seats.
+     * Adds several seats to the currently selected seats at once, claiming all of them or none of them.
+     *
+     * @param seats The seats to add to the selection set.
+     * @return True if every seat has been claimed and selected; false if any of them was already claimed.
+     */
+    public boolean addSeatSelections(Collection<String> seats) {
+        if (!main.data().claimSeats(main.data().getSelectedScreening(), selectedTime, seats).isEmpty())
+            return false;
+        selectedSeats.addAll(seats);
+        return true;
+    }
+
+    /**
+     * Removes a selected seat from the currently selected seats, and releases its claim.
      *
      * @param seat The seat to remove from the selection set.
      * @return True if the seat was in the set; otherwise false.
      */
     public boolean removeSeatSelection(String seat) {
-        return selectedSeats.remove(seat);
+        if (!selectedSeats.remove(seat)) return false;
+        main.data().releaseSeats(main.data().getSelectedScreening(), selectedTime, Collections.singleton(seat));
+        return true;
     }
 
     /**
@@ -288,9 +359,20 @@ public class StateController {
     }
 
     /**
-     * Completely removes all selected seats.
+     * Completely removes all selected seats, and releases their claims.
      */
     public void resetSeatSelection() {
+        if (selectedSeats.isEmpty()) return;
+        // If the screening has ended since, its claims have been thrown away already.
+        if (main.data().getSelectedScreening() != null)
+            main.data().releaseSeats(main.data().getSelectedScreening(), selectedTime, selectedSeats);
+        selectedSeats.clear();
+    }
+
+    /**
+     * Removes all selected seats without releasing their claims, once they have been booked.
+     */
+    void forgetSeatSelection() {
         selectedSeats.clear();
     }
 
@@ -0,0 +1,131 @@
+package solar.rpg.ticketer.controller;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks once their deadlines have passed, using a hashed timing wheel. Time is cut into ticks, and the wheel
+ * has a fixed number of buckets that the ticks are dealt into round-robin, so each deadline goes into the bucket of its tick.
+ * Scheduling a task is a queue append, and each tick only looks at one bucket, however many tasks there are.
+ * Deadlines further away than one turn of the wheel simply stay in their bucket until the turn that they are due.
+ * <p>
+ * A single thread moves the wheel along and runs the due tasks, so tasks should be short. They are never run early, and are run
+ * within a tick or two of their deadline. Tasks can be scheduled from any thread, including from within a task.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see DataController
+ * @since 0.1
+ */
+final class TimingWheel {
+
+    /**
+     * A task, and when it should be run.
+     */
+    private static final class Timeout {
+        private final long deadline;
+        private final Runnable task;
+
+        private Timeout(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+    }
+
+    private final long tickMillis;
+    private final int mask;
+
+    // Scheduled tasks that the wheel thread has not dealt into a bucket yet.
+    private final ConcurrentLinkedQueue<Timeout> pending;
+
+    // Tasks of every bucket. Only touched by the wheel thread.
+    private final ArrayDeque<Timeout>[] buckets;
+
+    // The next tick that has not been processed yet. Only touched by the wheel thread.
+    private long tick;
+
+    private final ScheduledExecutorService ticker;
+
+    /**
+     * @param tickMillis Length of a tick, in milliseconds.
+     * @param size       Number of buckets. Must be a power of two.
+     * @param name       Name of the wheel thread.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimingWheel(long tickMillis, int size, String name) {
+        if (Integer.bitCount(size) != 1) throw new IllegalArgumentException("Size must be a power of two");
+        this.tickMillis = tickMillis;
+        this.mask = size - 1;
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.buckets = new ArrayDeque[size];
+        for (int i = 0; i < size; i++)
+            buckets[i] = new ArrayDeque<>();
+        this.tick = System.currentTimeMillis() / tickMillis;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, name);
+            // The wheel thread should not keep the program alive once the window has closed.
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts moving the wheel along. Tasks that are scheduled beforehand are kept until then.
+     */
+    void start() {
+        ticker.scheduleAtFixedRate(() -> advance(System.currentTimeMillis()), tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs a task once a deadline has passed. If it already has, the task is run on the next tick.
+     *
+     * @param deadline When to run the task, as epoch milliseconds.
+     * @param task     The task.
+     */
+    void schedule(long deadline, Runnable task) {
+        pending.add(new Timeout(deadline, task));
+    }
+
+    /**
+     * Processes every tick that has fully passed by now.
+     *
+     * @param now The current time, as epoch milliseconds.
+     */
+    private void advance(long now) {
+        // The last tick that is completely over. Any deadline within it, or before it, is due.
+        long last = now / tickMillis - 1;
+        if (last < tick) return;
+
+        for (Timeout timeout = pending.poll(); timeout != null; timeout = pending.poll()) {
+            if (timeout.deadline / tickMillis <= last) run(timeout);
+            else buckets[(int) (timeout.deadline / tickMillis) & mask].add(timeout);
+        }
+
+        // After a long pause, e.g. when the computer was asleep, every bucket only needs looking at once.
+        for (long current = Math.max(tick, last - mask); current <= last; current++) {
+            ArrayDeque<Timeout> bucket = buckets[(int) current & mask];
+            for (int i = bucket.size(); i > 0; i--) {
+                Timeout timeout = bucket.poll();
+                // Keep tasks that are due on a later turn of the wheel.
+                if (timeout.deadline / tickMillis <= last) run(timeout);
+                else bucket.add(timeout);
+            }
+        }
+        tick = last + 1;
+    }
+
+    /**
+     * Runs a due task. A failing task must not stop the wheel, as no further ticks would be processed.
+     */
+    private static void run(Timeout timeout) {
+        try {
+            timeout.task.run();
+        } catch (RuntimeException ex) {
+            System.out.println(String.format(">> WARNING!! A scheduled task failed: %s", ex));
+            ex.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package solar.rpg.ticketer.controller.index;
+
+import solar.rpg.ticketer.models.Showtime;
+import solar.rpg.ticketer.models.Venue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Answers "where can a party of N sit together?" across many showtimes at once, e.g. every screening tonight.
+ * Each showtime's bitmap of unavailable seats is checked for a row with a long enough run of free seats, and only
+ * the showtimes that have one are then asked for their best seats. Showtimes are checked in parallel on the common
+ * fork-join pool.
+ * <p>
+ * When the soonest showtimes are wanted, they are checked in chunks in time order, and the search stops once
+ * enough have been found. When the best seats are wanted, every showtime has to be checked.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see BestAvailable#fitsTogether(java.util.BitSet, int, int, int)
+ * @since 0.1
+ */
+public final class AdjacentSeatSearch {
+
+    /**
+     * The orders that the found showtimes can be ranked in.
+     */
+    public enum Order {
+        START_TIME("Soonest First"), SEAT_QUALITY("Best Seats First");
+
+        private final String friendlyName;
+
+        Order(String friendlyName) {
+            this.friendlyName = friendlyName;
+        }
+
+        /**
+         * @return The name of this order, as shown to users.
+         */
+        public String getFriendlyName() {
+            return friendlyName;
+        }
+    }
+
+    /**
+     * A showtime where the party can sit together, and the best seats for them there.
+     */
+    public static final class Hit {
+        private final Showtime showtime;
+        private final BestAvailable.Allocation allocation;
+
+        private Hit(Showtime showtime, BestAvailable.Allocation allocation) {
+            this.showtime = showtime;
+            this.allocation = allocation;
+        }
+
+        /**
+         * @return The showtime.
+         */
+        public Showtime getShowtime() {
+            return showtime;
+        }
+
+        /**
+         * @return The best adjacent seats at the showtime. These are not claimed.
+         */
+        public BestAvailable.Allocation getAllocation() {
+            return allocation;
+        }
+    }
+
+    // How many showtimes are checked at once, when searching for the soonest ones.
+    private static final int CHUNK_SIZE = 256;
+
+    // Provides the unavailable seats of a showtime, including any gaps in the venue's layout.
+    private final Function<Showtime, BitSet> taken;
+
+    /**
+     * @param taken Provides a bitmap of the unavailable seats of a showtime.
+     */
+    public AdjacentSeatSearch(Function<Showtime, BitSet> taken) {
+        this.taken = taken;
+    }
+
+    /**
+     * Finds showtimes where a party can sit together.
+     *
+     * @param candidates The showtimes to search, in time order.
+     * @param party      Number of adjacent seats needed.
+     * @param limit      Maximum amount of results.
+     * @param order      How to rank the results.
+     * @return Up to the limit of showtimes with room for the party, best first.
+     */
+    public List<Hit> search(List<Showtime> candidates, int party, int limit, Order order) {
+        if (order == Order.SEAT_QUALITY)
+            // Any showtime could have the best seats, so check them all and keep the best. Ties go to the sooner showtime.
+            return IntStream.range(0, candidates.size()).parallel().mapToObj(i -> check(candidates.get(i), party)).filter(Objects::nonNull)
+                    .sorted(Comparator.comparing(Hit::getAllocation)).limit(limit).collect(Collectors.toList());
+
+        // Check the showtimes a chunk at a time, stopping once there are enough. Results come back in time order.
+        List<Hit> result = new ArrayList<>();
+        for (int from = 0; from < candidates.size() && result.size() < limit; from += CHUNK_SIZE) {
+            List<Hit> found = IntStream.range(from, Math.min(from + CHUNK_SIZE, candidates.size())).parallel()
+                    .mapToObj(i -> check(candidates.get(i), party)).filter(Objects::nonNull).collect(Collectors.toList());
+            result.addAll(found.subList(0, Math.min(found.size(), limit - result.size())));
+        }
+        return result;
+    }
+
+    /**
+     * @return The best adjacent seats at a showtime, or null if the party cannot sit together there.
+     */
+    private Hit check(Showtime showtime, int party) {
+        Venue venue = showtime.getScreening().getVenue();
+        BitSet unavailable = taken.apply(showtime);
+        if (!BestAvailable.fitsTogether(unavailable, venue.getNoOfRows(), venue.getNoOfCols(), party)) return null;
+        return new Hit(showtime, BestAvailable.allocate(unavailable, venue.getNoOfRows(), venue.getNoOfCols(), party));
+    }
+}
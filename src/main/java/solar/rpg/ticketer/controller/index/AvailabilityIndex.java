@@ -0,0 +1,73 @@
+package solar.rpg.ticketer.controller.index;
+
+import solar.rpg.ticketer.models.Screening;
+import solar.rpg.ticketer.models.Ticket;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts the booked seats of every time slot, so that the remaining seats of any number of time slots can be shown
+ * at a glance. The counts are kept up to date as tickets are booked and deleted, so no tickets or bitmaps are ever
+ * scanned to answer a query: it is one lookup per time slot.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see OccupancyIndex#key(int, long)
+ * @since 0.1
+ */
+public class AvailabilityIndex implements TicketIndex {
+
+    // A time slot with this fraction of its seats or fewer left is nearly full.
+    private static final double NEARLY_FULL = 0.1;
+
+    // Time slot keys, mapped to their number of booked seats. Time slots without any bookings are left out.
+    private final ConcurrentHashMap<Long, Integer> booked;
+
+    public AvailabilityIndex() {
+        booked = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public void add(Ticket ticket) {
+        booked.merge(OccupancyIndex.key(ticket.getScreening().getID(), ticket.getSelectedDate().getTime()), 1, Integer::sum);
+    }
+
+    @Override
+    public void remove(Ticket ticket) {
+        // Don't keep empty counts around.
+        booked.computeIfPresent(OccupancyIndex.key(ticket.getScreening().getID(), ticket.getSelectedDate().getTime()),
+                (key, count) -> count == 1 ? null : count - 1);
+    }
+
+    /**
+     * @param screening The screening in question.
+     * @param date      The particular time slot in question, as epoch milliseconds.
+     * @return The number of seats left for this time slot.
+     */
+    public int countRemaining(Screening screening, long date) {
+        return screening.getVenue().getTotalSeats() - booked.getOrDefault(OccupancyIndex.key(screening.getID(), date), 0);
+    }
+
+    /**
+     * @param screening The screening in question.
+     * @param dates     Time slots of the screening.
+     * @return The number of seats left for each time slot, in the same order.
+     */
+    public int[] countRemaining(Screening screening, List<Timestamp> dates) {
+        int[] result = new int[dates.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = countRemaining(screening, dates.get(i).getTime());
+        return result;
+    }
+
+    /**
+     * @param screening The screening in question.
+     * @param remaining The number of seats left for one of its time slots.
+     * @return True, if that is no more than a tenth of the venue's seats (but not none).
+     */
+    public static boolean isNearlyFull(Screening screening, int remaining) {
+        return remaining > 0 && remaining <= Math.max(1, screening.getVenue().getTotalSeats() * NEARLY_FULL);
+    }
+}
@@ -0,0 +1,213 @@
+package solar.rpg.ticketer.controller.index;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Picks the best available seats for a party, straight from a bitmap of unavailable seat IDs.
+ * Free seats are found as runs within each row, skipping whole words of taken seats at a time.
+ * Seats are scored by their distance from an ideal viewing point: the middle of a row two thirds of the way back.
+ * <p>
+ * The party is kept together in one row if any row has room for it, in the best scoring position.
+ * Otherwise it is split over as few runs as possible, by taking the longest runs first.
+ * Each pick is returned as an {@link Allocation}, so that picks from different time slots can be compared.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see solar.rpg.ticketer.models.Venue#getSeatID(int, int)
+ * @since 0.1
+ */
+public final class BestAvailable {
+
+    // Being a row away from the ideal row is worse than being a seat away from the ideal column.
+    private static final double ROW_WEIGHT = 2;
+
+    private BestAvailable() {
+    }
+
+    /**
+     * A run of free seats in a row, from start (inclusive) to end (exclusive), scored as if it were taken whole.
+     */
+    private static final class Run {
+        final int row, start, end;
+        final double score;
+
+        Run(int row, int start, int end, double idealRow, double idealCol) {
+            this.row = row;
+            this.start = start;
+            this.end = end;
+            score = score(row, place(this, end - start, idealCol), end - start, idealRow, idealCol);
+        }
+
+        int length() {
+            return end - start;
+        }
+    }
+
+    /**
+     * The seats picked for a party, and how good a pick they are. Better picks are ordered first:
+     * the party is split into fewer blocks, and then the blocks are closer to the ideal viewing point.
+     */
+    public static final class Allocation implements Comparable<Allocation> {
+        private static final Allocation NONE = new Allocation(new int[0], 0, 0);
+
+        private final int[] seatIDs;
+        private final int blocks;
+        private final double score;
+
+        private Allocation(int[] seatIDs, int blocks, double score) {
+            this.seatIDs = seatIDs;
+            this.blocks = blocks;
+            this.score = score;
+        }
+
+        /**
+         * @return The seat IDs, or an empty array if there were fewer free seats than the party needs. Must not be modified.
+         */
+        public int[] getSeatIDs() {
+            return seatIDs;
+        }
+
+        /**
+         * @return True, if there were enough free seats for the party.
+         */
+        public boolean isFound() {
+            return seatIDs.length != 0;
+        }
+
+        /**
+         * @return How many separate blocks of adjacent seats the party is split into; 1 if it sits together.
+         */
+        public int getBlocks() {
+            return blocks;
+        }
+
+        /**
+         * @return The summed distance of every block from the ideal viewing point; lower is better.
+         */
+        public double getScore() {
+            return score;
+        }
+
+        @Override
+        public int compareTo(Allocation other) {
+            if (isFound() != other.isFound()) return isFound() ? -1 : 1;
+            return blocks != other.blocks ? Integer.compare(blocks, other.blocks) : Double.compare(score, other.score);
+        }
+    }
+
+    /**
+     * Finds the best available seats for a party.
+     *
+     * @param taken Unavailable seat IDs, i.e. booked, selected by someone else, or not a seat at all.
+     * @param rows  Number of rows; row 0 is the front row.
+     * @param cols  Number of seats per row.
+     * @param party Number of seats needed.
+     * @return The seat IDs, or an empty array if there are fewer free seats than the party needs.
+     */
+    public static int[] find(BitSet taken, int rows, int cols, int party) {
+        return allocate(taken, rows, cols, party).getSeatIDs();
+    }
+
+    /**
+     * Same as {@link #find(BitSet, int, int, int)}, but also reports how good the pick is.
+     *
+     * @param taken Unavailable seat IDs, i.e. booked, selected by someone else, or not a seat at all.
+     * @param rows  Number of rows; row 0 is the front row.
+     * @param cols  Number of seats per row.
+     * @param party Number of seats needed.
+     * @return The pick. If there are fewer free seats than the party needs, nothing is found.
+     */
+    public static Allocation allocate(BitSet taken, int rows, int cols, int party) {
+        if (party <= 0) return Allocation.NONE;
+        double idealRow = (rows - 1) * 2 / 3D, idealCol = (cols - 1) / 2D;
+
+        // Collect every run of free seats, and remember the best position for the whole party in a single run.
+        List<Run> runs = new ArrayList<>();
+        int free = 0, bestRow = -1, bestStart = -1;
+        double bestScore = Double.MAX_VALUE;
+        for (int row = 0; row < rows; row++) {
+            int rowStart = row * cols, rowEnd = rowStart + cols;
+            for (int start = taken.nextClearBit(rowStart); start < rowEnd; ) {
+                int next = taken.nextSetBit(start);
+                int end = next == -1 || next > rowEnd ? rowEnd : next;
+                Run run = new Run(row, start - rowStart, end - rowStart, idealRow, idealCol);
+                runs.add(run);
+                free += run.length();
+                if (run.length() >= party) {
+                    int position = place(run, party, idealCol);
+                    double score = score(row, position, party, idealRow, idealCol);
+                    if (score < bestScore) {
+                        bestScore = score;
+                        bestRow = row;
+                        bestStart = position;
+                    }
+                }
+                start = end == rowEnd ? rowEnd : taken.nextClearBit(end);
+            }
+        }
+        if (free < party) return Allocation.NONE;
+
+        int[] result = new int[party];
+        if (bestRow != -1) {
+            for (int i = 0; i < party; i++)
+                result[i] = bestRow * cols + bestStart + i;
+            return new Allocation(result, 1, bestScore);
+        }
+
+        // Nobody fits the whole party, so split it over as few runs as possible: longest first, then best scoring.
+        runs.sort((first, second) -> first.length() != second.length() ? second.length() - first.length() : Double.compare(first.score, second.score));
+        int size = 0, blocks = 0;
+        double score = 0;
+        for (Run run : runs) {
+            int needed = Math.min(run.length(), party - size);
+            int position = place(run, needed, idealCol);
+            for (int i = 0; i < needed; i++)
+                result[size++] = run.row * cols + position + i;
+            blocks++;
+            score += score(run.row, position, needed, idealRow, idealCol);
+            if (size == party) break;
+        }
+        return new Allocation(result, blocks, score);
+    }
+
+    /**
+     * Checks whether a party can sit together, without picking any seats. This stops at the first long enough run,
+     * so it is much cheaper than {@link #allocate(BitSet, int, int, int)} when most time slots have room.
+     *
+     * @param taken Unavailable seat IDs, i.e. booked, selected by someone else, or not a seat at all.
+     * @param rows  Number of rows.
+     * @param cols  Number of seats per row.
+     * @param party Number of adjacent seats needed.
+     * @return True, if any row has a run of at least that many free seats.
+     */
+    public static boolean fitsTogether(BitSet taken, int rows, int cols, int party) {
+        if (party <= 0 || party > cols) return party <= 0;
+        for (int row = 0; row < rows; row++) {
+            int rowStart = row * cols, rowEnd = rowStart + cols;
+            for (int start = taken.nextClearBit(rowStart); start <= rowEnd - party; ) {
+                int next = taken.nextSetBit(start);
+                if (next == -1 || next >= start + party) return true;
+                start = taken.nextClearBit(next);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The start column that puts a block of seats in a run as close as possible to the ideal column.
+     */
+    private static int place(Run run, int seats, double idealCol) {
+        int ideal = (int) Math.round(idealCol - (seats - 1) / 2D);
+        return Math.max(run.start, Math.min(run.end - seats, ideal));
+    }
+
+    /**
+     * @return How far a block of seats is from the ideal viewing point; lower is better.
+     */
+    private static double score(int row, int start, int seats, double idealRow, double idealCol) {
+        double rowDistance = (row - idealRow) * ROW_WEIGHT, colDistance = start + (seats - 1) / 2D - idealCol;
+        return rowDistance * rowDistance + colDistance * colDistance;
+    }
+}
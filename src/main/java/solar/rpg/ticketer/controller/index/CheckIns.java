@@ -0,0 +1,123 @@
+package solar.rpg.ticketer.controller.index;
+
+import solar.rpg.ticketer.models.Screening;
+import solar.rpg.ticketer.models.Ticket;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Remembers which tickets have been used to enter a screening, without any locks, so that the same ticket cannot
+ * be used twice. Like {@link SeatClaims}, each time slot has a bitmap of seat IDs stored as an {@link AtomicLongArray},
+ * and a ticket is used by setting its bit with a compare-and-swap. Of any number of scans of the same ticket at the same
+ * time, exactly one is admitted.
+ * <p>
+ * A deleted ticket is no longer used, so that its seat can be booked and used again.
+ * <p>
+ * Used tickets are only kept in memory, by each kiosk on its own; they are not saved to the database. A ticket can
+ * therefore be admitted once at every kiosk that shares the ticket code secret, and again after a kiosk restarts.
+ * Each screening's tickets should be checked in at a single kiosk.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see TicketCodes
+ * @since 0.1
+ */
+public class CheckIns implements TicketIndex {
+
+    /**
+     * The outcomes of checking in a ticket.
+     */
+    public enum Result {
+        ADMITTED("Admitted. Enjoy the show!"),
+        ALREADY_USED("This ticket has already been used."),
+        TOO_EARLY("This ticket's screening is not letting people in yet."),
+        FINISHED("This ticket's screening has already finished."),
+        NOT_BOOKED("This ticket has been cancelled, or was never booked."),
+        INVALID("This is not a valid ticket code.");
+
+        private final String message;
+
+        Result(String message) {
+            this.message = message;
+        }
+
+        /**
+         * @return The outcome, as shown to staff.
+         */
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * The outcome of checking in a ticket code, along with the ticket that it belongs to, if any.
+     */
+    public static final class Outcome {
+        private final Result result;
+        private final Ticket ticket;
+
+        /**
+         * @param result The outcome.
+         * @param ticket The ticket, or null if the code does not belong to a booked ticket.
+         */
+        public Outcome(Result result, Ticket ticket) {
+            this.result = result;
+            this.ticket = ticket;
+        }
+
+        /**
+         * @return The outcome.
+         */
+        public Result getResult() {
+            return result;
+        }
+
+        /**
+         * @return The ticket, so staff can see its movie, time, and seat; null if the code is invalid or not booked.
+         */
+        public Ticket getTicket() {
+            return ticket;
+        }
+    }
+
+    // Time slot keys, mapped to bitmaps of used seat IDs.
+    private final ConcurrentHashMap<Long, AtomicLongArray> used;
+
+    public CheckIns() {
+        used = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Marks a ticket as used.
+     *
+     * @param screening The screening.
+     * @param date      The time slot, as epoch milliseconds.
+     * @param seatID    The seat.
+     * @return True, if the ticket was not used before; false if it already has been.
+     */
+    public boolean use(Screening screening, long date, int seatID) {
+        AtomicLongArray words = used.computeIfAbsent(OccupancyIndex.key(screening.getID(), date),
+                key -> new AtomicLongArray((screening.getVenue().getGridSize() + 63) >>> 6));
+        long bit = 1L << seatID;
+        return (words.getAndUpdate(seatID >>> 6, word -> word | bit) & bit) == 0;
+    }
+
+    @Override
+    public void add(Ticket ticket) {
+        // New tickets have not been used yet.
+    }
+
+    @Override
+    public void remove(Ticket ticket) {
+        AtomicLongArray words = used.get(OccupancyIndex.key(ticket.getScreening().getID(), ticket.getSelectedDate().getTime()));
+        if (words == null) return;
+        long bit = 1L << ticket.getSeatID();
+        words.getAndUpdate(ticket.getSeatID() >>> 6, word -> word & ~bit);
+    }
+
+    @Override
+    public void expire(Screening screening, long date) {
+        used.remove(OccupancyIndex.key(screening.getID(), date));
+    }
+}
@@ -0,0 +1,188 @@
+package solar.rpg.ticketer.controller.index;
+
+import solar.rpg.ticketer.models.Screening;
+
+import java.time.DayOfWeek;
+import java.time.format.TextStyle;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Filters screenings by several facets at once: genre, venue, weekday, time of day, and running time.
+ * For every value of every facet, there is a bitmap of the positions of the matching screenings in each sorted array.
+ * Values of the same facet are OR'ed together, and then the facets are AND'ed together, so any filter change is
+ * a handful of bitmap operations. As positions follow the sort order, the matching screenings come out already sorted.
+ * This class is immutable; it is rebuilt along with the {@link SortedScreenings} it indexes.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see SortedScreenings
+ * @since 0.1
+ */
+public final class FacetIndex {
+
+    /**
+     * The facets that screenings can be filtered by.
+     */
+    public enum Facet {
+        GENRE("Genre"), VENUE("Venue"), WEEKDAY("Day"), TIME_OF_DAY("Time of Day"), RUNNING_TIME("Running Time");
+
+        private final String friendlyName;
+
+        Facet(String friendlyName) {
+            this.friendlyName = friendlyName;
+        }
+
+        /**
+         * @return The name of this facet, as shown in the menu.
+         */
+        public String getFriendlyName() {
+            return friendlyName;
+        }
+    }
+
+    // Fixed values of the time of day and running time facets, in display order.
+    private static final String[] TIMES_OF_DAY = {"Morning (before 12pm)", "Afternoon (12pm to 5pm)", "Evening (5pm to 9pm)", "Late (after 9pm)"};
+    private static final String[] RUNNING_TIMES = {"Under 90 mins", "90 to 120 mins", "Over 120 mins"};
+    private static final String[] WEEKDAYS = Arrays.stream(DayOfWeek.values()).map(day -> day.getDisplayName(TextStyle.FULL, Locale.getDefault())).toArray(String[]::new);
+
+    private final SortedScreenings sorted;
+
+    // For every sort key, every facet's values (in display order), mapped to bitmaps of positions in that key's sorted array.
+    private final EnumMap<SortedScreenings.SortKey, EnumMap<Facet, LinkedHashMap<String, BitSet>>> bitmaps;
+
+    /**
+     * @param sorted    The sorted screenings to index.
+     * @param schedules Provides the weekly schedule of a screening.
+     */
+    public FacetIndex(SortedScreenings sorted, Function<Screening, WeeklySchedule> schedules) {
+        this.sorted = sorted;
+        bitmaps = new EnumMap<>(SortedScreenings.SortKey.class);
+
+        // Work out each screening's facet values once.
+        Screening[] byVenue = sorted.get(SortedScreenings.SortKey.VENUE);
+        IdentityHashMap<Screening, EnumMap<Facet, Set<String>>> values = new IdentityHashMap<>();
+        for (Screening screening : byVenue)
+            values.put(screening, valuesOf(screening, schedules.apply(screening)));
+
+        // Seed the values in display order, so that they are listed even when nothing matches them.
+        EnumMap<Facet, List<String>> order = new EnumMap<>(Facet.class);
+        TreeSet<String> genres = new TreeSet<>();
+        values.values().forEach(facets -> genres.addAll(facets.get(Facet.GENRE)));
+        order.put(Facet.GENRE, new ArrayList<>(genres));
+        LinkedHashSet<String> venues = new LinkedHashSet<>();
+        for (Screening screening : byVenue)
+            venues.addAll(values.get(screening).get(Facet.VENUE));
+        order.put(Facet.VENUE, new ArrayList<>(venues));
+        order.put(Facet.WEEKDAY, Arrays.asList(WEEKDAYS));
+        order.put(Facet.TIME_OF_DAY, Arrays.asList(TIMES_OF_DAY));
+        order.put(Facet.RUNNING_TIME, Arrays.asList(RUNNING_TIMES));
+
+        for (SortedScreenings.SortKey key : SortedScreenings.SortKey.values()) {
+            EnumMap<Facet, LinkedHashMap<String, BitSet>> facets = new EnumMap<>(Facet.class);
+            for (Facet facet : Facet.values()) {
+                LinkedHashMap<String, BitSet> facetBitmaps = new LinkedHashMap<>();
+                order.get(facet).forEach(value -> facetBitmaps.put(value, new BitSet()));
+                facets.put(facet, facetBitmaps);
+            }
+            Screening[] screenings = sorted.get(key);
+            for (int position = 0; position < screenings.length; position++) {
+                final int bit = position;
+                values.get(screenings[position]).forEach((facet, facetValues) ->
+                        facetValues.forEach(value -> facets.get(facet).get(value).set(bit)));
+            }
+            bitmaps.put(key, facets);
+        }
+    }
+
+    /**
+     * @param screening The screening.
+     * @param schedule  The screening's weekly schedule.
+     * @return The screening's value(s) for every facet. A screening can be on several days and at several times of day.
+     */
+    private static EnumMap<Facet, Set<String>> valuesOf(Screening screening, WeeklySchedule schedule) {
+        EnumMap<Facet, Set<String>> result = new EnumMap<>(Facet.class);
+        result.put(Facet.GENRE, Collections.singleton(screening.getMovie().getGenre()));
+        result.put(Facet.VENUE, Collections.singleton("Venue " + screening.getVenue().getVenueNum()));
+
+        Set<String> days = new HashSet<>(), times = new HashSet<>();
+        for (int minuteOfWeek : schedule.getMinutesOfWeek()) {
+            days.add(WEEKDAYS[minuteOfWeek / (24 * 60)]);
+            int minuteOfDay = minuteOfWeek % (24 * 60);
+            times.add(TIMES_OF_DAY[minuteOfDay < 12 * 60 ? 0 : minuteOfDay < 17 * 60 ? 1 : minuteOfDay < 21 * 60 ? 2 : 3]);
+        }
+        result.put(Facet.WEEKDAY, days);
+        result.put(Facet.TIME_OF_DAY, times);
+
+        int runningTime = screening.getMovie().getRunningTime();
+        result.put(Facet.RUNNING_TIME, Collections.singleton(RUNNING_TIMES[runningTime < 90 ? 0 : runningTime <= 120 ? 1 : 2]));
+        return result;
+    }
+
+    /**
+     * @param facet The facet.
+     * @return Every value of the facet, in display order.
+     */
+    public List<String> values(Facet facet) {
+        return new ArrayList<>(bitmaps.get(SortedScreenings.SortKey.START_DATE).get(facet).keySet());
+    }
+
+    /**
+     * Combines the selected facet values into a bitmap of matching positions.
+     *
+     * @param key       The sort key, which determines what the positions refer to.
+     * @param selection Selected values of each facet. Facets without any selected values do not filter anything.
+     * @param ignored   A facet to leave out of the filter, or null.
+     * @return The positions of the matching screenings in the key's sorted array.
+     */
+    private BitSet match(SortedScreenings.SortKey key, Map<Facet, Set<String>> selection, Facet ignored) {
+        BitSet result = new BitSet();
+        result.set(0, sorted.get(key).length);
+        EnumMap<Facet, LinkedHashMap<String, BitSet>> facets = bitmaps.get(key);
+        selection.forEach((facet, values) -> {
+            if (facet == ignored || values.isEmpty()) return;
+            BitSet any = new BitSet();
+            for (String value : values) {
+                BitSet bitmap = facets.get(facet).get(value);
+                if (bitmap != null) any.or(bitmap);
+            }
+            result.and(any);
+        });
+        return result;
+    }
+
+    /**
+     * @param key       The sort key.
+     * @param selection Selected values of each facet.
+     * @return The matching screenings, sorted by the key.
+     */
+    public Screening[] filter(SortedScreenings.SortKey key, Map<Facet, Set<String>> selection) {
+        Screening[] screenings = sorted.get(key);
+        BitSet matches = match(key, selection, null);
+        Screening[] result = new Screening[matches.cardinality()];
+        int size = 0;
+        for (int position = matches.nextSetBit(0); position >= 0; position = matches.nextSetBit(position + 1))
+            result[size++] = screenings[position];
+        return result;
+    }
+
+    /**
+     * Counts how many screenings each value of a facet would match, given the selection of every other facet.
+     * Values of the same facet are alternatives to each other, so the facet's own selection is left out.
+     *
+     * @param facet     The facet to count.
+     * @param selection Selected values of each facet.
+     * @return The facet's values in display order, mapped to their number of matching screenings.
+     */
+    public LinkedHashMap<String, Integer> counts(Facet facet, Map<Facet, Set<String>> selection) {
+        SortedScreenings.SortKey key = SortedScreenings.SortKey.START_DATE;
+        BitSet others = match(key, selection, facet);
+        LinkedHashMap<String, Integer> result = new LinkedHashMap<>();
+        bitmaps.get(key).get(facet).forEach((value, bitmap) -> {
+            BitSet both = (BitSet) bitmap.clone();
+            both.and(others);
+            result.put(value, both.cardinality());
+        });
+        return result;
+    }
+}
@@ -0,0 +1,135 @@
+package solar.rpg.ticketer.controller.index;
+
+import solar.rpg.ticketer.models.Screening;
+import solar.rpg.ticketer.models.Ticket;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pre-aggregated seat counts for occupancy reports, in two cubes: venue by weekday by hour, and movie by weekday.
+ * Each cell is a {@link LongAdder}, so bookings from any number of threads can count towards the same cell without
+ * contending, and reading a cell is a single sum. Reports never scan tickets, and never query the database.
+ * <p>
+ * As a ticket index, this counts the seats that are booked in the loaded time slots. The same cubes can also count
+ * the seats that are offered, see {@link #count(Screening, long, long)}, so the two can be divided into occupancy rates.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @since 0.1
+ */
+public class OccupancyCubes implements TicketIndex {
+
+    private static final int DAYS = 7, HOURS = 24;
+
+    private final ZoneId zone;
+
+    // Venue numbers, mapped to a cell for every hour of every weekday (Monday first).
+    private final ConcurrentHashMap<Integer, LongAdder[]> byVenue;
+
+    // Movie titles, mapped to a cell for every weekday (Monday first).
+    private final ConcurrentHashMap<String, LongAdder[]> byMovie;
+
+    /**
+     * @param zone The time zone that weekdays and hours are counted in.
+     */
+    public OccupancyCubes(ZoneId zone) {
+        this.zone = zone;
+        this.byVenue = new ConcurrentHashMap<>();
+        this.byMovie = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public void add(Ticket ticket) {
+        count(ticket.getScreening(), ticket.getSelectedDate().getTime(), 1);
+    }
+
+    @Override
+    public void remove(Ticket ticket) {
+        count(ticket.getScreening(), ticket.getSelectedDate().getTime(), -1);
+    }
+
+    /**
+     * Adds seats to the cells of a time slot.
+     *
+     * @param screening The screening.
+     * @param date      The time slot, as epoch milliseconds.
+     * @param seats     Number of seats to add, or a negative number to take away.
+     */
+    public void count(Screening screening, long date, long seats) {
+        ZonedDateTime time = Instant.ofEpochMilli(date).atZone(zone);
+        int day = time.getDayOfWeek().ordinal();
+        byVenue.computeIfAbsent(screening.getVenue().getVenueNum(), key -> cells(DAYS * HOURS))[day * HOURS + time.getHour()].add(seats);
+        byMovie.computeIfAbsent(screening.getMovie().getName(), key -> cells(DAYS))[day].add(seats);
+    }
+
+    /**
+     * @return A new row of cells, all zero.
+     */
+    private static LongAdder[] cells(int size) {
+        LongAdder[] result = new LongAdder[size];
+        for (int i = 0; i < size; i++)
+            result[i] = new LongAdder();
+        return result;
+    }
+
+    /**
+     * @param venueNum The venue number.
+     * @param day      The weekday.
+     * @param hour     The hour of the day, from 0 to 23.
+     * @return Seats counted for time slots at the venue, on that weekday, starting within that hour.
+     */
+    public long ofVenue(int venueNum, DayOfWeek day, int hour) {
+        LongAdder[] cells = byVenue.get(venueNum);
+        return cells == null ? 0 : cells[day.ordinal() * HOURS + hour].sum();
+    }
+
+    /**
+     * @param venueNum The venue number.
+     * @param day      The weekday.
+     * @return Seats counted for time slots at the venue, on that weekday.
+     */
+    public long ofVenue(int venueNum, DayOfWeek day) {
+        LongAdder[] cells = byVenue.get(venueNum);
+        if (cells == null) return 0;
+        long result = 0;
+        for (int hour = 0; hour < HOURS; hour++)
+            result += cells[day.ordinal() * HOURS + hour].sum();
+        return result;
+    }
+
+    /**
+     * @param movie The movie's title.
+     * @param day   The weekday.
+     * @return Seats counted for time slots of the movie, on that weekday.
+     */
+    public long ofMovie(String movie, DayOfWeek day) {
+        LongAdder[] cells = byMovie.get(movie);
+        return cells == null ? 0 : cells[day.ordinal()].sum();
+    }
+
+    /**
+     * @return Numbers of the venues that have been counted, in ascending order.
+     */
+    public List<Integer> venues() {
+        List<Integer> result = new ArrayList<>(byVenue.keySet());
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * @return Titles of the movies that have been counted, in alphabetical order.
+     */
+    public List<String> movies() {
+        List<String> result = new ArrayList<>(byMovie.keySet());
+        Collections.sort(result);
+        return result;
+    }
+}
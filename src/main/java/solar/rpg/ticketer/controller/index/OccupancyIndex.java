@@ -0,0 +1,119 @@
+package solar.rpg.ticketer.controller.index;
+
+import solar.rpg.ticketer.models.Screening;
+import solar.rpg.ticketer.models.Ticket;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of which seats are taken for every time slot of every screening.
+ * Each time slot, i.e. a (screening, minute) pair, has a bitmap where bit N is set if seat ID N is booked.
+ * This allows availability to be counted and individual seats to be checked without scanning any tickets.
+ * <p>
+ * Bitmaps are copy-on-write: a published bitmap is never modified, it is replaced by an updated copy.
+ * Reads are therefore lock-free, and always see a consistent snapshot of a time slot. Tickets that are loaded in bulk
+ * do not need this: each time slot's bitmap is built once from all of its tickets, and then published.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see solar.rpg.ticketer.models.Venue#getSeatID(int, int)
+ * @since 0.1
+ */
+public class OccupancyIndex implements TicketIndex {
+
+    private static final BitSet NONE = new BitSet(0);
+
+    // Time slot keys, mapped to bitmaps of taken seat IDs.
+    private final ConcurrentHashMap<Long, BitSet> occupied;
+
+    public OccupancyIndex() {
+        occupied = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Packs a time slot into a single key: the screening ID in the upper 32 bits, and the epoch minute in the lower 32 bits.
+     *
+     * @param screeningID The screening ID.
+     * @param date        The time slot.
+     * @return The time slot key.
+     */
+    public static long key(int screeningID, long date) {
+        return ((long) screeningID << 32) | TimeUnit.MILLISECONDS.toMinutes(date);
+    }
+
+    @Override
+    public void add(Ticket ticket) {
+        occupied.compute(key(ticket.getScreening().getID(), ticket.getSelectedDate().getTime()), (key, seats) -> {
+            BitSet copy = seats == null ? new BitSet(ticket.getScreening().getVenue().getGridSize()) : (BitSet) seats.clone();
+            copy.set(ticket.getSeatID());
+            return copy;
+        });
+    }
+
+    @Override
+    public void addAll(Collection<Ticket> tickets) {
+        // Build each time slot's bitmap once, rather than copying it for every ticket.
+        HashMap<Long, List<Ticket>> bySlot = bySlot(tickets);
+        bySlot.forEach((slot, added) -> occupied.compute(slot, (key, seats) -> {
+            BitSet copy = seats == null ? new BitSet(added.get(0).getScreening().getVenue().getGridSize()) : (BitSet) seats.clone();
+            added.forEach(ticket -> copy.set(ticket.getSeatID()));
+            return copy;
+        }));
+    }
+
+    @Override
+    public void remove(Ticket ticket) {
+        occupied.computeIfPresent(key(ticket.getScreening().getID(), ticket.getSelectedDate().getTime()), (key, seats) -> {
+            BitSet copy = (BitSet) seats.clone();
+            copy.clear(ticket.getSeatID());
+            // Don't keep empty bitmaps around.
+            return copy.isEmpty() ? null : copy;
+        });
+    }
+
+    @Override
+    public void removeAll(Collection<Ticket> tickets) {
+        // Copy each time slot's bitmap once, rather than once per ticket.
+        HashMap<Long, List<Ticket>> bySlot = bySlot(tickets);
+        bySlot.forEach((slot, removed) -> occupied.computeIfPresent(slot, (key, seats) -> {
+            BitSet copy = (BitSet) seats.clone();
+            removed.forEach(ticket -> copy.clear(ticket.getSeatID()));
+            return copy.isEmpty() ? null : copy;
+        }));
+    }
+
+    /**
+     * @return The tickets, grouped by time slot key.
+     */
+    private static HashMap<Long, List<Ticket>> bySlot(Collection<Ticket> tickets) {
+        HashMap<Long, List<Ticket>> result = new HashMap<>();
+        for (Ticket ticket : tickets)
+            result.computeIfAbsent(key(ticket.getScreening().getID(), ticket.getSelectedDate().getTime()), key -> new ArrayList<>()).add(ticket);
+        return result;
+    }
+
+    /**
+     * @param screening The screening in question.
+     * @param date      The particular time slot in question, as epoch milliseconds.
+     * @return The taken seat IDs of the time slot, as they are right now. This snapshot must not be modified.
+     */
+    public BitSet snapshot(Screening screening, long date) {
+        return occupied.getOrDefault(key(screening.getID(), date), NONE);
+    }
+
+    /**
+     * @param screening The screening in question.
+     * @param date      The particular time slot in question, as epoch milliseconds.
+     * @param seatID    The seat in question.
+     * @return True, if the seat has been booked for this time slot.
+     */
+    public boolean isOccupied(Screening screening, long date, int seatID) {
+        return snapshot(screening, date).get(seatID);
+    }
+}
@@ -0,0 +1,265 @@
+package solar.rpg.ticketer.controller.index;
+
+import solar.rpg.ticketer.models.Ticket;
+
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * Ranks movies and screenings by how much they are being booked right now. Every booked seat adds to a score that
+ * halves every half-life, so recent bookings count for more than older ones, and a cancelled seat takes it away again.
+ * <p>
+ * Rather than decaying every score as time passes, each booking is weighed by how long after a fixed landmark it
+ * was made, which is the same thing relative to the other scores. Scores therefore only change when seats are booked
+ * or cancelled, and so does their order. The best scores of each kind are kept in a bounded, sorted top list, so
+ * reading the ranking is a copy of at most that many entries. Only when the score of an entry in a top list goes down
+ * is every score looked at, to find which one belongs in its place.
+ * <p>
+ * The weight that each loaded ticket added is kept, so that cancelling it takes away exactly that much, no matter how
+ * long after booking it is cancelled. Tickets that are loaded on startup are weighed as if they were booked at the
+ * landmark, as the times that tickets were booked are not stored in the database.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @since 0.1
+ */
+public class PopularityIndex {
+
+    // Once the weight of a booking is this many half-lives past the landmark, every score is scaled down to a new landmark.
+    private static final double RESCALE_HALF_LIVES = 60;
+
+    // Scores are forgotten once they are this small, relative to a single booking now.
+    private static final double NEGLIGIBLE = 1e-6;
+
+    private final long halfLifeMillis;
+    private final LongSupplier clock;
+    private long landmark;
+
+    // Movie titles and screening IDs, mapped to their scores.
+    private final Ranking<String> movies;
+    private final Ranking<Integer> screenings;
+
+    // Time slot keys, mapped to the seat IDs of their tickets, mapped to the weight that each ticket added.
+    private final HashMap<Long, HashMap<Integer, Double>> weights;
+
+    /**
+     * @param halfLifeMillis How long it takes for the weight of a booking to halve, in milliseconds.
+     * @param capacity       How many of the best movies, and of the best screenings, are kept ranked.
+     * @param clock          Tells the current time, as epoch milliseconds.
+     */
+    public PopularityIndex(long halfLifeMillis, int capacity, LongSupplier clock) {
+        this.halfLifeMillis = halfLifeMillis;
+        this.clock = clock;
+        this.landmark = clock.getAsLong();
+        this.movies = new Ranking<>(capacity);
+        this.screenings = new Ranking<>(capacity);
+        this.weights = new HashMap<>();
+    }
+
+    /**
+     * Counts a seat that has just been booked.
+     *
+     * @param ticket The new ticket.
+     */
+    public synchronized void booked(Ticket ticket) {
+        count(ticket, weight(clock.getAsLong()));
+    }
+
+    /**
+     * Counts a seat that was booked before startup, as if it were booked at the landmark.
+     *
+     * @param ticket The loaded ticket.
+     */
+    public synchronized void loaded(Ticket ticket) {
+        count(ticket, weight(landmark));
+    }
+
+    /**
+     * Takes away a seat that has just been cancelled, by the same weight that it added when it was counted.
+     * Seats that were never counted, or whose time slot has expired, take nothing away. Scores never drop below zero.
+     *
+     * @param ticket The deleted ticket.
+     */
+    public synchronized void cancelled(Ticket ticket) {
+        long slot = OccupancyIndex.key(ticket.getScreening().getID(), ticket.getSelectedDate().getTime());
+        HashMap<Integer, Double> seats = weights.get(slot);
+        Double weight = seats == null ? null : seats.remove(ticket.getSeatID());
+        if (weight == null) return;
+        if (seats.isEmpty()) weights.remove(slot);
+        change(ticket, -weight);
+    }
+
+    /**
+     * Forgets the weights of a time slot's tickets once it has passed. Its bookings still count towards the scores,
+     * but can no longer be cancelled.
+     *
+     * @param screeningID The screening ID.
+     * @param date        The time slot, as epoch milliseconds.
+     */
+    public synchronized void expire(int screeningID, long date) {
+        weights.remove(OccupancyIndex.key(screeningID, date));
+    }
+
+    /**
+     * Forgets the score of a screening that is no longer loaded, along with the weights of its tickets.
+     *
+     * @param screeningID The screening ID.
+     */
+    public synchronized void forget(int screeningID) {
+        screenings.put(screeningID, 0);
+        weights.keySet().removeIf(slot -> (int) (slot >>> 32) == screeningID);
+    }
+
+    /**
+     * @param limit Maximum amount of results, up to the capacity.
+     * @return Titles of the movies with the highest scores, best first. Movies without any bookings are left out.
+     */
+    public synchronized List<String> topMovies(int limit) {
+        return movies.top(limit);
+    }
+
+    /**
+     * @param limit Maximum amount of results, up to the capacity.
+     * @return IDs of the screenings with the highest scores, best first. Screenings without any bookings are left out.
+     */
+    public synchronized List<Integer> topScreenings(int limit) {
+        return screenings.top(limit);
+    }
+
+    /**
+     * @param movie The movie's title.
+     * @return The movie's score right now: roughly, the number of seats booked for it within the last half-life.
+     */
+    public synchronized double scoreOfMovie(String movie) {
+        return movies.get(movie) / weight(clock.getAsLong());
+    }
+
+    /**
+     * @param screeningID The screening ID.
+     * @return The screening's score right now: roughly, the number of seats booked for it within the last half-life.
+     */
+    public synchronized double scoreOfScreening(int screeningID) {
+        return screenings.get(screeningID) / weight(clock.getAsLong());
+    }
+
+    /**
+     * Adds a ticket's weight to the scores, and keeps it for when the ticket is cancelled.
+     */
+    private void count(Ticket ticket, double weight) {
+        weights.computeIfAbsent(OccupancyIndex.key(ticket.getScreening().getID(), ticket.getSelectedDate().getTime()), slot -> new HashMap<>())
+                .put(ticket.getSeatID(), weight);
+        change(ticket, weight);
+    }
+
+    /**
+     * Adds a weight to the scores of a ticket's movie and screening.
+     */
+    private void change(Ticket ticket, double weight) {
+        movies.add(ticket.getScreening().getMovie().getName(), weight);
+        screenings.add(ticket.getScreening().getID(), weight);
+    }
+
+    /**
+     * @param time A time, as epoch milliseconds.
+     * @return The weight of a booking made at that time, relative to the landmark.
+     */
+    private double weight(long time) {
+        double halfLives = (double) (time - landmark) / halfLifeMillis;
+        if (halfLives > RESCALE_HALF_LIVES) {
+            // Move the landmark up before the weights get too large to add up precisely.
+            double scale = Math.pow(2, -halfLives);
+            movies.scale(scale);
+            screenings.scale(scale);
+            weights.values().forEach(seats -> seats.replaceAll((seatID, weight) -> weight * scale));
+            landmark = time;
+            halfLives = 0;
+        }
+        return Math.pow(2, halfLives);
+    }
+
+    /**
+     * Scores of one kind, and a bounded list of the best of them.
+     *
+     * @param <K> The type of what is scored.
+     */
+    private static final class Ranking<K extends Comparable<K>> {
+
+        private final int capacity;
+        private final HashMap<K, Double> scores;
+
+        // The best scores, best first; ties are broken by key. Always holds the best of all scores, up to the capacity.
+        private final TreeSet<K> top;
+
+        private Ranking(int capacity) {
+            this.capacity = capacity;
+            this.scores = new HashMap<>();
+            this.top = new TreeSet<>((first, second) -> {
+                int byScore = Double.compare(scores.get(second), scores.get(first));
+                return byScore != 0 ? byScore : first.compareTo(second);
+            });
+        }
+
+        private double get(K key) {
+            return scores.getOrDefault(key, 0.0);
+        }
+
+        private void add(K key, double weight) {
+            put(key, get(key) + weight);
+        }
+
+        /**
+         * Changes a score, keeping the top list in order.
+         */
+        private void put(K key, double score) {
+            // The top list is ordered by score, so an entry must be taken out before its score changes.
+            double previous = get(key);
+            boolean wasTop = scores.containsKey(key) && top.remove(key);
+            if (score <= 0) scores.remove(key);
+            else scores.put(key, score);
+            // An entry that went down may have fallen behind one outside the list, so the best of the rest, itself
+            // included, takes its place. Otherwise only the changed entry can have moved into the list.
+            if (wasTop && score < previous) refill();
+            else if (score > 0) offer(key);
+        }
+
+        /**
+         * Adds a key to the top list, if its score is good enough.
+         */
+        private void offer(K key) {
+            if (top.size() < capacity) top.add(key);
+            else if (top.comparator().compare(key, top.last()) < 0) {
+                top.pollLast();
+                top.add(key);
+            }
+        }
+
+        /**
+         * Adds the best score that is not in the top list to it.
+         */
+        private void refill() {
+            K best = null;
+            for (K key : scores.keySet())
+                if (!top.contains(key) && (best == null || top.comparator().compare(key, best) < 0)) best = key;
+            if (best != null) top.add(best);
+        }
+
+        /**
+         * Multiplies every score by the same amount, forgetting those that become negligible.
+         */
+        private void scale(double scale) {
+            top.clear();
+            scores.replaceAll((key, score) -> score * scale);
+            scores.values().removeIf(score -> score < NEGLIGIBLE);
+            scores.keySet().forEach(this::offer);
+        }
+
+        private List<K> top(int limit) {
+            List<K> result = new ArrayList<>(Math.min(limit, top.size()));
+            for (K key : top) {
+                if (result.size() == limit) break;
+                result.add(key);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package solar.rpg.ticketer.controller.index;
+
+import solar.rpg.ticketer.models.Screening;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lists the bookable time slots of screenings, from now until a configurable horizon (e.g. the next 14 days).
+ * Each screening's times are compiled into a {@link WeeklySchedule} once, and the occurrences for today's
+ * horizon are cached. The cache is thrown away when the day rolls over, so each screening's occurrences
+ * are generated at most once a day; in between, listing them is a binary search and a copy.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see WeeklySchedule
+ * @since 0.1
+ */
+public class ScheduleIndex {
+
+    private final ZoneId zone;
+    private final int horizonDays;
+
+    // Compiled schedules, and cached occurrences (epoch milliseconds) from the start of the cached day.
+    private final ConcurrentHashMap<Integer, WeeklySchedule> schedules;
+    private final ConcurrentHashMap<Integer, long[]> occurrences;
+    private volatile LocalDate cachedDay;
+
+    /**
+     * @param zone        The time zone that screening times are in.
+     * @param horizonDays How many days ahead time slots can be booked.
+     */
+    public ScheduleIndex(ZoneId zone, int horizonDays) {
+        this.zone = zone;
+        this.horizonDays = horizonDays;
+        schedules = new ConcurrentHashMap<>();
+        occurrences = new ConcurrentHashMap<>();
+        cachedDay = LocalDate.now(zone);
+    }
+
+    /**
+     * Finds all bookable time slots of a screening, from now until the horizon or the end of the screening's date range.
+     *
+     * @param screening The screening.
+     * @return The time slots, in order.
+     */
+    public List<Timestamp> upcoming(Screening screening) {
+        long now = System.currentTimeMillis();
+        return upcoming(screening, now, now + TimeUnit.DAYS.toMillis(horizonDays));
+    }
+
+    /**
+     * Finds the time slots of a screening that are still to come today.
+     *
+     * @param screening The screening.
+     * @return The time slots, in order.
+     */
+    public List<Timestamp> upcomingToday(Screening screening) {
+        long endOfDay = LocalDate.now(zone).plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        return upcoming(screening, System.currentTimeMillis(), endOfDay - 1);
+    }
+
+    /**
+     * Finds the time slots of a screening that have not finished yet: those that are showing right now, whose tickets
+     * are still loaded for check-ins, and those that are still to come until the horizon.
+     *
+     * @param screening The screening.
+     * @return The time slots, in order.
+     */
+    public List<Timestamp> unfinished(Screening screening) {
+        long now = System.currentTimeMillis();
+        long started = now - TimeUnit.MINUTES.toMillis(screening.getMovie().getRunningTime()) + 1;
+        long startOfToday = LocalDate.now(zone).atStartOfDay(zone).toInstant().toEpochMilli();
+
+        // Occurrences are only cached from the start of today, so one that started last night is found separately.
+        List<Timestamp> result = new ArrayList<>();
+        if (started < startOfToday)
+            for (PrimitiveIterator.OfLong it = scheduleOf(screening).occurrences(started, zone); it.hasNext(); ) {
+                long occurrence = it.nextLong();
+                if (occurrence >= startOfToday || occurrence > screening.getEndDate().getTime()) break;
+                result.add(new Timestamp(occurrence));
+            }
+        result.addAll(upcoming(screening, started, now + TimeUnit.DAYS.toMillis(horizonDays)));
+        return result;
+    }
+
+    /**
+     * @param screening The screening.
+     * @param now       The current time, as epoch milliseconds.
+     * @param until     The last time to include, as epoch milliseconds.
+     * @return The time slots between now and then, in order, within the screening's date range.
+     */
+    private List<Timestamp> upcoming(Screening screening, long now, long until) {
+        long max = Math.min(until, screening.getEndDate().getTime());
+        long[] all = occurrencesOf(screening);
+
+        // Skip the time slots that have already passed today.
+        int position = Arrays.binarySearch(all, now);
+        List<Timestamp> result = new ArrayList<>();
+        for (int i = position >= 0 ? position : -position - 1; i < all.length && all[i] <= max; i++)
+            result.add(new Timestamp(all[i]));
+        return result;
+    }
+
+    /**
+     * @param screening The screening.
+     * @return The screening's compiled weekly schedule.
+     */
+    public WeeklySchedule scheduleOf(Screening screening) {
+        return schedules.computeIfAbsent(screening.getID(), ID -> new WeeklySchedule(ID, screening.getScreeningTimes()));
+    }
+
+    /**
+     * Throws away the compiled schedule and cached occurrences of a screening, once it has ended.
+     *
+     * @param screening The screening.
+     */
+    public void forget(Screening screening) {
+        schedules.remove(screening.getID());
+        occurrences.remove(screening.getID());
+    }
+
+    /**
+     * @param screening The screening.
+     * @return Cached occurrences of the screening from the start of today, generating them if needed.
+     */
+    private long[] occurrencesOf(Screening screening) {
+        // Throw away yesterday's occurrences once the day rolls over.
+        LocalDate today = LocalDate.now(zone);
+        if (!today.equals(cachedDay)) {
+            occurrences.clear();
+            cachedDay = today;
+        }
+        return occurrences.computeIfAbsent(screening.getID(), ID -> {
+            WeeklySchedule schedule = scheduleOf(screening);
+            long from = today.atStartOfDay(zone).toInstant().toEpochMilli();
+            long until = Math.min(today.plusDays(horizonDays + 1).atStartOfDay(zone).toInstant().toEpochMilli(), screening.getEndDate().getTime());
+
+            // Generate occurrences lazily until the end of the horizon's last day.
+            long[] result = new long[16];
+            int size = 0;
+            for (PrimitiveIterator.OfLong it = schedule.occurrences(from, zone); it.hasNext(); ) {
+                long occurrence = it.nextLong();
+                if (occurrence > until) break;
+                if (size == result.length) result = Arrays.copyOf(result, size * 2);
+                result[size++] = occurrence;
+            }
+            return Arrays.copyOf(result, size);
+        });
+    }
+}
@@ -0,0 +1,181 @@
+package solar.rpg.ticketer.controller.index;
+
+import solar.rpg.ticketer.models.Screening;
+import solar.rpg.ticketer.models.Ticket;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Arbitrates seats between booking sessions that run at the same time, without any locks.
+ * Each time slot has a bitmap of claimed seat IDs, stored as an {@link AtomicLongArray} of 64-seat words.
+ * A seat is claimed by setting its bit with a compare-and-swap, so exactly one session can ever claim a free seat.
+ * <p>
+ * A seat stays claimed while a session has it selected, and then for as long as it is booked:
+ * booked tickets are claimed as they are loaded or booked, and released when they are deleted.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see OccupancyIndex#key(int, long)
+ * @since 0.1
+ */
+public class SeatClaims implements TicketIndex {
+
+    // Time slot keys, mapped to bitmaps of claimed seat IDs.
+    private final ConcurrentHashMap<Long, AtomicLongArray> claimed;
+
+    public SeatClaims() {
+        claimed = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return The claim bitmap of a time slot, creating it if needed.
+     */
+    private AtomicLongArray words(Screening screening, long date) {
+        return claimed.computeIfAbsent(OccupancyIndex.key(screening.getID(), date),
+                key -> new AtomicLongArray((screening.getVenue().getGridSize() + 63) >>> 6));
+    }
+
+    /**
+     * Attempts to claim a single seat.
+     *
+     * @param screening The screening.
+     * @param date      The time slot, as epoch milliseconds.
+     * @param seatID    The seat.
+     * @return True, if the seat was free and is now claimed by the caller.
+     */
+    public boolean claim(Screening screening, long date, int seatID) {
+        AtomicLongArray words = words(screening, date);
+        int word = seatID >>> 6;
+        long bit = 1L << seatID;
+        while (true) {
+            long current = words.get(word);
+            if ((current & bit) != 0) return false;
+            if (words.compareAndSet(word, current, current | bit)) return true;
+        }
+    }
+
+    /**
+     * Attempts to claim several seats at once, all or nothing. Seats that share a 64-seat word are claimed with a single
+     * compare-and-swap. If any seat is already claimed, every word claimed so far is rolled back, so the caller never
+     * ends up holding only some of the seats.
+     *
+     * @param screening The screening.
+     * @param date      The time slot, as epoch milliseconds.
+     * @param seatIDs   The seats.
+     * @return The seats that were already claimed, in ascending order. If this is empty, every seat is now claimed by the caller.
+     */
+    public int[] claimAll(Screening screening, long date, int... seatIDs) {
+        AtomicLongArray words = words(screening, date);
+        long[] masks = new long[words.length()];
+        for (int seatID : seatIDs)
+            masks[seatID >>> 6] |= 1L << seatID;
+
+        // Claim word by word, stopping at the first clash.
+        long[] clashes = new long[masks.length];
+        int claimedUntil = 0;
+        boolean failed = false;
+        for (; claimedUntil < masks.length; claimedUntil++) {
+            long mask = masks[claimedUntil];
+            if (mask == 0) continue;
+            long current;
+            do {
+                current = words.get(claimedUntil);
+                clashes[claimedUntil] = current & mask;
+            } while (clashes[claimedUntil] == 0 && !words.compareAndSet(claimedUntil, current, current | mask));
+            if (clashes[claimedUntil] != 0) {
+                failed = true;
+                break;
+            }
+        }
+        if (!failed) return new int[0];
+
+        // Roll back what has been claimed, then report every clashing seat, including those in words that were not reached.
+        for (int word = 0; word < claimedUntil; word++)
+            if (masks[word] != 0) release(words, word, masks[word]);
+        for (int word = claimedUntil + 1; word < masks.length; word++)
+            clashes[word] = words.get(word) & masks[word];
+
+        int[] result = new int[seatIDs.length];
+        int size = 0;
+        for (int word = 0; word < clashes.length; word++)
+            for (long bits = clashes[word]; bits != 0; bits &= bits - 1)
+                result[size++] = (word << 6) + Long.numberOfTrailingZeros(bits);
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Releases a claimed seat, so that it can be claimed again.
+     *
+     * @param screening The screening.
+     * @param date      The time slot, as epoch milliseconds.
+     * @param seatID    The seat.
+     */
+    public void release(Screening screening, long date, int seatID) {
+        AtomicLongArray words = claimed.get(OccupancyIndex.key(screening.getID(), date));
+        if (words != null) release(words, seatID >>> 6, 1L << seatID);
+    }
+
+    /**
+     * Clears the bits of a mask in a word.
+     */
+    private static void release(AtomicLongArray words, int word, long mask) {
+        long current;
+        do {
+            current = words.get(word);
+        } while (!words.compareAndSet(word, current, current & ~mask));
+    }
+
+    /**
+     * @param screening The screening.
+     * @param date      The time slot, as epoch milliseconds.
+     * @param seatID    The seat.
+     * @return True, if the seat is currently selected by a session or booked.
+     */
+    public boolean isClaimed(Screening screening, long date, int seatID) {
+        AtomicLongArray words = claimed.get(OccupancyIndex.key(screening.getID(), date));
+        return words != null && (words.get(seatID >>> 6) & (1L << seatID)) != 0;
+    }
+
+    /**
+     * @param screening The screening.
+     * @param date      The time slot, as epoch milliseconds.
+     * @return A copy of the claimed seat IDs, as they are right now.
+     */
+    public BitSet snapshot(Screening screening, long date) {
+        AtomicLongArray words = claimed.get(OccupancyIndex.key(screening.getID(), date));
+        if (words == null) return new BitSet();
+        long[] copy = new long[words.length()];
+        for (int word = 0; word < copy.length; word++)
+            copy[word] = words.get(word);
+        return BitSet.valueOf(copy);
+    }
+
+    @Override
+    public void add(Ticket ticket) {
+        // A booked seat may already be claimed by the session that booked it.
+        words(ticket.getScreening(), ticket.getSelectedDate().getTime()).getAndUpdate(ticket.getSeatID() >>> 6, word -> word | (1L << ticket.getSeatID()));
+    }
+
+    @Override
+    public void remove(Ticket ticket) {
+        release(ticket.getScreening(), ticket.getSelectedDate().getTime(), ticket.getSeatID());
+    }
+
+    @Override
+    public void expire(Screening screening, long date) {
+        // Seats that were selected but never booked may still be claimed.
+        claimed.remove(OccupancyIndex.key(screening.getID(), date));
+    }
+
+    /**
+     * Throws away the claims of every time slot of a screening, once the screening has ended.
+     *
+     * @param screening The screening.
+     */
+    public void expire(Screening screening) {
+        claimed.keySet().removeIf(key -> (int) (key >>> 32) == screening.getID());
+    }
+}
@@ -0,0 +1,72 @@
+package solar.rpg.ticketer.controller.index;
+
+import solar.rpg.ticketer.models.Screening;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+
+/**
+ * Holds the loaded screenings in precomputed, sorted arrays, one for every sort key. Filtered views of them come from {@link FacetIndex}.
+ * Any page of screenings is then just a slice of an array, so every page costs the same to show, and the order is always
+ * the same no matter how the screenings were loaded. This class is immutable; it is rebuilt if the screenings change.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @since 0.1
+ */
+public final class SortedScreenings {
+
+    /**
+     * The orders that screenings can be shown in. Ties are always broken by screening ID, so the order is deterministic.
+     */
+    public enum SortKey {
+        START_DATE("Start Date", Comparator.comparing(Screening::getStartDate).thenComparing(screening -> screening.getMovie().getName())),
+        TITLE("Title", Comparator.comparing((Screening screening) -> screening.getMovie().getName()).thenComparing(Screening::getStartDate)),
+        VENUE("Venue", Comparator.comparingInt((Screening screening) -> screening.getVenue().getVenueNum()).thenComparing(screening -> screening.getMovie().getName())),
+        // Popularity changes with every booking, so it cannot be precomputed. Trending screenings are moved to the front
+        // of this order when they are shown; see PopularityIndex.
+        TRENDING("Trending", START_DATE.order);
+
+        private final String friendlyName;
+        private final Comparator<Screening> order;
+
+        SortKey(String friendlyName, Comparator<Screening> order) {
+            this.friendlyName = friendlyName;
+            this.order = order.thenComparingInt(Screening::getID);
+        }
+
+        /**
+         * @return The name of this sort key, as shown in the menu.
+         */
+        public String getFriendlyName() {
+            return friendlyName;
+        }
+    }
+
+    private static final Screening[] NONE = new Screening[0];
+
+    // Every screening, sorted by each sort key.
+    private final EnumMap<SortKey, Screening[]> sorted;
+
+    /**
+     * @param screenings The loaded screenings.
+     */
+    public SortedScreenings(Collection<Screening> screenings) {
+        sorted = new EnumMap<>(SortKey.class);
+        for (SortKey key : SortKey.values()) {
+            Screening[] all = screenings.toArray(NONE);
+            Arrays.sort(all, key.order);
+            sorted.put(key, all);
+        }
+    }
+
+    /**
+     * @param key The sort key.
+     * @return Every screening, sorted by the key. The array must not be modified.
+     */
+    public Screening[] get(SortKey key) {
+        return sorted.get(key);
+    }
+}
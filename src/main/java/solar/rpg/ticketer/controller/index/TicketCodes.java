@@ -0,0 +1,141 @@
+package solar.rpg.ticketer.controller.index;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Issues and verifies compact, signed ticket codes, e.g. {@code AAAAAwG6gUAAEX_-dv51-t3dvZ0}.
+ * A code holds the ticket's screening ID, time slot (as an epoch minute), seat ID, and a hash of its username,
+ * followed by a truncated HMAC-SHA256 signature of all of that. Anyone with the secret can verify a code without
+ * looking anything up, and nobody without it can forge one. Codes are URL-safe Base64, so they fit in a QR code or a link.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @since 0.1
+ */
+public final class TicketCodes {
+
+    // Payload: screening ID (4 bytes), epoch minute (4 bytes), seat ID (2 bytes), username hash (4 bytes).
+    private static final int PAYLOAD_LENGTH = 14;
+
+    // Only the start of the signature is kept; 48 bits is plenty for a code that is checked online.
+    private static final int SIGNATURE_LENGTH = 6;
+
+    private final SecretKeySpec key;
+
+    // Macs are not thread-safe, so each thread has its own.
+    private final ThreadLocal<Mac> macs;
+
+    /**
+     * A verified ticket code.
+     */
+    public static final class Code {
+        private final int screeningID, minute, seatID, usernameHash;
+
+        private Code(int screeningID, int minute, int seatID, int usernameHash) {
+            this.screeningID = screeningID;
+            this.minute = minute;
+            this.seatID = seatID;
+            this.usernameHash = usernameHash;
+        }
+
+        /**
+         * @return The screening that the ticket is for.
+         */
+        public int getScreeningID() {
+            return screeningID;
+        }
+
+        /**
+         * @return The time slot that the ticket is for, as an epoch minute.
+         */
+        public long getMinute() {
+            return minute & 0xFFFFFFFFL;
+        }
+
+        /**
+         * @return The seat that the ticket is for.
+         */
+        public int getSeatID() {
+            return seatID;
+        }
+
+        /**
+         * @param username A username.
+         * @return True, if the ticket was issued to this username.
+         */
+        public boolean isFor(String username) {
+            return usernameHash == username.hashCode();
+        }
+    }
+
+    /**
+     * @param secret The signing secret, shared by every kiosk that should accept each other's codes.
+     */
+    public TicketCodes(byte[] secret) {
+        key = new SecretKeySpec(secret, "HmacSHA256");
+        macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException ex) {
+                // Every Java platform is required to support HmacSHA256.
+                throw new IllegalStateException(ex);
+            }
+        });
+    }
+
+    /**
+     * Issues the code of a ticket.
+     *
+     * @param screeningID The screening ID.
+     * @param minute      The time slot, as an epoch minute.
+     * @param seatID      The seat ID.
+     * @param username    The username that the ticket is booked under.
+     * @return The signed ticket code.
+     */
+    public String issue(int screeningID, long minute, int seatID, String username) {
+        ByteBuffer code = ByteBuffer.allocate(PAYLOAD_LENGTH + SIGNATURE_LENGTH);
+        code.putInt(screeningID).putInt((int) minute).putShort((short) seatID).putInt(username.hashCode());
+        code.put(sign(code.array()), 0, SIGNATURE_LENGTH);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(code.array());
+    }
+
+    /**
+     * Verifies a ticket code's signature. Nothing is looked up, so this says nothing about whether the ticket is still booked.
+     *
+     * @param code The ticket code, as issued.
+     * @return The verified code, or null if it is malformed or its signature does not match.
+     */
+    public Code verify(String code) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(code.trim());
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+        if (bytes.length != PAYLOAD_LENGTH + SIGNATURE_LENGTH) return null;
+
+        // Compare in constant time, so the signature cannot be guessed a byte at a time.
+        byte[] expected = Arrays.copyOf(sign(bytes), SIGNATURE_LENGTH);
+        if (!MessageDigest.isEqual(expected, Arrays.copyOfRange(bytes, PAYLOAD_LENGTH, bytes.length))) return null;
+        ByteBuffer payload = ByteBuffer.wrap(bytes);
+        return new Code(payload.getInt(), payload.getInt(), payload.getShort() & 0xFFFF, payload.getInt());
+    }
+
+    /**
+     * @param code A ticket code, of which only the payload is signed.
+     * @return The full signature of the payload.
+     */
+    private byte[] sign(byte[] code) {
+        Mac mac = macs.get();
+        mac.update(code, 0, PAYLOAD_LENGTH);
+        return mac.doFinal();
+    }
+}
@@ -0,0 +1,63 @@
+package solar.rpg.ticketer.controller.index;
+
+import solar.rpg.ticketer.models.Screening;
+import solar.rpg.ticketer.models.Ticket;
+
+import java.util.Collection;
+
+/**
+ * An in-memory structure that is derived from the loaded tickets.
+ * DataController notifies every ticket index whenever a ticket is booked or deleted, so they never need to be rebuilt.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see solar.rpg.ticketer.controller.DataController
+ * @since 0.1
+ */
+public interface TicketIndex {
+
+    /**
+     * Called once a ticket has been loaded or booked.
+     *
+     * @param ticket The new ticket.
+     */
+    void add(Ticket ticket);
+
+    /**
+     * Called once several tickets have been loaded at once, e.g. on startup, before any of them can be read.
+     * By default, each ticket is added in turn.
+     *
+     * @param tickets The loaded tickets.
+     */
+    default void addAll(Collection<Ticket> tickets) {
+        tickets.forEach(this::add);
+    }
+
+    /**
+     * Called once a ticket has been deleted.
+     *
+     * @param ticket The deleted ticket.
+     */
+    void remove(Ticket ticket);
+
+    /**
+     * Called once several tickets have been deleted at once, e.g. a whole booking.
+     * By default, each ticket is removed in turn.
+     *
+     * @param tickets The deleted tickets.
+     */
+    default void removeAll(Collection<Ticket> tickets) {
+        tickets.forEach(this::remove);
+    }
+
+    /**
+     * Called once a time slot has passed, after every one of its tickets has been removed.
+     * Anything that is still kept for the time slot can be thrown away.
+     *
+     * @param screening The screening.
+     * @param date      The time slot, as epoch milliseconds.
+     */
+    default void expire(Screening screening, long date) {
+        // Most indexes do not keep anything for a time slot without tickets.
+    }
+}
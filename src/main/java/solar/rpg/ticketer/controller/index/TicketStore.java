@@ -0,0 +1,467 @@
+package solar.rpg.ticketer.controller.index;
+
+import solar.rpg.ticketer.models.Screening;
+import solar.rpg.ticketer.models.Ticket;
+
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+/**
+ * Stores the loaded tickets column by column, in growable primitive arrays, instead of as one object per ticket.
+ * Each ticket is a row made up of a screening ID, an epoch minute, a seat ID, and a dictionary-encoded username.
+ * {@link Ticket} objects are only created on demand, as short-lived views of a row, for the UI to use.
+ * <p>
+ * Deleting a ticket only marks its row as dead (a tombstone). Once there are as many dead rows as live ones,
+ * the columns are compacted, which means that row numbers are not stable and must not be kept by callers.
+ * <p>
+ * Rows are found by (screening, minute, seat) through an open-addressing hash table of row numbers.
+ * Rows of the same username are linked together, so a username's tickets can be listed without a scan.
+ * <p>
+ * The store is guarded by a read-write lock, so any number of threads may read it while no thread is writing.
+ * Row numbers may be moved by any write, so the per-row accessors must be used within {@link #read(Supplier)}.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see Ticket
+ * @since 0.1
+ */
+public class TicketStore {
+
+    // Empty and deleted slots in the hash table.
+    private static final int EMPTY = -1, DELETED = -2;
+
+    // Used to resolve screening IDs when creating ticket views.
+    private final IntFunction<Screening> screenings;
+
+    // Ticket columns, indexed by row number.
+    private int[] screeningIDs, usernameIDs, nextOfUsername;
+    private long[] minutes;
+    private short[] seatIDs;
+    private final BitSet dead;
+    private int rows, live;
+
+    // Username dictionary. Each username is encoded as its position in the dictionary.
+    private final HashMap<String, Integer> usernameCodes;
+    private final List<String> usernames;
+    private int[] firstOfUsername, countOfUsername;
+
+    // Open-addressing hash table of row numbers, keyed by (screening, minute, seat).
+    private int[] slots;
+    private int usedSlots;
+
+    private final ReentrantReadWriteLock lock;
+
+    /**
+     * @param screenings Resolves a screening ID to a loaded screening.
+     */
+    public TicketStore(IntFunction<Screening> screenings) {
+        this.screenings = screenings;
+        screeningIDs = new int[1024];
+        usernameIDs = new int[1024];
+        nextOfUsername = new int[1024];
+        minutes = new long[1024];
+        seatIDs = new short[1024];
+        dead = new BitSet();
+        usernameCodes = new HashMap<>();
+        usernames = new ArrayList<>();
+        firstOfUsername = new int[64];
+        countOfUsername = new int[64];
+        slots = new int[2048];
+        Arrays.fill(slots, EMPTY);
+        lock = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Runs a reader while holding the read lock, so that row numbers stay valid until it returns.
+     *
+     * @param reader Reads the store, e.g. by scanning rows.
+     * @param <T>    The type of the result.
+     * @return The reader's result.
+     */
+    public <T> T read(Supplier<T> reader) {
+        Lock read = lock.readLock();
+        read.lock();
+        try {
+            return reader.get();
+        } finally {
+            read.unlock();
+        }
+    }
+
+    /**
+     * @param date A date.
+     * @return The date, in minutes since the epoch.
+     */
+    public static long toMinute(Timestamp date) {
+        return TimeUnit.MILLISECONDS.toMinutes(date.getTime());
+    }
+
+    /**
+     * Adds a ticket row.
+     *
+     * @param screeningID The screening ID.
+     * @param minute      The selected date, in minutes since the epoch.
+     * @param seatID      The allocated seat's ID.
+     * @param username    The username of the booking holder.
+     * @return True, if the ticket was added; false if the seat was already booked for this time slot.
+     */
+    public boolean add(int screeningID, long minute, int seatID, String username) {
+        lock.writeLock().lock();
+        try {
+            return insert(screeningID, minute, seatID, username);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a ticket row while holding the write lock.
+     */
+    private boolean insert(int screeningID, long minute, int seatID, String username) {
+        if (slotOf(screeningID, minute, seatID) != -1) return false;
+        if (rows == screeningIDs.length) growRows();
+        int row = rows++;
+        screeningIDs[row] = screeningID;
+        minutes[row] = minute;
+        seatIDs[row] = (short) seatID;
+
+        // Encode the username and link the row to the username's other rows.
+        int usernameID = usernameCodes.computeIfAbsent(username, name -> {
+            usernames.add(name);
+            if (usernames.size() > firstOfUsername.length) {
+                firstOfUsername = Arrays.copyOf(firstOfUsername, firstOfUsername.length * 2);
+                countOfUsername = Arrays.copyOf(countOfUsername, countOfUsername.length * 2);
+            }
+            firstOfUsername[usernames.size() - 1] = -1;
+            return usernames.size() - 1;
+        });
+        usernameIDs[row] = usernameID;
+        nextOfUsername[row] = firstOfUsername[usernameID];
+        firstOfUsername[usernameID] = row;
+        countOfUsername[usernameID]++;
+
+        insertSlot(row);
+        live++;
+        return true;
+    }
+
+    /**
+     * Adds a ticket.
+     *
+     * @param ticket The ticket.
+     * @return True, if the ticket was added; false if the seat was already booked for this time slot.
+     */
+    public boolean add(Ticket ticket) {
+        return add(ticket.getScreening().getID(), toMinute(ticket.getSelectedDate()), ticket.getSeatID(), ticket.getUsername());
+    }
+
+    /**
+     * Removes a ticket by marking its row as dead.
+     *
+     * @param ticket The ticket.
+     * @return True, if the ticket was found and removed.
+     */
+    public boolean remove(Ticket ticket) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(ticket.getScreening().getID(), toMinute(ticket.getSelectedDate()), ticket.getSeatID());
+            if (slot == -1) return false;
+            kill(slots[slot]);
+            compactIfSparse();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes several tickets at once, under a single write lock.
+     *
+     * @param toRemove The tickets to remove.
+     * @return The tickets that were removed; those that were not in the store are left out.
+     */
+    public List<Ticket> removeAll(Collection<Ticket> toRemove) {
+        lock.writeLock().lock();
+        try {
+            List<Ticket> removed = new ArrayList<>(toRemove.size());
+            for (Ticket ticket : toRemove) {
+                int slot = slotOf(ticket.getScreening().getID(), toMinute(ticket.getSelectedDate()), ticket.getSeatID());
+                if (slot == -1) continue;
+                kill(slots[slot]);
+                removed.add(ticket);
+            }
+            compactIfSparse();
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes every ticket whose row matches a condition.
+     *
+     * @param condition Tests a row number.
+     * @return The number of removed tickets.
+     */
+    public int removeIf(IntPredicate condition) {
+        lock.writeLock().lock();
+        try {
+            int removed = 0;
+            for (int row = dead.nextClearBit(0); row < rows; row = dead.nextClearBit(row + 1))
+                if (condition.test(row)) {
+                    kill(row);
+                    removed++;
+                }
+            compactIfSparse();
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marks a row as dead, and removes it from the hash table.
+     */
+    private void kill(int row) {
+        int slot = slotOf(screeningIDs[row], minutes[row], getSeatID(row));
+        slots[slot] = DELETED;
+        dead.set(row);
+        countOfUsername[usernameIDs[row]]--;
+        live--;
+    }
+
+    /**
+     * @param screeningID The screening ID.
+     * @param minute      The selected date, in minutes since the epoch.
+     * @param seatID      The allocated seat's ID.
+     * @return The row number of the ticket, or -1 if there is no such ticket.
+     */
+    public int find(int screeningID, long minute, int seatID) {
+        return read(() -> {
+            int slot = slotOf(screeningID, minute, seatID);
+            return slot == -1 ? -1 : slots[slot];
+        });
+    }
+
+    /**
+     * @return The number of rows, including dead ones. Valid row numbers are below this.
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * @return The number of live tickets.
+     */
+    public int size() {
+        return read(() -> live);
+    }
+
+    /**
+     * @param row A row number.
+     * @return True, if the row has not been removed.
+     */
+    public boolean isLive(int row) {
+        return !dead.get(row);
+    }
+
+    /**
+     * @param row A row number.
+     * @return The screening ID of the ticket.
+     */
+    public int getScreeningID(int row) {
+        return screeningIDs[row];
+    }
+
+    /**
+     * @param row A row number.
+     * @return The selected date of the ticket, in minutes since the epoch.
+     */
+    public long getMinute(int row) {
+        return minutes[row];
+    }
+
+    /**
+     * @param row A row number.
+     * @return The allocated seat ID of the ticket.
+     */
+    public int getSeatID(int row) {
+        // Seat IDs are stored as unsigned shorts.
+        return seatIDs[row] & 0xFFFF;
+    }
+
+    /**
+     * @param row A row number.
+     * @return The username of the booking holder.
+     */
+    public String getUsername(int row) {
+        return usernames.get(usernameIDs[row]);
+    }
+
+    /**
+     * Creates a short-lived view of a row. Views are equal to each other if they represent the same ticket.
+     *
+     * @param row A live row number.
+     * @return The ticket, as a model.
+     */
+    public Ticket view(int row) {
+        return read(() -> createView(row));
+    }
+
+    /**
+     * Creates a view of a row while holding a lock.
+     */
+    private Ticket createView(int row) {
+        Screening screening = screenings.apply(screeningIDs[row]);
+        return new Ticket(screening, new Timestamp(TimeUnit.MINUTES.toMillis(minutes[row])),
+                screening.getVenue().getSeatLabel(getSeatID(row)), getUsername(row));
+    }
+
+    /**
+     * Passes a view of every live ticket to a consumer, one at a time.
+     *
+     * @param consumer Receives each view.
+     */
+    public void forEachView(Consumer<Ticket> consumer) {
+        read(() -> {
+            for (int row = dead.nextClearBit(0); row < rows; row = dead.nextClearBit(row + 1))
+                consumer.accept(createView(row));
+            return null;
+        });
+    }
+
+    /**
+     * @param username The username.
+     * @return The number of live tickets booked under the username.
+     */
+    public int countOfUsername(String username) {
+        return read(() -> {
+            Integer usernameID = usernameCodes.get(username);
+            return usernameID == null ? 0 : countOfUsername[usernameID];
+        });
+    }
+
+    /**
+     * @param username The username.
+     * @return Views of every live ticket booked under the username, in order of booking.
+     */
+    public List<Ticket> viewsOfUsername(String username) {
+        return read(() -> {
+            Integer usernameID = usernameCodes.get(username);
+            if (usernameID == null) return new ArrayList<>();
+            LinkedList<Ticket> result = new LinkedList<>();
+            // Rows are linked from newest to oldest.
+            for (int row = firstOfUsername[usernameID]; row != -1; row = nextOfUsername[row])
+                if (!dead.get(row)) result.addFirst(createView(row));
+            return new ArrayList<>(result);
+        });
+    }
+
+    /**
+     * Compacts the columns once at least half of the rows are dead.
+     */
+    private void compactIfSparse() {
+        if (rows >= 1024 && rows - live >= live) compactRows();
+    }
+
+    /**
+     * Moves every live row down so that there are no dead rows in between,
+     * then rebuilds the username links and the hash table for the new row numbers.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            compactRows();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compacts the columns while holding the write lock.
+     */
+    private void compactRows() {
+        int target = 0;
+        for (int row = dead.nextClearBit(0); row < rows; row = dead.nextClearBit(row + 1), target++) {
+            screeningIDs[target] = screeningIDs[row];
+            minutes[target] = minutes[row];
+            seatIDs[target] = seatIDs[row];
+            usernameIDs[target] = usernameIDs[row];
+        }
+        rows = target;
+        dead.clear();
+
+        // Re-link usernames, and re-insert every row into an emptied hash table.
+        Arrays.fill(firstOfUsername, -1);
+        Arrays.fill(slots, EMPTY);
+        usedSlots = 0;
+        for (int row = 0; row < rows; row++) {
+            nextOfUsername[row] = firstOfUsername[usernameIDs[row]];
+            firstOfUsername[usernameIDs[row]] = row;
+            insertSlot(row);
+        }
+    }
+
+    /**
+     * Doubles the capacity of every column.
+     */
+    private void growRows() {
+        int capacity = screeningIDs.length * 2;
+        screeningIDs = Arrays.copyOf(screeningIDs, capacity);
+        usernameIDs = Arrays.copyOf(usernameIDs, capacity);
+        nextOfUsername = Arrays.copyOf(nextOfUsername, capacity);
+        minutes = Arrays.copyOf(minutes, capacity);
+        seatIDs = Arrays.copyOf(seatIDs, capacity);
+    }
+
+    /* Below this line is the hash table of row numbers. */
+
+    /**
+     * Mixes the three key columns into a well-distributed hash.
+     */
+    private static int hash(int screeningID, long minute, int seatID) {
+        long hash = screeningID * 0x9E3779B97F4A7C15L + minute * 0xC2B2AE3D27D4EB4FL + seatID;
+        hash ^= hash >>> 31;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * @return The slot holding the matching row, or -1 if there is no such row.
+     */
+    private int slotOf(int screeningID, long minute, int seatID) {
+        int mask = slots.length - 1;
+        for (int slot = hash(screeningID, minute, seatID) & mask; ; slot = (slot + 1) & mask) {
+            int row = slots[slot];
+            if (row == EMPTY) return -1;
+            if (row != DELETED && screeningIDs[row] == screeningID && minutes[row] == minute && seatIDs[row] == (short) seatID)
+                return slot;
+        }
+    }
+
+    /**
+     * Inserts a row into the first free slot, growing the table if it becomes more than half full.
+     */
+    private void insertSlot(int row) {
+        if ((usedSlots + 1) * 2 > slots.length) {
+            // Deleted slots are dropped while rehashing, so only grow if the table is filling up with live rows.
+            int[] previous = slots;
+            slots = new int[live * 4 >= previous.length ? previous.length * 2 : previous.length];
+            Arrays.fill(slots, EMPTY);
+            usedSlots = 0;
+            for (int existing : previous)
+                if (existing >= 0) insertSlot(existing);
+        }
+        int mask = slots.length - 1;
+        int slot = hash(screeningIDs[row], minutes[row], getSeatID(row)) & mask;
+        while (slots[slot] >= 0) slot = (slot + 1) & mask;
+        if (slots[slot] == EMPTY) usedSlots++;
+        slots[slot] = row;
+    }
+}
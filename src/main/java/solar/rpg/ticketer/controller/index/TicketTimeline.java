@@ -0,0 +1,106 @@
+package solar.rpg.ticketer.controller.index;
+
+import solar.rpg.ticketer.models.Ticket;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Keeps the loaded tickets in time order: by time slot, then by screening, then by seat. Each time slot's tickets are
+ * kept together under a key of its epoch minute (upper 32 bits) and screening ID (lower 32 bits), in a skip list.
+ * Finding a time slot, or every time slot in a time range, is then a logarithmic seek followed by a sequential read,
+ * and tickets come out in the order that staff work through them.
+ * <p>
+ * Tickets of the same time slot are only ever added and removed by one thread at a time, as booking mutations of a
+ * time slot are serialised by DataController; different time slots can be changed and read concurrently.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @since 0.1
+ */
+public class TicketTimeline implements TicketIndex {
+
+    // Time slot keys, mapped to the seat IDs of the time slot, mapped to their tickets.
+    private final ConcurrentSkipListMap<Long, ConcurrentSkipListMap<Integer, Ticket>> slots;
+
+    public TicketTimeline() {
+        slots = new ConcurrentSkipListMap<>();
+    }
+
+    /**
+     * Packs a time slot into a key that sorts by time first: the epoch minute in the upper 32 bits, and the screening ID in the lower 32 bits.
+     *
+     * @param screeningID The screening ID.
+     * @param minute      The time slot, as an epoch minute.
+     * @return The time slot key.
+     */
+    private static long key(int screeningID, long minute) {
+        return (minute << 32) | (screeningID & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public void add(Ticket ticket) {
+        slots.computeIfAbsent(key(ticket.getScreening().getID(), TicketStore.toMinute(ticket.getSelectedDate())), key -> new ConcurrentSkipListMap<>())
+                .put(ticket.getSeatID(), ticket);
+    }
+
+    @Override
+    public void remove(Ticket ticket) {
+        long key = key(ticket.getScreening().getID(), TicketStore.toMinute(ticket.getSelectedDate()));
+        ConcurrentSkipListMap<Integer, Ticket> seats = slots.get(key);
+        if (seats == null) return;
+        seats.remove(ticket.getSeatID());
+        // Don't keep empty time slots around.
+        if (seats.isEmpty()) slots.remove(key, seats);
+    }
+
+    /**
+     * @param screeningID The screening ID.
+     * @param minute      The time slot, as an epoch minute.
+     * @return Every ticket of the time slot, in seat order.
+     */
+    public List<Ticket> find(int screeningID, long minute) {
+        ConcurrentSkipListMap<Integer, Ticket> seats = slots.get(key(screeningID, minute));
+        return seats == null ? new ArrayList<>() : new ArrayList<>(seats.values());
+    }
+
+    /**
+     * @param screeningID The screening ID.
+     * @param minute      The time slot, as an epoch minute.
+     * @param seatID      The seat ID.
+     * @return The ticket booked for the seat, or null if it is not booked.
+     */
+    public Ticket get(int screeningID, long minute, int seatID) {
+        ConcurrentSkipListMap<Integer, Ticket> seats = slots.get(key(screeningID, minute));
+        return seats == null ? null : seats.get(seatID);
+    }
+
+    /**
+     * @param fromMinute The earliest time slot, as an epoch minute (inclusive).
+     * @param toMinute   The latest time slot, as an epoch minute (inclusive).
+     * @return Every ticket of every time slot in the range, ordered by time slot, then screening, then seat.
+     */
+    public List<Ticket> findBetween(long fromMinute, long toMinute) {
+        if (fromMinute > toMinute) return new ArrayList<>();
+        return flatten(slots.subMap(key(0, fromMinute), true, key(-1, toMinute), true).values());
+    }
+
+    /**
+     * @param minute A time, as an epoch minute.
+     * @return Every ticket of every time slot before then, ordered by time slot, then screening, then seat.
+     */
+    public List<Ticket> findBefore(long minute) {
+        return flatten(slots.headMap(key(0, minute), false).values());
+    }
+
+    /**
+     * @return The tickets of several time slots, one after another.
+     */
+    private static List<Ticket> flatten(Collection<ConcurrentSkipListMap<Integer, Ticket>> slots) {
+        List<Ticket> result = new ArrayList<>();
+        slots.forEach(seats -> result.addAll(seats.values()));
+        return result;
+    }
+}
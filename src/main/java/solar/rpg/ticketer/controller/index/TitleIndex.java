@@ -0,0 +1,166 @@
+package solar.rpg.ticketer.controller.index;
+
+import java.util.*;
+
+/**
+ * Searches movie titles by their trigrams (every run of three characters), which tolerates typos and partial words.
+ * Each trigram has a posting list of the titles containing it, so a search only visits titles that share a trigram
+ * with the query. Titles are ranked by how many trigrams they share with the query, relative to both of their sizes
+ * (the Dice coefficient), and titles that contain the query outright are ranked first.
+ * <p>
+ * Titles can be added and removed at any time. Removed titles are only marked as such, until there are more
+ * removed titles than live ones, at which point the posting lists are rebuilt.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @since 0.1
+ */
+public class TitleIndex {
+
+    // Titles that share less than this with the query (and do not contain it) are not matches.
+    private static final double MIN_SIMILARITY = 0.3;
+
+    // Titles and their normalised forms (with a leading space), by title number, along with how many distinct trigrams they have.
+    private final List<String> titles, normalised;
+    private int[] trigramCounts;
+    private final BitSet removed;
+    private final HashMap<String, Integer> numbers;
+
+    // Trigrams, mapped to growable arrays of title numbers. The first element of each array is its size.
+    private final HashMap<Long, int[]> postings;
+
+    public TitleIndex() {
+        titles = new ArrayList<>();
+        normalised = new ArrayList<>();
+        trigramCounts = new int[64];
+        removed = new BitSet();
+        numbers = new HashMap<>();
+        postings = new HashMap<>();
+    }
+
+    /**
+     * @param text Any text.
+     * @return The text in lower case, with every run of punctuation or whitespace turned into a single space.
+     */
+    private static String normalise(String text) {
+        StringBuilder result = new StringBuilder(text.length());
+        for (char c : text.toCharArray()) {
+            if (Character.isLetterOrDigit(c)) result.append(Character.toLowerCase(c));
+            else if (result.length() != 0 && result.charAt(result.length() - 1) != ' ') result.append(' ');
+        }
+        return result.toString().trim();
+    }
+
+    /**
+     * @param text Normalised text, padded with spaces where words should start or end.
+     * @return The distinct trigrams of the text, each packed into a long.
+     */
+    private static long[] trigrams(String text) {
+        long[] result = new long[Math.max(0, text.length() - 2)];
+        for (int i = 0; i < result.length; i++)
+            result[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+        return Arrays.stream(result).distinct().toArray();
+    }
+
+    /**
+     * Adds a title, if it is not already in the index.
+     *
+     * @param title The title.
+     */
+    public synchronized void add(String title) {
+        if (numbers.containsKey(title)) return;
+        int number = titles.size();
+        titles.add(title);
+        normalised.add(" " + normalise(title));
+        numbers.put(title, number);
+
+        long[] grams = trigrams(normalised.get(number) + " ");
+        if (number == trigramCounts.length) trigramCounts = Arrays.copyOf(trigramCounts, number * 2);
+        trigramCounts[number] = grams.length;
+        for (long gram : grams) {
+            int[] posting = postings.computeIfAbsent(gram, key -> new int[4]);
+            if (posting[0] + 1 == posting.length) postings.put(gram, posting = Arrays.copyOf(posting, posting.length * 2));
+            posting[++posting[0]] = number;
+        }
+    }
+
+    /**
+     * Removes a title, if it is in the index.
+     *
+     * @param title The title.
+     */
+    public synchronized void remove(String title) {
+        Integer number = numbers.remove(title);
+        if (number == null) return;
+        removed.set(number);
+
+        // Rebuild the posting lists once most of them point at removed titles.
+        if (removed.cardinality() > 1024 && removed.cardinality() > numbers.size()) {
+            List<String> live = new ArrayList<>();
+            for (int i = removed.nextClearBit(0); i < titles.size(); i = removed.nextClearBit(i + 1))
+                live.add(titles.get(i));
+            titles.clear();
+            normalised.clear();
+            removed.clear();
+            numbers.clear();
+            postings.clear();
+            live.forEach(this::add);
+        }
+    }
+
+    /**
+     * @param query A query, e.g. "star wa".
+     * @return False, if the query is too short to match anything, e.g. "a", or only has punctuation, e.g. "!!".
+     */
+    public static boolean isSearchable(String query) {
+        return trigrams(" " + normalise(query)).length != 0;
+    }
+
+    /**
+     * Finds titles that resemble a query, best match first. The query is treated as the start of a title's words,
+     * so it can be searched as it is being typed.
+     *
+     * @param query The query, e.g. "star wa".
+     * @param limit Maximum amount of results.
+     * @return Matching titles, best match first. Empty if the query is shorter than two characters.
+     */
+    public synchronized List<String> search(String query, int limit) {
+        String normalisedQuery = " " + normalise(query);
+        long[] grams = trigrams(normalisedQuery);
+        if (grams.length == 0) return new ArrayList<>();
+
+        // Count the trigrams each title shares with the query, remembering which titles were touched.
+        int[] shared = new int[titles.size()];
+        int[] touched = new int[titles.size()];
+        int touchedCount = 0;
+        for (long gram : grams) {
+            int[] posting = postings.get(gram);
+            if (posting == null) continue;
+            for (int i = 1; i <= posting[0]; i++)
+                if (shared[posting[i]]++ == 0) touched[touchedCount++] = posting[i];
+        }
+
+        // Rank the touched titles by similarity, with titles containing the query outright first.
+        // Only the best matches are kept, in a heap whose head is the worst of them.
+        double[] scores = new double[titles.size()];
+        Comparator<Integer> order = (first, second) -> scores[first] != scores[second] ? Double.compare(scores[second], scores[first]) :
+                titles.get(first).compareTo(titles.get(second));
+        PriorityQueue<Integer> best = new PriorityQueue<>(order.reversed());
+        for (int i = 0; i < touchedCount; i++) {
+            int number = touched[i];
+            if (removed.get(number)) continue;
+            double similarity = 2D * shared[number] / (grams.length + trigramCounts[number]);
+            boolean contains = normalised.get(number).contains(normalisedQuery);
+            if (!contains && similarity < MIN_SIMILARITY) continue;
+            scores[number] = similarity + (contains ? 1 : 0);
+            best.add(number);
+            if (best.size() > limit) best.poll();
+        }
+
+        List<Integer> result = new ArrayList<>(best);
+        result.sort(order);
+        List<String> matches = new ArrayList<>(result.size());
+        result.forEach(number -> matches.add(titles.get(number)));
+        return matches;
+    }
+}
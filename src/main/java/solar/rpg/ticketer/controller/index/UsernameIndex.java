@@ -0,0 +1,70 @@
+package solar.rpg.ticketer.controller.index;
+
+import solar.rpg.ticketer.models.Movie;
+import solar.rpg.ticketer.models.Ticket;
+
+import java.util.*;
+
+/**
+ * Looks up the loaded tickets by username, grouped by movie, which is exactly the shape that the ticket review screen needs.
+ * Tickets of a username are linked together inside the {@link TicketStore}, so a lookup only visits that username's tickets.
+ * Usernames that currently hold tickets are also kept in a prefix tree for auto-completion.
+ * The prefix tree is not thread-safe by itself, so it is only accessed while holding this index's monitor.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see UsernameTrie
+ * @since 0.1
+ */
+public class UsernameIndex implements TicketIndex {
+
+    // The store holding the tickets, which must be updated before this index is.
+    private final TicketStore store;
+    private final UsernameTrie usernames;
+
+    public UsernameIndex(TicketStore store) {
+        this.store = store;
+        usernames = new UsernameTrie();
+    }
+
+    @Override
+    public synchronized void add(Ticket ticket) {
+        usernames.insert(ticket.getUsername());
+    }
+
+    @Override
+    public synchronized void remove(Ticket ticket) {
+        // Forget the username once it holds no tickets at all.
+        if (store.countOfUsername(ticket.getUsername()) == 0)
+            usernames.remove(ticket.getUsername());
+    }
+
+    /**
+     * @param username The username.
+     * @return The username's tickets, grouped by movie in order of first booking.
+     */
+    public LinkedHashMap<Movie, List<Ticket>> findGrouped(String username) {
+        LinkedHashMap<Movie, List<Ticket>> result = new LinkedHashMap<>();
+        store.viewsOfUsername(username).forEach(ticket ->
+                result.computeIfAbsent(ticket.getScreening().getMovie(), movie -> new ArrayList<>()).add(ticket));
+        return result;
+    }
+
+    /**
+     * @param username The username.
+     * @return All of the username's tickets.
+     */
+    public List<Ticket> find(String username) {
+        return store.viewsOfUsername(username);
+    }
+
+    /**
+     * @param prefix The start of a username.
+     * @param limit  Maximum amount of suggestions.
+     * @return Usernames holding tickets that start with the prefix, in alphabetical order.
+     */
+    public synchronized List<String> suggest(String prefix, int limit) {
+        if (prefix.isEmpty()) return Collections.emptyList();
+        return usernames.complete(prefix, limit);
+    }
+}
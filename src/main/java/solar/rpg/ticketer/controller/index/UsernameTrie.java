@@ -0,0 +1,158 @@
+package solar.rpg.ticketer.controller.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compact prefix tree of usernames, used to suggest usernames as they are being typed.
+ * Nodes are stored in parallel primitive arrays rather than as objects; node 0 is the root.
+ * The children of a node form a linked list of siblings, kept in alphabetical order.
+ * <p>
+ * Removed usernames leave their nodes behind, but every node counts how many usernames live
+ * beneath it, so empty branches are skipped when completing a prefix.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @since 0.1
+ */
+public class UsernameTrie {
+
+    // Node attributes, indexed by node number.
+    private char[] labels;
+    private int[] firstChild, nextSibling, live;
+    private boolean[] terminal;
+    private int size;
+
+    public UsernameTrie() {
+        labels = new char[64];
+        firstChild = new int[64];
+        nextSibling = new int[64];
+        live = new int[64];
+        terminal = new boolean[64];
+        // Create the root node.
+        size = 1;
+        firstChild[0] = -1;
+        nextSibling[0] = -1;
+    }
+
+    /**
+     * Adds a username to the tree. Adding an existing username has no effect.
+     *
+     * @param username The username.
+     */
+    public void insert(String username) {
+        if (contains(username)) return;
+        int node = 0;
+        live[node]++;
+        for (int i = 0; i < username.length(); i++) {
+            node = childOf(node, username.charAt(i), true);
+            live[node]++;
+        }
+        terminal[node] = true;
+    }
+
+    /**
+     * Removes a username from the tree. Removing an unknown username has no effect.
+     *
+     * @param username The username.
+     */
+    public void remove(String username) {
+        if (!contains(username)) return;
+        int node = 0;
+        live[node]--;
+        for (int i = 0; i < username.length(); i++) {
+            node = childOf(node, username.charAt(i), false);
+            live[node]--;
+        }
+        terminal[node] = false;
+    }
+
+    /**
+     * @param username The username.
+     * @return True, if the username is in the tree.
+     */
+    public boolean contains(String username) {
+        int node = find(username);
+        return node != -1 && terminal[node];
+    }
+
+    /**
+     * Finds usernames that start with a prefix, in alphabetical order.
+     *
+     * @param prefix The prefix, which is not empty.
+     * @param limit  Maximum amount of usernames to return.
+     * @return Up to {@code limit} usernames starting with the prefix.
+     */
+    public List<String> complete(String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        int node = find(prefix);
+        if (node == -1 || live[node] == 0) return result;
+        collect(node, new StringBuilder(prefix), result, limit);
+        return result;
+    }
+
+    /**
+     * Depth-first traversal that appends every live username beneath a node, stopping at the limit.
+     */
+    private void collect(int node, StringBuilder path, List<String> result, int limit) {
+        if (terminal[node]) result.add(path.toString());
+        for (int child = firstChild[node]; child != -1 && result.size() < limit; child = nextSibling[child]) {
+            if (live[child] == 0) continue;
+            path.append(labels[child]);
+            collect(child, path, result, limit);
+            path.setLength(path.length() - 1);
+        }
+    }
+
+    /**
+     * @param word The word.
+     * @return The node at the end of the word's path, or -1 if there is no such path.
+     */
+    private int find(String word) {
+        int node = 0;
+        for (int i = 0; i < word.length() && node != -1; i++)
+            node = childOf(node, word.charAt(i), false);
+        return node;
+    }
+
+    /**
+     * Looks for a child node with a given label, keeping siblings in alphabetical order.
+     *
+     * @param node   The parent node.
+     * @param label  The child's label.
+     * @param create True, if the child should be created when it does not exist.
+     * @return The child node, or -1 if it does not exist and was not created.
+     */
+    private int childOf(int node, char label, boolean create) {
+        int previous = -1, child = firstChild[node];
+        while (child != -1 && labels[child] < label) {
+            previous = child;
+            child = nextSibling[child];
+        }
+        if (child != -1 && labels[child] == label) return child;
+        if (!create) return -1;
+
+        // Create the child between its previous and next sibling.
+        if (size == labels.length) grow();
+        int created = size++;
+        labels[created] = label;
+        firstChild[created] = -1;
+        nextSibling[created] = child;
+        if (previous == -1) firstChild[node] = created;
+        else nextSibling[previous] = created;
+        return created;
+    }
+
+    /**
+     * Doubles the capacity of every node array.
+     */
+    private void grow() {
+        int capacity = labels.length * 2;
+        labels = Arrays.copyOf(labels, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        nextSibling = Arrays.copyOf(nextSibling, capacity);
+        live = Arrays.copyOf(live, capacity);
+        terminal = Arrays.copyOf(terminal, capacity);
+    }
+}
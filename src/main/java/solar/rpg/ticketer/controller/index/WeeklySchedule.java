@@ -0,0 +1,117 @@
+package solar.rpg.ticketer.controller.index;
+
+import solar.rpg.ticketer.models.ScreeningTime;
+
+import java.time.*;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A screening's weekly time slots, compiled into a sorted array of minutes since Monday 00:00.
+ * Occurrences of the time slots are generated lazily, week after week, from any point in time.
+ * This class is immutable, and so it is thread-safe.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see ScreeningTime
+ * @since 0.1
+ */
+public final class WeeklySchedule {
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    // Minutes since Monday 00:00, in ascending order and without duplicates.
+    private final int[] minutesOfWeek;
+
+    /**
+     * Compiles a list of screening times. Invalid screening times are logged and skipped.
+     *
+     * @param screeningID The screening that the times belong to, for logging purposes.
+     * @param times       The screening times, e.g. Tuesday at 12:30.
+     */
+    public WeeklySchedule(int screeningID, List<ScreeningTime> times) {
+        minutesOfWeek = times.stream().mapToInt(time -> {
+            try {
+                // Determine day of week and time of day that the screening will take place.
+                DayOfWeek day = DayOfWeek.valueOf(time.getDayOfWeek().trim().toUpperCase());
+                // Hours may have one digit, e.g. 9:30, so the time is split rather than parsed as ISO.
+                String[] parts = time.getTime().trim().split(":");
+                LocalTime at = LocalTime.of(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+                return (day.getValue() - 1) * MINUTES_PER_DAY + at.getHour() * 60 + at.getMinute();
+            } catch (Exception ex) {
+                System.out.println("> WARNING: Unable to process time value '" + time.getDayOfWeek() + " " + time.getTime() + "' for screening ID #" + screeningID);
+                return -1;
+            }
+        }).filter(minute -> minute >= 0).sorted().distinct().toArray();
+    }
+
+    /**
+     * @return True, if there are no valid time slots at all.
+     */
+    public boolean isEmpty() {
+        return minutesOfWeek.length == 0;
+    }
+
+    /**
+     * @return The time slots, as minutes since Monday 00:00, in ascending order.
+     */
+    public int[] getMinutesOfWeek() {
+        return minutesOfWeek.clone();
+    }
+
+    /**
+     * Lazily generates every occurrence of the time slots from a given point in time onwards, in order.
+     * The iterator never ends (unless there are no time slots), so the caller decides when to stop.
+     *
+     * @param from Epoch milliseconds to start from. Occurrences before this are not generated.
+     * @param zone The time zone that the time slots are in.
+     * @return Occurrences, as epoch milliseconds.
+     */
+    public PrimitiveIterator.OfLong occurrences(long from, ZoneId zone) {
+        LocalDateTime start = LocalDateTime.ofInstant(Instant.ofEpochMilli(from), zone);
+        LocalDateTime monday = start.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).atStartOfDay();
+        int minuteOfWeek = (int) Duration.between(monday, start).toMinutes();
+
+        // Find the first time slot on or after the starting minute of this week.
+        int position = Arrays.binarySearch(minutesOfWeek, minuteOfWeek);
+        int first = position >= 0 ? position : -position - 1;
+
+        return new PrimitiveIterator.OfLong() {
+
+            private LocalDateTime week = first == minutesOfWeek.length ? monday.plusWeeks(1) : monday;
+            private int index = first == minutesOfWeek.length ? 0 : first;
+            private long next = advance();
+
+            /**
+             * @return The next occurrence that is not before the starting point, or -1 if there are none.
+             */
+            private long advance() {
+                while (minutesOfWeek.length != 0) {
+                    long result = week.plusMinutes(minutesOfWeek[index]).atZone(zone).toInstant().toEpochMilli();
+                    if (++index == minutesOfWeek.length) {
+                        index = 0;
+                        week = week.plusWeeks(1);
+                    }
+                    if (result >= from) return result;
+                }
+                return -1;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != -1;
+            }
+
+            @Override
+            public long nextLong() {
+                if (next == -1) throw new NoSuchElementException();
+                long result = next;
+                next = advance();
+                return result;
+            }
+        };
+    }
+}
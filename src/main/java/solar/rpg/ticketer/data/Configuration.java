@@ -5,6 +5,8 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * A simple configuration system that is used to load configuration values.
@@ -48,6 +50,22 @@ public final class Configuration {
         return Integer.parseInt(configValues.get(key));
     }
 
+    /**
+     * @param key Key associated with value.
+     * @return True, if a value exists for this key.
+     */
+    public boolean hasKey(String key) {
+        return configValues.containsKey(key);
+    }
+
+    /**
+     * @param prefix The prefix that keys must start with.
+     * @return All keys in this configuration that start with the prefix.
+     */
+    public List<String> getKeysWithPrefix(String prefix) {
+        return configValues.keySet().stream().filter(key -> key.startsWith(prefix)).sorted().collect(Collectors.toList());
+    }
+
     /**
      * Attempt to use existing configuration file, otherwise it will
      * take the default configuration resource file and copy it outside
@@ -99,8 +117,8 @@ public final class Configuration {
         // Ignore commented out lines.
         if (line.startsWith("#")) return;
 
-        String[] keyVal = line.split("=");
-        // We only want a key and value, split by an '=' sign.
+        String[] keyVal = line.split("=", -1);
+        // We only want a key and value, split by an '=' sign. The value may be left blank.
         if (keyVal.length != 2)
             throw new IllegalArgumentException(String.format("Expected a key and value, received %d strings", keyVal.length));
 
@@ -1,13 +1,20 @@
 package solar.rpg.ticketer.data;
 
 import solar.rpg.ticketer.controller.DataController;
+import solar.rpg.ticketer.controller.index.TicketStore;
 import solar.rpg.ticketer.models.*;
 
 import javax.swing.*;
 import java.sql.*;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * Simple yet direct Database model that uses the JDBC driver.
@@ -17,12 +24,28 @@ import java.util.List;
  * @version 1
  * @since 0.1
  */
-public class Database {
+public class Database implements TicketWriter {
 
     // Database fields.
     private final String user, pass, url, database;
     private Connection connection;
 
+    // Used for transactions on the main database, so they do not interfere with statements on the shared connection above.
+    private final TransactionConnection transactions;
+
+    // The cinema site that this kiosk serves. A value of 0 means every site in the chain.
+    private final int site;
+
+    // Ticket shards, keyed by the venues they serve and by their location. Unmapped venues use the main database.
+    private final HashMap<Integer, TicketShard> shardsByVenue;
+    private final HashMap<String, TicketShard> shardsByTarget;
+
+    // Used to query the main database and every shard at the same time.
+    private final ExecutorService shardPool;
+
+    // Most tickets that are deleted by a single statement. Each ticket takes three wildcards, well within MySQL's limit.
+    private static final int DELETE_BATCH_SIZE = 1000;
+
     // Reference to DataController for utility methods.
     private final DataController controller;
 
@@ -32,9 +55,18 @@ public class Database {
      * @param hostname MySQL server's hostname.
      * @param port     MySQL server port.
      * @param database Name of schema/database on MySQL server.
+     * @param site     Cinema site to load data for, or 0 to load every site.
      */
-    public Database(DataController controller, String user, String pass, String hostname, String port, String database) {
+    public Database(DataController controller, String user, String pass, String hostname, String port, String database, int site) {
         this.controller = controller;
+        this.site = site;
+        this.shardsByVenue = new HashMap<>();
+        this.shardsByTarget = new HashMap<>();
+        this.shardPool = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "Ticket-Shard-Query");
+            thread.setDaemon(true);
+            return thread;
+        });
 
         // Create database settings.
         this.user = user;
@@ -48,6 +80,11 @@ public class Database {
         // Check if the connection is valid.
         if (connection == null)
             throw new IllegalStateException("Unable to connect to database!");
+        transactions = new TransactionConnection(() -> {
+            Connection opened = DriverManager.getConnection(this.url, this.user, this.pass);
+            opened.setCatalog(database);
+            return opened;
+        });
     }
 
     /**
@@ -101,10 +138,16 @@ public class Database {
     }
 
     /**
-     * Closes the MySQL connection. Does not attempt to re-open.
+     * Closes the MySQL connection and the connections to all ticket shards. Does not attempt to re-open.
      * Unused.
      */
     public void close() {
+        shardsByTarget.values().forEach(TicketShard::close);
+        shardsByTarget.clear();
+        shardsByVenue.clear();
+        shardPool.shutdown();
+        transactions.close();
+
         // Only close the connection if there is a connection to close.
         if (connection != null) {
             try {
@@ -212,6 +255,7 @@ public class Database {
                             "`running_time` SMALLINT UNSIGNED NOT NULL," +
                             "`release_year` SMALLINT UNSIGNED NOT NULL," +
                             "`genre` CHAR(20) NOT NULL," +
+                            "`movie_modified` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3)," +
                             "CHECK (`running_time` > 0)," +
                             "CHECK (`release_year` > 1900)," +
                             "PRIMARY KEY(`name`)," +
@@ -220,6 +264,10 @@ public class Database {
         }
         check2.close();
 
+        // Each catalog table has its own modification time, named differently so that natural joins do not match on it.
+        // Kiosks compare them to what they have loaded, to pick up catalog changes while they are running.
+        addModificationTime(meta, "Movie", "movie_modified");
+
         // Check if the `Venue` table exists, and then create it if not.
         ResultSet check3 = meta.getTables(database, null, "Venue", null);
         if (!check3.next()) {
@@ -227,16 +275,43 @@ public class Database {
             oneLineExecute(connection.prepareStatement(
                     "CREATE TABLE Venue (" +
                             "`venue_no` SMALLINT UNSIGNED NOT NULL," +
-                            "`no_of_rows` TINYINT UNSIGNED NOT NULL DEFAULT 6," +
-                            "`no_of_cols` TINYINT UNSIGNED NOT NULL DEFAULT 8," +
+                            "`site_no` SMALLINT UNSIGNED NOT NULL DEFAULT 1," +
+                            "`no_of_rows` SMALLINT UNSIGNED NOT NULL DEFAULT 6," +
+                            "`no_of_cols` SMALLINT UNSIGNED NOT NULL DEFAULT 8," +
+                            "`layout` TEXT NULL," +
+                            "`venue_modified` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3)," +
                             "CHECK(`no_of_rows` > 0)," +
                             "CHECK(`no_of_cols` > 0)," +
                             "CHECK(`venue_no` > 0)," +
-                            "PRIMARY KEY(`venue_no`));"
+                            "CHECK(`site_no` > 0)," +
+                            "PRIMARY KEY(`venue_no`)," +
+                            "INDEX(`site_no`));"
             ));
         }
         check3.close();
 
+        // Venues created before sites were introduced all belong to the first site.
+        ResultSet check3a = meta.getColumns(database, null, "Venue", "site_no");
+        if (!check3a.next()) {
+            System.out.println(">>> Adding `site_no` to `Venue` table...");
+            oneLineExecute(connection.prepareStatement(
+                    "ALTER TABLE Venue ADD COLUMN `site_no` SMALLINT UNSIGNED NOT NULL DEFAULT 1 AFTER `venue_no`, ADD INDEX(`site_no`);"
+            ));
+        }
+        check3a.close();
+
+        // Venues created before layouts were introduced are plain rectangles of at most 255 rows and columns.
+        ResultSet check3b = meta.getColumns(database, null, "Venue", "layout");
+        if (!check3b.next()) {
+            System.out.println(">>> Adding `layout` to `Venue` table...");
+            oneLineExecute(connection.prepareStatement(
+                    "ALTER TABLE Venue MODIFY `no_of_rows` SMALLINT UNSIGNED NOT NULL DEFAULT 6, MODIFY `no_of_cols` SMALLINT UNSIGNED NOT NULL DEFAULT 8, " +
+                            "ADD COLUMN `layout` TEXT NULL AFTER `no_of_cols`;"
+            ));
+        }
+        check3b.close();
+        addModificationTime(meta, "Venue", "venue_modified");
+
         // Check if the `Screening` table exists, and then create it if not.
         ResultSet check4 = meta.getTables(database, null, "Screening", null);
         if (!check4.next()) {
@@ -248,6 +323,7 @@ public class Database {
                             "`movie_name` CHAR(60) NOT NULL," +
                             "`screening_id` INT UNSIGNED NOT NULL UNIQUE AUTO_INCREMENT," +
                             "`venue_no` SMALLINT UNSIGNED NOT NULL," +
+                            "`screening_modified` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3)," +
                             "CHECK(`start_date` < `end_date`)," +
                             "PRIMARY KEY(`start_date`, `end_date`, `movie_name`)," +
                             "FOREIGN KEY (`movie_name`) REFERENCES Movie (`name`)," +
@@ -255,6 +331,7 @@ public class Database {
             ));
         }
         check4.close();
+        addModificationTime(meta, "Screening", "screening_modified");
 
         // Check if the `Screening_Times` table exists, and then create it if not.
         ResultSet check5 = meta.getTables(database, null, "Screening_Times", null);
@@ -265,11 +342,13 @@ public class Database {
                             "`screening_id` INT UNSIGNED NOT NULL," +
                             "`screening_time` CHAR(5) NOT NULL," +
                             "`screening_day` CHAR(9) NOT NULL," +
+                            "`time_added` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3)," +
                             "PRIMARY KEY(`screening_id`, `screening_time`, `screening_day`)," +
                             "FOREIGN KEY (`screening_id`) REFERENCES Screening(`screening_id`));"
             ));
         }
         check5.close();
+        addModificationTime(meta, "Screening_Times", "time_added");
 
         // Check if the `Ticket` table exists, and then create it if not.
         ResultSet check6 = meta.getTables(database, null, "Ticket", null);
@@ -279,7 +358,7 @@ public class Database {
                     "CREATE TABLE Ticket (" +
                             "`screening_id` INT UNSIGNED NOT NULL," +
                             "`selected_date` TIMESTAMP NOT NULL," +
-                            "`allocated_seat` CHAR(3) NOT NULL," +
+                            "`allocated_seat` CHAR(8) NOT NULL," +
                             "`username` CHAR(16) NOT NULL," +
                             "PRIMARY KEY(`screening_id`, `selected_date`, `allocated_seat`)," +
                             "FOREIGN KEY (`screening_id`) REFERENCES Screening(`screening_id`));"
@@ -287,6 +366,14 @@ public class Database {
         }
         check6.close();
 
+        // Seats used to be at most 3 characters long, e.g. Z99. Rows beyond Z and seats beyond 99 need more.
+        ResultSet check6a = meta.getColumns(database, null, "Ticket", "allocated_seat");
+        if (check6a.next() && check6a.getInt("COLUMN_SIZE") < 8) {
+            System.out.println(">>> Widening `allocated_seat` of `Ticket` table...");
+            oneLineExecute(connection.prepareStatement("ALTER TABLE Ticket MODIFY `allocated_seat` CHAR(8) NOT NULL;"));
+        }
+        check6a.close();
+
         // Also pre-fill tables with test data if schema was just created.
         if (!schemaExists) {
             System.out.println(">>> Pre-filling tables with test data...");
@@ -294,6 +381,23 @@ public class Database {
         }
     }
 
+    /**
+     * Adds a modification time column to a table that was created before catalog changes were picked up at runtime.
+     * Existing rows are given the current time.
+     *
+     * @param meta   Metadata of the database.
+     * @param table  The table.
+     * @param column Name of the column.
+     */
+    private void addModificationTime(DatabaseMetaData meta, String table, String column) throws SQLException {
+        ResultSet check = meta.getColumns(database, null, table, column);
+        if (!check.next()) {
+            System.out.println(String.format(">>> Adding `%s` to `%s` table...", column, table));
+            oneLineExecute(connection.prepareStatement(String.format("ALTER TABLE `%s` ADD COLUMN `%s` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3);", table, column)));
+        }
+        check.close();
+    }
+
     /**
      * @return True, if the database exists already.
      */
@@ -308,15 +412,137 @@ public class Database {
         return false;
     }
 
+    /**
+     * Stores all tickets of a venue on a ticket shard instead of the main database.
+     * Venues that share the same location also share the same shard connection.
+     *
+     * @param venue  The venue number.
+     * @param target Location of the shard, in the form of "hostname:port/schema".
+     * @throws IllegalStateException If the shard location is malformed or cannot be reached.
+     */
+    public void addShard(int venue, String target) throws SQLException {
+        TicketShard shard = shardsByTarget.get(target);
+        if (shard == null) {
+            shard = new TicketShard(user, pass, target);
+            shard.createTable();
+            shardsByTarget.put(target, shard);
+        }
+        shardsByVenue.put(venue, shard);
+    }
+
+    /**
+     * Routes a venue to the transaction connection of the location that holds its tickets.
+     *
+     * @param venue The venue number.
+     * @return The transaction connection of the venue's ticket shard, otherwise of the main database.
+     */
+    private TransactionConnection ticketTransactions(int venue) {
+        TicketShard shard = shardsByVenue.get(venue);
+        return shard != null ? shard.transactions() : transactions;
+    }
+
+    /**
+     * Receives the attributes of a single row of a ticket query.
+     */
+    private interface TicketRow {
+        void accept(Screening screening, Timestamp selectedDate, String allocatedSeat, String username);
+    }
+
+    /**
+     * Runs a ticket query and passes on the attributes of each row.
+     * Rows belonging to screenings that have not been loaded (i.e. other sites, or out of their date range) are ignored.
+     *
+     * @param target    The connection to run the query on.
+     * @param consumer  Receives the attributes of each row.
+     * @param query     The SQL query, which must select every column of the `Ticket` table.
+     * @param escapable The wildcards to escape.
+     * @throws SQLException If the query fails. Tickets that were read before then have already been passed on.
+     */
+    private void queryTickets(Connection target, TicketRow consumer, String query, Object... escapable) throws SQLException {
+        try (PreparedStatement prep = target.prepareStatement(query)) {
+            for (int i = 0; i < escapable.length; i++)
+                prep.setObject(i + 1, escapable[i]);
+            ResultSet result = prep.executeQuery();
+            while (result.next()) {
+                // Retrieve all of the attributes for each row.
+                Screening screening = controller.findScreeningByID(result.getInt("screening_id"));
+                if (screening == null) continue;
+                Timestamp selectedDate = result.getTimestamp("selected_date");
+                String allocatedSeat = result.getString("allocated_seat");
+                String username = result.getString("username");
+                consumer.accept(screening, selectedDate, allocatedSeat, username);
+            }
+            result.close();
+        }
+    }
+
+    /**
+     * @return A SQL predicate that restricts rows joined with `Venue` to this kiosk's site, if any.
+     */
+    private String sitePredicate() {
+        return site == 0 ? "1" : String.format("`site_no`=%d", site);
+    }
+
+    /**
+     * @return A SQL predicate, starting with AND, that leaves out tickets of venues that are routed to a shard.
+     * Such tickets may be left over in the main database, e.g. from before the venue was moved.
+     */
+    private String unshardedPredicate() {
+        if (shardsByVenue.isEmpty()) return "";
+        return shardsByVenue.keySet().stream().map(String::valueOf).collect(Collectors.joining(",", " AND `venue_no` NOT IN (", ")"));
+    }
+
+    /**
+     * @param count Number of values.
+     * @return A parenthesised list of that many wildcards, for use with IN, e.g. (?,?,?).
+     */
+    private static String wildcards(int count) {
+        return "(" + String.join(",", Collections.nCopies(count, "?")) + ")";
+    }
+
+    /**
+     * Fills in the wildcards of a prepared statement, in order.
+     *
+     * @param prep      The prepared statement.
+     * @param escapable The wildcards to escape.
+     * @return The same prepared statement.
+     */
+    private static PreparedStatement bind(PreparedStatement prep, Collection<?> escapable) throws SQLException {
+        int i = 1;
+        for (Object value : escapable)
+            prep.setObject(i++, value);
+        return prep;
+    }
+
     /**
      * Loads existing movies from the database into the program.
+     * Only movies that are screened at this kiosk's site are loaded.
      *
      * @param movies Provided list that the loaded movies will be added in to.
      */
-    public void loadMovies(HashMap<String, Movie> movies) throws SQLException {
+    public void loadMovies(Map<String, Movie> movies) throws SQLException {
         // This SQL query selects all movies and their genres, which is in a separate table.
-        ResultSet result = prepare("SELECT * FROM `Movie` NATURAL JOIN `Genre` WHERE 1").executeQuery();
+        readMovies(prepare("SELECT * FROM `Movie` NATURAL JOIN `Genre` WHERE " + (site == 0 ? "1" :
+                "`name` IN (SELECT `movie_name` FROM `Screening` NATURAL JOIN `Venue` WHERE " + sitePredicate() + ")")), movies);
+        System.out.println(String.format(">>> Loaded %s movies!", movies.size()));
+    }
+
+    /**
+     * Loads particular movies from the database, e.g. ones that have changed since they were loaded.
+     *
+     * @param movies Provided map that the loaded movies will be added in to.
+     * @param names  Titles of the movies to load. Movies that no longer exist are left out.
+     */
+    public void loadMovies(Map<String, Movie> movies, Collection<String> names) throws SQLException {
+        if (names.isEmpty()) return;
+        readMovies(bind(prepare("SELECT * FROM `Movie` NATURAL JOIN `Genre` WHERE `name` IN " + wildcards(names.size())), names), movies);
+    }
 
+    /**
+     * Runs a movie query and re-constructs the model of each row.
+     */
+    private void readMovies(PreparedStatement prep, Map<String, Movie> movies) throws SQLException {
+        ResultSet result = prep.executeQuery();
         while (result.next()) {
             // Retrieve all of the attributes and re-construct the model for each row.
             String name = result.getString("name");
@@ -328,55 +554,126 @@ public class Database {
             Movie movie = new Movie(name, genre, runningTime, releaseYear);
             movies.put(name, movie);
         }
-        System.out.println(String.format(">>> Loaded %s movies!", movies.size()));
         result.close();
+        prep.close();
     }
 
     /**
-     * Loads existing venues from the database into the program.
+     * Loads existing venues of this kiosk's site from the database into the program.
      *
      * @param venues Provided map that the loaded venues will be added in to.
      */
-    public void loadVenues(HashMap<Integer, Venue> venues) throws SQLException {
-        ResultSet result = prepare("SELECT * FROM `Venue` WHERE 1").executeQuery();
+    public void loadVenues(Map<Integer, Venue> venues) throws SQLException {
+        readVenues(prepare("SELECT * FROM `Venue` WHERE " + sitePredicate()), venues);
+        System.out.println(String.format(">>> Loaded %s venues!", venues.size()));
+    }
+
+    /**
+     * Loads particular venues of this kiosk's site from the database, e.g. ones that have changed since they were loaded.
+     *
+     * @param venues    Provided map that the loaded venues will be added in to.
+     * @param venueNums Numbers of the venues to load. Venues that no longer exist, or have moved to another site, are left out.
+     */
+    public void loadVenues(Map<Integer, Venue> venues, Collection<Integer> venueNums) throws SQLException {
+        if (venueNums.isEmpty()) return;
+        readVenues(bind(prepare("SELECT * FROM `Venue` WHERE " + sitePredicate() + " AND `venue_no` IN " + wildcards(venueNums.size())), venueNums), venues);
+    }
 
+    /**
+     * Runs a venue query and re-constructs the model of each row.
+     */
+    private void readVenues(PreparedStatement prep, Map<Integer, Venue> venues) throws SQLException {
+        ResultSet result = prep.executeQuery();
         while (result.next()) {
             // Retrieve all of the attributes and re-construct the model for each row.
             int venueNum = result.getInt("venue_no");
+            int siteNum = result.getInt("site_no");
             int noOfRows = result.getInt("no_of_rows");
             int noOfCols = result.getInt("no_of_cols");
+            String encoded = result.getString("layout");
+
+            // Venues without a layout are a plain rectangle of seats.
+            VenueLayout layout = null;
+            if (encoded != null)
+                try {
+                    layout = VenueLayout.parse(encoded);
+                } catch (IllegalArgumentException ex) {
+                    System.out.println(String.format(">>> Venue %d has an invalid layout (%s), using %dx%d seats instead", venueNum, ex.getMessage(), noOfRows, noOfCols));
+                }
+            if (layout == null)
+                try {
+                    layout = VenueLayout.rectangle(noOfRows, noOfCols);
+                } catch (IllegalArgumentException ex) {
+                    // e.g. too many seats to number; its screenings are skipped too, as they refer to a venue that is not loaded.
+                    System.out.println(String.format(">>> Venue %d cannot be loaded (%s), skipping", venueNum, ex.getMessage()));
+                    continue;
+                }
 
             // Add it to the list of loaded venues.
-            Venue venue = new Venue(venueNum, noOfRows, noOfCols);
+            Venue venue = new Venue(venueNum, siteNum, layout);
             venues.put(venueNum, venue);
         }
-        System.out.println(String.format(">>> Loaded %s venues!", venues.size()));
         result.close();
+        prep.close();
     }
 
     /**
-     * Loads valid screenings that are in their active date range from the database into the program.
+     * Loads valid screenings of this kiosk's site that are in their active date range from the database into the program.
      * This also includes the screening times that are closely related to the screenings.
      *
      * @param screenings    Provided map that the loaded screenings will be added in to.
      * @param currentGenres Provided map that tracks what genres exist in the current set of screenings.
      */
-    public void loadScreenings(HashMap<Integer, Screening> screenings, HashMap<String, Integer> currentGenres) throws SQLException {
+    public void loadScreenings(Map<Integer, Screening> screenings, Map<String, Integer> currentGenres) throws SQLException {
         // This SQL query selects all screenings and their screening times, which are in a separate table.
         // Do not load in screenings that a. are not in their date range yet or b. have left their date range.
-        ResultSet result = prepare("SELECT * FROM `Screening` NATURAL JOIN `Screening_Times` WHERE `start_date` < CURRENT_TIMESTAMP AND `end_date` > CURRENT_TIMESTAMP ORDER BY `screening_id`").executeQuery();
+        // Only screenings held at this kiosk's site are loaded, so the in-memory catalog does not grow with the chain.
+        readScreenings(prepare("SELECT * FROM `Screening` NATURAL JOIN `Screening_Times` NATURAL JOIN `Venue` WHERE `start_date` < CURRENT_TIMESTAMP AND `end_date` > CURRENT_TIMESTAMP AND " + sitePredicate() + " ORDER BY `screening_id`"),
+                screenings, controller::findMovieByTitle, controller::findVenueByID);
+        System.out.println(String.format(">>> Loaded %s screenings!", screenings.size()));
+
+        // Check to see if each genre has been seen yet; add it if it hasn't.
+        for (Screening screening : screenings.values()) {
+            String genre = screening.getMovie().getGenre();
+            if (!currentGenres.containsKey(genre))
+                currentGenres.put(genre, currentGenres.size());
+        }
+
+        if (screenings.size() == 0) {
+            JOptionPane.showMessageDialog(null, "Whoa, slow down there! You can't use this program yet.\n" +
+                            "Please add some screenings and screening times first.\nThis program will shut down after you close this dialog.",
+                    "Insufficient Data!", JOptionPane.WARNING_MESSAGE);
+            System.exit(0);
+        }
+    }
+
+    /**
+     * Loads particular screenings of this kiosk's site that are in their active date range, e.g. ones that have changed
+     * since they were loaded, or have just become active.
+     *
+     * @param screenings Provided map that the loaded screenings will be added in to.
+     * @param IDs        IDs of the screenings to load. Screenings that no longer exist, or are not active, are left out.
+     * @param movies     Looks up the movies of the screenings.
+     * @param venues     Looks up the venues of the screenings.
+     */
+    public void loadScreenings(Map<Integer, Screening> screenings, Collection<Integer> IDs, Function<String, Movie> movies, IntFunction<Venue> venues) throws SQLException {
+        if (IDs.isEmpty()) return;
+        readScreenings(bind(prepare("SELECT * FROM `Screening` NATURAL JOIN `Screening_Times` NATURAL JOIN `Venue` WHERE `start_date` < CURRENT_TIMESTAMP AND `end_date` > CURRENT_TIMESTAMP AND " + sitePredicate() +
+                " AND `screening_id` IN " + wildcards(IDs.size()) + " ORDER BY `screening_id`"), IDs), screenings, movies, venues);
+    }
+
+    /**
+     * Runs a screening query, which must be ordered by screening ID, and re-constructs the model of each screening from its rows.
+     */
+    private void readScreenings(PreparedStatement prep, Map<Integer, Screening> screenings, Function<String, Movie> movies, IntFunction<Venue> venues) throws SQLException {
+        ResultSet result = prep.executeQuery();
 
         // Due to the natural join, rows will be duplicated so simply grab every unique instance of a screening.
         while (result.next()) {
             Timestamp startDate = result.getTimestamp("start_date");
             Timestamp endDate = result.getTimestamp("end_date");
-            Movie movie = controller.findMovieByTitle(result.getString("movie_name"));
-            Venue venue = controller.findVenueByID(result.getInt("venue_no"));
-
-            // Check to see if this genre has been seen yet; add it if it hasn't.
-            String genre = movie.getGenre();
-            if (!currentGenres.containsKey(genre))
-                currentGenres.put(genre, currentGenres.size());
+            Movie movie = movies.apply(result.getString("movie_name"));
+            Venue venue = venues.apply(result.getInt("venue_no"));
 
             List<ScreeningTime> times = new ArrayList<>();
             // Continually loop until we have found all screening times for this screening, or if we reach the end.
@@ -394,53 +691,212 @@ public class Database {
             // Revert look-ahead mentioned above.
             result.previous();
 
+            // A screening may refer to a movie that was added after the movies were loaded.
+            if (movie == null || venue == null) {
+                System.out.println(String.format(">>> Screening #%d refers to a movie or venue that is not loaded, skipping", realID));
+                continue;
+            }
+
             // Add this to the list of loaded screenings.
             Screening screening = new Screening(movie, venue, startDate, endDate, realID, times);
             screenings.put(realID, screening);
         }
-        System.out.println(String.format(">>> Loaded %s screenings!", screenings.size()));
         result.close();
+        prep.close();
+    }
 
-        if (screenings.size() == 0) {
-            JOptionPane.showMessageDialog(null, "Whoa, slow down there! You can't use this program yet.\n" +
-                            "Please add some screenings and screening times first.\nThis program will shut down after you close this dialog.",
-                    "Insufficient Data!", JOptionPane.WARNING_MESSAGE);
-            System.exit(0);
-        }
+    /**
+     * Reads the current version of every movie, venue, and active screening of this kiosk's site, without loading them.
+     * A version changes whenever its row is modified; a screening's version also changes when its screening times do.
+     *
+     * @param movies     Provided map that movie titles, mapped to their versions, will be added in to.
+     * @param venues     Provided map that venue numbers, mapped to their versions, will be added in to.
+     * @param screenings Provided map that screening IDs, mapped to their versions, will be added in to.
+     */
+    public void loadCatalogVersions(Map<String, Long> movies, Map<Integer, Long> venues, Map<Integer, Long> screenings) throws SQLException {
+        PreparedStatement prep = prepare("SELECT `name`, `movie_modified` FROM `Movie` WHERE " + (site == 0 ? "1" :
+                "`name` IN (SELECT `movie_name` FROM `Screening` NATURAL JOIN `Venue` WHERE " + sitePredicate() + ")"));
+        ResultSet result = prep.executeQuery();
+        while (result.next())
+            movies.put(result.getString("name"), result.getTimestamp("movie_modified").getTime());
+        result.close();
+        prep.close();
+
+        prep = prepare("SELECT `venue_no`, `venue_modified` FROM `Venue` WHERE " + sitePredicate());
+        result = prep.executeQuery();
+        while (result.next())
+            venues.put(result.getInt("venue_no"), result.getTimestamp("venue_modified").getTime());
+        result.close();
+        prep.close();
+
+        // Removing a screening time does not modify any remaining row, but it does change how many there are.
+        prep = prepare("SELECT `screening_id`, `screening_modified`, COUNT(*) AS `times`, MAX(`time_added`) AS `times_added` " +
+                "FROM `Screening` NATURAL JOIN `Screening_Times` NATURAL JOIN `Venue` WHERE `start_date` < CURRENT_TIMESTAMP AND `end_date` > CURRENT_TIMESTAMP AND " + sitePredicate() +
+                " GROUP BY `screening_id`, `screening_modified`");
+        result = prep.executeQuery();
+        while (result.next())
+            screenings.put(result.getInt("screening_id"), (result.getTimestamp("screening_modified").getTime() * 31 + result.getInt("times")) * 31
+                    + result.getTimestamp("times_added").getTime());
+        result.close();
+        prep.close();
     }
 
     /**
-     * Loads in-date, booked tickets from the database into the program.
+     * @return When the next screening of this kiosk's site becomes active, or null if none are scheduled to.
+     */
+    public Timestamp findNextScreeningStart() throws SQLException {
+        PreparedStatement prep = prepare("SELECT MIN(`start_date`) AS `next_start` FROM `Screening` NATURAL JOIN `Venue` WHERE `start_date` >= CURRENT_TIMESTAMP AND " + sitePredicate());
+        ResultSet result = prep.executeQuery();
+        Timestamp next = result.next() ? result.getTimestamp("next_start") : null;
+        result.close();
+        prep.close();
+        return next;
+    }
+
+    /**
+     * Loads in-date, booked tickets of this kiosk's site from the database into the program.
+     * If the main database or any shard cannot be read, loading fails as a whole: otherwise the seats of every ticket
+     * that was not read would be shown as free, and could be booked twice.
      *
-     * @param tickets Provided list that the loaded tickets will be added in to.
+     * @param tickets Provided store that the loaded tickets will be added in to.
+     * @throws SQLException If the tickets of the main database or of a shard could not be read.
      */
-    public void loadTickets(List<Ticket> tickets) throws SQLException {
+    public void loadTickets(TicketStore tickets) throws SQLException {
+        // Rows go straight into the ticket store's columns, without creating a model for each one.
+        TicketRow store = (screening, selectedDate, allocatedSeat, username) -> {
+            int seatID = screening.getVenue().getSeatID(allocatedSeat);
+            if (seatID == -1)
+                // The venue's layout may have changed since the ticket was booked.
+                System.out.println(String.format(">>> Ticket for seat %s of screening %d is not in its venue's layout, skipping", allocatedSeat, screening.getID()));
+            else tickets.add(screening.getID(), TicketStore.toMinute(selectedDate), seatID, username);
+        };
+
         // Don't load in this data if the selected date has passed;it is no longer valid. It can stay in the table however!
-        ResultSet result = prepare("SELECT * FROM `Ticket` WHERE `selected_date` > CURRENT_TIMESTAMP").executeQuery();
+        // The main database and every shard are queried at the same time. Rows are only loaded from where their venue is
+        // routed, as that is where they are saved and deleted; rows left over from a move stay where they are.
+        validate();
+        List<CompletableFuture<Void>> queries = new ArrayList<>();
+        queries.add(queryTicketsAsync("the main database", () -> connection, routedTo(null, store),
+                "SELECT `Ticket`.* FROM `Ticket` NATURAL JOIN `Screening` NATURAL JOIN `Venue` WHERE `selected_date` > CURRENT_TIMESTAMP AND " + sitePredicate() + unshardedPredicate()));
 
-        while (result.next()) {
-            // Retrieve all of the attributes and re-construct the model for each row.
-            Screening screening = controller.findScreeningByID(result.getInt("screening_id"));
-            Timestamp selectedDate = result.getTimestamp("selected_date"); // Load as string then convert using valueOf to stop time zone anomalies.
-            String allocatedSeat = result.getString("allocated_seat");
-            String username = result.getString("username");
+        // Shards do not hold screenings, so tickets of other sites are filtered out as they are read.
+        for (TicketShard shard : shardsByTarget.values())
+            queries.add(queryTicketsAsync(String.format("ticket shard '%s'", shard.getTarget()), shard::connection, routedTo(shard, store),
+                    "SELECT * FROM `Ticket` WHERE `selected_date` > CURRENT_TIMESTAMP"));
 
-            // Add it to the list of valid tickets.
-            Ticket ticket = new Ticket(screening, selectedDate, allocatedSeat, username);
-            tickets.add(ticket);
-        }
+        // Wait for every query, then report the first failure, with any others attached to it.
+        SQLException failure = null;
+        for (CompletableFuture<Void> query : queries)
+            try {
+                query.join();
+            } catch (CompletionException ex) {
+                SQLException cause = ex.getCause() instanceof SQLException ? (SQLException) ex.getCause() : new SQLException(ex.getCause().getMessage(), ex.getCause());
+                if (failure == null) failure = cause;
+                else failure.addSuppressed(cause);
+            }
+        if (failure != null) throw failure;
         System.out.println(String.format(">>> Found %s tickets!", tickets.size()));
-        result.close();
     }
 
     /**
-     * Saves a recently-created ticket into the database so that it persists indefinitely.
+     * Runs a ticket query on the shard query pool.
      *
-     * @param toSave The ticket to save.
+     * @param location Describes where the tickets are read from, for error messages.
+     * @param target   Supplies the connection to run the query on; connecting to a shard may fail too.
+     * @param consumer Receives the attributes of each row.
+     * @param query    The SQL query, which must select every column of the `Ticket` table.
+     * @return Completes once every row has been passed on, or exceptionally with a {@link SQLException} naming the location.
+     */
+    private CompletableFuture<Void> queryTicketsAsync(String location, Supplier<Connection> target, TicketRow consumer, String query) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                queryTickets(target.get(), consumer, query);
+            } catch (SQLException | IllegalStateException ex) {
+                throw new CompletionException(new SQLException(String.format("Unable to load tickets from %s: %s", location, ex.getMessage()), ex));
+            }
+        }, shardPool);
+    }
+
+    /**
+     * @param shard    The shard that rows are read from, or null for the main database.
+     * @param consumer Receives the attributes of each row.
+     * @return The same consumer, but only passed rows of venues whose tickets are routed to the shard.
      */
-    public void saveTicket(Ticket toSave) {
-        oneLinePrepare("INSERT INTO `Ticket` (`screening_id`, `selected_date`, `allocated_seat`, `username`) VALUES (?,?,?,?);",
-                toSave.getScreening().getID(), toSave.getSelectedDate(), toSave.getAllocatedSeat(), toSave.getUsername());
+    private TicketRow routedTo(TicketShard shard, TicketRow consumer) {
+        return (screening, selectedDate, allocatedSeat, username) -> {
+            if (shardsByVenue.get(screening.getVenue().getVenueNum()) == shard)
+                consumer.accept(screening, selectedDate, allocatedSeat, username);
+        };
+    }
+
+    /**
+     * Counts in-date, booked tickets across every site in the chain, regardless of this kiosk's own site.
+     * This is used for chain-level reporting, and it is answered by the database rather than the in-memory catalog.
+     * Shards only hold tickets, so their tickets are counted by screening, and mapped to sites through the main database.
+     *
+     * @return Site numbers, mapped to the number of tickets booked at that site.
+     */
+    public HashMap<Integer, Integer> countTicketsBySite() {
+        HashMap<Integer, Integer> result = new HashMap<>();
+        try (PreparedStatement prep = prepare("SELECT `site_no`, COUNT(*) AS `booked` FROM `Ticket` NATURAL JOIN `Screening` NATURAL JOIN `Venue` " +
+                "WHERE `selected_date` > CURRENT_TIMESTAMP" + unshardedPredicate() + " GROUP BY `site_no`"); ResultSet rows = prep.executeQuery()) {
+            while (rows.next())
+                result.put(rows.getInt("site_no"), rows.getInt("booked"));
+            if (shardsByTarget.isEmpty()) return result;
+
+            // Screening IDs, mapped to their venue and site.
+            HashMap<Integer, int[]> locations = new HashMap<>();
+            try (PreparedStatement locate = prepare("SELECT `screening_id`, `venue_no`, `site_no` FROM `Screening` NATURAL JOIN `Venue`");
+                 ResultSet located = locate.executeQuery()) {
+                while (located.next())
+                    locations.put(located.getInt("screening_id"), new int[]{located.getInt("venue_no"), located.getInt("site_no")});
+            }
+            for (TicketShard shard : shardsByTarget.values())
+                try (PreparedStatement count = shard.connection().prepareStatement("SELECT `screening_id`, COUNT(*) AS `booked` FROM `Ticket` " +
+                        "WHERE `selected_date` > CURRENT_TIMESTAMP GROUP BY `screening_id`"); ResultSet counted = count.executeQuery()) {
+                    while (counted.next()) {
+                        // Rows of venues that are not routed to this shard are left over from a move, and are counted where they live now.
+                        int[] location = locations.get(counted.getInt("screening_id"));
+                        if (location != null && shardsByVenue.get(location[0]) == shard)
+                            result.merge(location[1], counted.getInt("booked"), Integer::sum);
+                    }
+                }
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            // Nothing bad should happen in normal operation, so just print the stack trace.
+        }
+        return result;
+    }
+
+    /**
+     * Saves recently-created tickets into the database so that they persist indefinitely. The tickets of each shard are
+     * inserted as one batch, in one transaction on the shard's transaction connection, so a booking is never left
+     * half-saved in a shard. A booking is for a single time slot, so its tickets are always in the same shard.
+     *
+     * @param toSave The tickets to save.
+     * @throws SQLException If the tickets could not be saved; the shard's transaction has then been rolled back.
+     */
+    @Override
+    public void saveTickets(List<Ticket> toSave) throws SQLException {
+        // Group the tickets by where they are stored; IdentityHashMap as shards may share the main database.
+        IdentityHashMap<TransactionConnection, List<Ticket>> byLocation = new IdentityHashMap<>();
+        for (Ticket ticket : toSave)
+            byLocation.computeIfAbsent(ticketTransactions(ticket.getScreening().getVenue().getVenueNum()), key -> new ArrayList<>()).add(ticket);
+
+        for (Map.Entry<TransactionConnection, List<Ticket>> entry : byLocation.entrySet())
+            entry.getKey().run(target -> {
+                try (PreparedStatement insert = target.prepareStatement(
+                        "INSERT INTO `Ticket` (`screening_id`, `selected_date`, `allocated_seat`, `username`) VALUES (?,?,?,?)")) {
+                    for (Ticket ticket : entry.getValue()) {
+                        insert.setInt(1, ticket.getScreening().getID());
+                        insert.setTimestamp(2, ticket.getSelectedDate());
+                        insert.setString(3, ticket.getAllocatedSeat());
+                        insert.setString(4, ticket.getUsername());
+                        insert.addBatch();
+                    }
+                    return insert.executeBatch();
+                }
+            });
     }
 
     /**
@@ -456,12 +912,189 @@ public class Database {
     }
 
     /**
-     * Deletes a singular existing data from the database with full precision.
+     * Deletes several tickets at once, e.g. a whole booking. The tickets of each shard are deleted in one transaction on
+     * the shard's transaction connection, by a single statement that lists every ticket's key, so it takes one round trip.
+     * Very large deletions are split into several statements, which are deleted all or nothing along with the rest.
+     * <p>
+     * The shards are deleted from one after the other, so if a shard fails, the shards before it have already committed.
+     *
+     * @param tickets The tickets to delete.
+     * @throws SQLException If the tickets could not be deleted; the failing shard's transaction has then been rolled back.
+     *                      If other shards had already committed, this is a {@link PartialDeleteException} that lists
+     *                      the tickets that were deleted from them.
+     */
+    @Override
+    public void deleteTickets(List<Ticket> tickets) throws SQLException {
+        // Group the tickets by where they are stored; IdentityHashMap as shards may share the main database.
+        IdentityHashMap<TransactionConnection, List<Ticket>> byLocation = new IdentityHashMap<>();
+        for (Ticket ticket : tickets)
+            byLocation.computeIfAbsent(ticketTransactions(ticket.getScreening().getVenue().getVenueNum()), key -> new ArrayList<>()).add(ticket);
+
+        List<Ticket> deleted = new ArrayList<>(tickets.size());
+        for (Map.Entry<TransactionConnection, List<Ticket>> entry : byLocation.entrySet()) {
+            List<TicketKey> keys = new ArrayList<>(entry.getValue().size());
+            for (Ticket ticket : entry.getValue())
+                keys.add(new TicketKey(ticket.getScreening().getID(), ticket.getSelectedDate(), ticket.getAllocatedSeat()));
+            try {
+                entry.getKey().run(target -> deleteKeys(target, keys));
+            } catch (SQLException ex) {
+                if (deleted.isEmpty()) throw ex;
+                throw new PartialDeleteException(ex, deleted);
+            }
+            deleted.addAll(entry.getValue());
+        }
+    }
+
+    /**
+     * Moves every ticket (including past ones) of a venue from its current shard to another one, while kiosks may be running.
+     * The venue's tickets are locked at the source for the whole move, so they cannot be cancelled part way through.
+     * They are copied to the destination in one transaction, and then exactly the copied rows are removed from the source.
+     * Tickets that are booked at the source during the move are not touched, and can be moved by running it again.
+     * <p>
+     * Copying ignores rows that already exist at the destination. A row that is identical is left over from an
+     * interrupted move, so an interrupted move can safely be run again; a row that differs is a clashing booking,
+     * in which case the ticket is left at the source and reported.
+     * <p>
+     * Kiosks must have their 'ticket_shard_' settings updated afterwards, otherwise they will keep using the old shard.
      *
-     * @param ticket The data to delete.
+     * @param venue  The venue whose tickets should be moved.
+     * @param target Location of the destination shard ("hostname:port/schema"), or "main" for the main database.
+     * @return The number of tickets that were moved.
      */
-    public void deleteTicket(Ticket ticket) {
-        oneLinePrepare("DELETE FROM `Ticket` WHERE `screening_id`=? AND `selected_date`=? AND `allocated_seat`=?",
-                ticket.getScreening().getID(), ticket.getSelectedDate(), ticket.getAllocatedSeat());
+    public int rebalanceVenue(int venue, String target) throws SQLException {
+        TicketShard from = shardsByVenue.get(venue), to = null;
+        if (!target.equals("main")) {
+            to = shardsByTarget.get(target);
+            if (to == null) {
+                to = new TicketShard(user, pass, target);
+                to.createTable();
+                shardsByTarget.put(target, to);
+            }
+        }
+        if (from == to) return 0;
+        TransactionConnection source = from != null ? from.transactions() : transactions;
+        TransactionConnection destination = to != null ? to.transactions() : transactions;
+
+        // Screenings live in the main database, so find out which screening IDs are held at the venue first.
+        List<Integer> screeningIDs = new ArrayList<>();
+        PreparedStatement screeningQuery = prepare("SELECT `screening_id` FROM `Screening` WHERE `venue_no`=?");
+        screeningQuery.setInt(1, venue);
+        ResultSet screeningRows = screeningQuery.executeQuery();
+        while (screeningRows.next())
+            screeningIDs.add(screeningRows.getInt("screening_id"));
+        screeningRows.close();
+        screeningQuery.close();
+        if (screeningIDs.isEmpty()) return 0;
+        String inList = screeningIDs.stream().map(String::valueOf).collect(Collectors.joining(",", "(", ")"));
+
+        return source.run(sourceConnection -> {
+            // Read and lock the venue's tickets at the source until the move is over.
+            List<TicketKey> keys = new ArrayList<>();
+            List<String> usernames = new ArrayList<>();
+            try (PreparedStatement select = sourceConnection.prepareStatement("SELECT * FROM `Ticket` WHERE `screening_id` IN " + inList + " FOR UPDATE");
+                 ResultSet rows = select.executeQuery()) {
+                while (rows.next()) {
+                    keys.add(new TicketKey(rows.getInt("screening_id"), rows.getTimestamp("selected_date"), rows.getString("allocated_seat")));
+                    usernames.add(rows.getString("username"));
+                }
+            }
+            if (keys.isEmpty()) return 0;
+
+            // Copy them to the destination, and find out which of them are there now.
+            List<TicketKey> copied = destination.run(destinationConnection -> {
+                int[] inserted;
+                try (PreparedStatement insert = destinationConnection.prepareStatement(
+                        "INSERT IGNORE INTO `Ticket` (`screening_id`, `selected_date`, `allocated_seat`, `username`) VALUES (?,?,?,?)")) {
+                    for (int i = 0; i < keys.size(); i++) {
+                        keys.get(i).bind(insert, 1);
+                        insert.setString(4, usernames.get(i));
+                        insert.addBatch();
+                    }
+                    inserted = insert.executeBatch();
+                }
+                List<TicketKey> result = new ArrayList<>(keys.size());
+                try (PreparedStatement existing = destinationConnection.prepareStatement(
+                        "SELECT `username` FROM `Ticket` WHERE `screening_id`=? AND `selected_date`=? AND `allocated_seat`=?")) {
+                    for (int i = 0; i < keys.size(); i++) {
+                        if (inserted[i] > 0) {
+                            result.add(keys.get(i));
+                            continue;
+                        }
+                        // The row was ignored, or the driver did not say; it only counts as copied if the row there is the same booking.
+                        keys.get(i).bind(existing, 1);
+                        try (ResultSet row = existing.executeQuery()) {
+                            if (row.next() && row.getString("username").equals(usernames.get(i))) result.add(keys.get(i));
+                            else System.out.println(String.format(">> WARNING!! Ticket for %s clashes with a different booking at '%s', and was left where it is.", keys.get(i), target));
+                        }
+                    }
+                }
+                return result;
+            });
+            if (copied.size() != keys.size())
+                System.out.println(String.format(">> WARNING!! Only %d of %d tickets of Venue #%d were copied.", copied.size(), keys.size(), venue));
+
+            // Only once the copy has been committed, remove exactly the copied rows from the source. They are locked, so
+            // every one of them must still be there; if not, the source is left as it was, and the move can be run again.
+            int deleted = deleteKeys(sourceConnection, copied);
+            if (deleted != copied.size())
+                throw new SQLException(String.format("Expected to remove %d copied tickets from the source, but %d were removed", copied.size(), deleted));
+            return deleted;
+        });
+    }
+
+    /**
+     * Deletes tickets by their keys, with a single statement that lists every key, or several for very many keys.
+     *
+     * @param target The connection to delete the tickets on.
+     * @param keys   Keys of the tickets to delete.
+     * @return The number of tickets that were deleted.
+     */
+    private static int deleteKeys(Connection target, List<TicketKey> keys) throws SQLException {
+        int deleted = 0;
+        for (int from = 0; from < keys.size(); from += DELETE_BATCH_SIZE) {
+            List<TicketKey> chunk = keys.subList(from, Math.min(from + DELETE_BATCH_SIZE, keys.size()));
+            try (PreparedStatement delete = target.prepareStatement("DELETE FROM `Ticket` WHERE (`screening_id`, `selected_date`, `allocated_seat`) IN ("
+                    + String.join(",", Collections.nCopies(chunk.size(), "(?,?,?)")) + ")")) {
+                int i = 1;
+                for (TicketKey key : chunk)
+                    i = key.bind(delete, i);
+                deleted += delete.executeUpdate();
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * The primary key of a `Ticket` row.
+     */
+    private static final class TicketKey {
+        private final int screeningID;
+        private final Timestamp selectedDate;
+        private final String allocatedSeat;
+
+        private TicketKey(int screeningID, Timestamp selectedDate, String allocatedSeat) {
+            this.screeningID = screeningID;
+            this.selectedDate = selectedDate;
+            this.allocatedSeat = allocatedSeat;
+        }
+
+        /**
+         * Fills in three wildcards with the key, in column order.
+         *
+         * @param prep  The prepared statement.
+         * @param index The position of the first wildcard.
+         * @return The position of the next wildcard.
+         */
+        private int bind(PreparedStatement prep, int index) throws SQLException {
+            prep.setInt(index, screeningID);
+            prep.setTimestamp(index + 1, selectedDate);
+            prep.setString(index + 2, allocatedSeat);
+            return index + 3;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("seat %s of screening #%d at %s", allocatedSeat, screeningID, selectedDate);
+        }
     }
-}
\ No newline at end of file
+}
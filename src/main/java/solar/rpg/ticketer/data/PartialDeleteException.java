@@ -0,0 +1,38 @@
+package solar.rpg.ticketer.data;
+
+import solar.rpg.ticketer.models.Ticket;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown when tickets that are stored in several places (the main database and ticket shards) could only be deleted
+ * from some of them. Each place is deleted from in its own transaction, so the tickets of the places that had already
+ * committed are gone, while the rest are still booked.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see Database#deleteTickets(List)
+ * @since 0.1
+ */
+public class PartialDeleteException extends SQLException {
+
+    private final List<Ticket> deleted;
+
+    /**
+     * @param cause   Why the remaining tickets could not be deleted.
+     * @param deleted The tickets that were deleted before that happened.
+     */
+    public PartialDeleteException(SQLException cause, List<Ticket> deleted) {
+        super(String.format("%d ticket(s) were deleted, but not the rest: %s", deleted.size(), cause.getMessage()), cause.getSQLState(), cause.getErrorCode(), cause);
+        this.deleted = Collections.unmodifiableList(deleted);
+    }
+
+    /**
+     * @return The tickets that were deleted, and so are no longer booked.
+     */
+    public List<Ticket> getDeleted() {
+        return deleted;
+    }
+}
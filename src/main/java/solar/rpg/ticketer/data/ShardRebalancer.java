@@ -0,0 +1,54 @@
+package solar.rpg.ticketer.data;
+
+import java.sql.SQLException;
+
+/**
+ * A small command-line tool that moves all tickets of a venue from its current ticket shard to another one.
+ * It reads the same 'ticketer.settings' file as the program itself, so the current shard map is respected.
+ * <p>
+ * Usage: {@code java -cp MiniTicketer.jar solar.rpg.ticketer.data.ShardRebalancer <venue_no> <hostname:port/schema|main>}
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see Database#rebalanceVenue(int, String)
+ * @since 0.1
+ */
+public final class ShardRebalancer {
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Usage: ShardRebalancer <venue_no> <hostname:port/schema|main>");
+            return;
+        }
+        int venue;
+        try {
+            venue = Integer.parseInt(args[0]);
+        } catch (NumberFormatException ex) {
+            System.out.println(String.format("!! '%s' is not a valid venue number.", args[0]));
+            return;
+        }
+        String target = args[1];
+
+        try {
+            Configuration config = new Configuration("ticketer.settings", "mysql_user", "mysql_pass", "mysql_host", "mysql_port", "mysql_database");
+            Database database = new Database(null, config.getString("mysql_user"), config.getString("mysql_pass"),
+                    config.getString("mysql_host"), config.getString("mysql_port"), config.getString("mysql_database"), 0);
+            database.createTables();
+            for (String key : config.getKeysWithPrefix("ticket_shard_"))
+                database.addShard(Integer.parseInt(key.substring("ticket_shard_".length())), config.getString(key));
+
+            System.out.println(String.format("> Moving tickets of Venue #%d to '%s'...", venue, target));
+            int moved = database.rebalanceVenue(venue, target);
+            database.close();
+            System.out.println(String.format("...success! %d ticket(s) were moved.", moved));
+
+            // The shard map is not rewritten automatically, as every kiosk keeps its own copy.
+            if (target.equals("main"))
+                System.out.println(String.format("> Please remove 'ticket_shard_%d' from every kiosk's ticketer.settings file.", venue));
+            else
+                System.out.println(String.format("> Please set 'ticket_shard_%d=%s' in every kiosk's ticketer.settings file.", venue, target));
+        } catch (SQLException | IllegalArgumentException | IllegalStateException ex) {
+            System.out.println(String.format("!! Unable to move tickets: %s", ex.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package solar.rpg.ticketer.data;
+
+import java.sql.*;
+
+/**
+ * A ticket shard is a separate MySQL schema that stores the `Ticket` rows of one or more venues.
+ * Only the `Ticket` table lives on a shard; movies, venues, and screenings always stay in the main database.
+ * Shards may live on other servers, or simply be other schemas on the same server.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see Database
+ * @since 0.1
+ */
+final class TicketShard {
+
+    // Shard fields.
+    private final String user, pass, url, target;
+    private Connection connection;
+
+    // Used for transactions, so they do not interfere with statements on the shared connection above.
+    private final TransactionConnection transactions;
+
+    /**
+     * @param user   MySQL server username.
+     * @param pass   MySQL server password.
+     * @param target Location of the shard, in the form of "hostname:port/schema".
+     * @throws IllegalStateException If the location is malformed or the shard cannot be reached.
+     */
+    TicketShard(String user, String pass, String target) {
+        String[] hostAndSchema = target.split("/");
+        if (hostAndSchema.length != 2 || hostAndSchema[0].isEmpty() || hostAndSchema[1].isEmpty())
+            throw new IllegalStateException(String.format("Ticket shard '%s' must be in the form of hostname:port/schema", target));
+
+        // Create shard settings. The schema is created automatically if it does not exist yet.
+        this.user = user;
+        this.pass = pass;
+        this.target = target;
+        this.url = String.format("jdbc:mysql://%s/%s", hostAndSchema[0], hostAndSchema[1]) + "?createDatabaseIfNotExist=true&useUnicode=true&useJDBCCompliantTimezoneShift=true&useLegacyDatetimeCode=false&serverTimezone=GMT%2B11";
+
+        // Open the connection.
+        connection = open();
+        transactions = new TransactionConnection(() -> DriverManager.getConnection(url, user, pass));
+    }
+
+    /**
+     * Attempt to open a connection to the shard.
+     *
+     * @return Instance of Connection to the shard.
+     */
+    private Connection open() {
+        try {
+            return DriverManager.getConnection(url, user, pass);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            // Print the stack trace as this should never happen in normal operation.
+            throw new IllegalStateException(String.format("Unable to connect to ticket shard '%s': %s", target, e.getMessage()));
+        }
+    }
+
+    /**
+     * Checks if the shard connection is still alive, and re-opens it if it is not.
+     *
+     * @return A live connection to the shard.
+     */
+    Connection connection() {
+        try {
+            if (!connection.isValid(0))
+                connection = open();
+        } catch (SQLException e) {
+            // Impossible.
+        }
+        return connection;
+    }
+
+    /**
+     * @return The connection that transactions on this shard are run on.
+     */
+    TransactionConnection transactions() {
+        return transactions;
+    }
+
+    /**
+     * Creates the `Ticket` table on this shard if it does not exist.
+     * There is no foreign key on `screening_id`, as screenings are kept in the main database.
+     */
+    void createTable() throws SQLException {
+        ResultSet check = connection().getMetaData().getTables(connection.getCatalog(), null, "Ticket", null);
+        if (!check.next()) {
+            System.out.println(String.format(">>> Creating `Ticket` table on shard '%s'...", target));
+            PreparedStatement create = connection.prepareStatement(
+                    "CREATE TABLE Ticket (" +
+                            "`screening_id` INT UNSIGNED NOT NULL," +
+                            "`selected_date` TIMESTAMP NOT NULL," +
+                            "`allocated_seat` CHAR(8) NOT NULL," +
+                            "`username` CHAR(16) NOT NULL," +
+                            "PRIMARY KEY(`screening_id`, `selected_date`, `allocated_seat`)," +
+                            "INDEX(`username`));");
+            create.executeUpdate();
+            create.close();
+        }
+        check.close();
+
+        // Seats used to be at most 3 characters long, so widen shards that were created before then.
+        ResultSet seatCheck = connection.getMetaData().getColumns(connection.getCatalog(), null, "Ticket", "allocated_seat");
+        if (seatCheck.next() && seatCheck.getInt("COLUMN_SIZE") < 8) {
+            System.out.println(String.format(">>> Widening `allocated_seat` of `Ticket` table on shard '%s'...", target));
+            PreparedStatement widen = connection.prepareStatement("ALTER TABLE Ticket MODIFY `allocated_seat` CHAR(8) NOT NULL;");
+            widen.executeUpdate();
+            widen.close();
+        }
+        seatCheck.close();
+    }
+
+    /**
+     * @return Location of the shard, in the form of "hostname:port/schema".
+     */
+    String getTarget() {
+        return target;
+    }
+
+    /**
+     * Closes the shard connections. Does not attempt to re-open.
+     */
+    void close() {
+        transactions.close();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            // This shouldn't happen, so just print the stack trace.
+        }
+    }
+}
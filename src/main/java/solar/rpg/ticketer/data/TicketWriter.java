@@ -0,0 +1,32 @@
+package solar.rpg.ticketer.data;
+
+import solar.rpg.ticketer.models.Ticket;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Persists bookings and cancellations. The kiosk writes them to the database, but anything that stands in for it
+ * can be used instead, as long as it saves each call's tickets all or nothing, and reports which tickets were
+ * deleted if it cannot delete them all.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see Database
+ * @since 0.1
+ */
+public interface TicketWriter {
+
+    /**
+     * @param toSave Newly booked tickets.
+     * @throws SQLException If the tickets could not be saved, in which case none of them were.
+     */
+    void saveTickets(List<Ticket> toSave) throws SQLException;
+
+    /**
+     * @param toDelete Cancelled tickets.
+     * @throws SQLException If the tickets could not be deleted, in which case none of them were; or a
+     *                      {@link PartialDeleteException} that lists the tickets that were deleted, if only some were.
+     */
+    void deleteTickets(List<Ticket> toDelete) throws SQLException;
+}
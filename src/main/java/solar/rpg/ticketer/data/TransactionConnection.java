@@ -0,0 +1,98 @@
+package solar.rpg.ticketer.data;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A connection to the main database or a ticket shard that is only used for transactions, one at a time.
+ * The regular connection is shared by every thread, e.g. booking sessions and the catalog refresh thread, so
+ * turning off auto-commit on it would pull their statements into the transaction, or roll them back with it.
+ * Transactions therefore run on this separate connection instead, while holding its lock.
+ * <p>
+ * The connection is opened the first time it is needed, and re-opened if it is no longer alive.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see Database
+ * @since 0.1
+ */
+final class TransactionConnection {
+
+    /**
+     * Opens a new connection to the same location as the regular connection.
+     */
+    interface Opener {
+        Connection open() throws SQLException;
+    }
+
+    /**
+     * The statements of a transaction.
+     *
+     * @param <T> The type of the result.
+     */
+    interface Work<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    private final Opener opener;
+    private final ReentrantLock lock;
+    private Connection connection;
+
+    /**
+     * @param opener Opens the connection.
+     */
+    TransactionConnection(Opener opener) {
+        this.opener = opener;
+        this.lock = new ReentrantLock();
+    }
+
+    /**
+     * Runs statements in a transaction. It is committed if they all succeed, otherwise it is rolled back.
+     *
+     * @param work The statements to run.
+     * @param <T>  The type of the result.
+     * @return The result of the statements.
+     * @throws SQLException If a statement fails, or the transaction cannot be committed.
+     */
+    <T> T run(Work<T> work) throws SQLException {
+        lock.lock();
+        try {
+            if (connection == null || !connection.isValid(3))
+                connection = opener.open();
+            connection.setAutoCommit(false);
+            try {
+                T result = work.run(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException ex) {
+                try {
+                    connection.rollback();
+                } catch (SQLException rollback) {
+                    ex.addSuppressed(rollback);
+                }
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the connection, if it has been opened. It is opened again if another transaction is run.
+     */
+    void close() {
+        lock.lock();
+        try {
+            if (connection != null) connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            // This shouldn't happen, so just print the stack trace.
+        } finally {
+            connection = null;
+            lock.unlock();
+        }
+    }
+}
@@ -57,4 +57,9 @@ public class Movie {
         if (obj == this) return true;
         return ((Movie) obj).name.equals(this.name);
     }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
 }
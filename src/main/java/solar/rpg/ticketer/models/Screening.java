@@ -48,6 +48,13 @@ public class Screening {
         return venue;
     }
 
+    /**
+     * @return The cinema site that this screening is being held at.
+     */
+    public int getSiteNum() {
+        return venue.getSiteNum();
+    }
+
     /**
      * @return Start date of the date range of this screening.
      */
@@ -100,4 +107,9 @@ public class Screening {
         if (obj == this) return true;
         return ((Screening) obj).ID == this.ID;
     }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(ID);
+    }
 }
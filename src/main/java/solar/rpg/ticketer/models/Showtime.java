@@ -0,0 +1,37 @@
+package solar.rpg.ticketer.models;
+
+import java.sql.Timestamp;
+
+/**
+ * A particular time slot of a screening, i.e. a screening at one of its calculated booking times.
+ * Tickets are booked for a showtime.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see Screening
+ * @since 0.1
+ */
+public class Showtime {
+
+    private final Screening screening;
+    private final Timestamp date;
+
+    public Showtime(Screening screening, Timestamp date) {
+        this.screening = screening;
+        this.date = date;
+    }
+
+    /**
+     * @return The screening being shown.
+     */
+    public Screening getScreening() {
+        return screening;
+    }
+
+    /**
+     * @return The date & time that the screening is shown at.
+     */
+    public Timestamp getDate() {
+        return date;
+    }
+}
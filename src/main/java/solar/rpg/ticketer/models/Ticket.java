@@ -1,6 +1,7 @@
 package solar.rpg.ticketer.models;
 
 import java.sql.Timestamp;
+import java.util.Objects;
 
 /**
  * Represents the 'Ticket' model in the architecture.
@@ -32,6 +33,13 @@ public class Ticket {
         return screening;
     }
 
+    /**
+     * @return The cinema site that this data is booked at.
+     */
+    public int getSiteNum() {
+        return screening.getSiteNum();
+    }
+
     /**
      * @return The specific screening date that this data is booked for.
      */
@@ -46,6 +54,14 @@ public class Ticket {
         return allocatedSeat;
     }
 
+    /**
+     * @return The allocated seat as a dense identifier of the screening's venue.
+     * @see Venue#getSeatID(String)
+     */
+    public int getSeatID() {
+        return screening.getVenue().getSeatID(allocatedSeat);
+    }
+
     /**
      * @return Username of the customer who purchased this data.
      */
@@ -61,4 +77,9 @@ public class Ticket {
         Ticket ticket = (Ticket) obj;
         return ticket.screening.equals(this.screening) && ticket.selectedDate.equals(this.selectedDate) && ticket.allocatedSeat.equals(this.allocatedSeat);
     }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(screening, selectedDate, allocatedSeat);
+    }
 }
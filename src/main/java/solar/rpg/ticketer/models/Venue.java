@@ -12,12 +12,17 @@ package solar.rpg.ticketer.models;
  */
 public class Venue {
 
-    private final int venueNum, noOfRows, noOfCols;
+    private final int venueNum, siteNum;
+    private final VenueLayout layout;
 
-    public Venue(int venueNum, int noOfRows, int noOfCols) {
+    public Venue(int venueNum, int siteNum, int noOfRows, int noOfCols) {
+        this(venueNum, siteNum, VenueLayout.rectangle(noOfRows, noOfCols));
+    }
+
+    public Venue(int venueNum, int siteNum, VenueLayout layout) {
         this.venueNum = venueNum;
-        this.noOfRows = noOfRows;
-        this.noOfCols = noOfCols;
+        this.siteNum = siteNum;
+        this.layout = layout;
     }
 
     /**
@@ -28,24 +33,76 @@ public class Venue {
     }
 
     /**
-     * @return Number of seat rows, which are designated by a letter.
+     * @return Number of the cinema site (within the chain) that this venue belongs to.
+     */
+    public int getSiteNum() {
+        return siteNum;
+    }
+
+    /**
+     * @return Where this venue's seats, aisles, and sections are.
+     */
+    public VenueLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * @return Number of seat rows, which are designated by letters.
      */
     public int getNoOfRows() {
-        return noOfRows;
+        return layout.getRows();
     }
 
     /**
-     * @return Number of seat columns, which are designated by a number.
+     * @return Number of seat columns, which is the width of the widest row including any aisles.
      */
     public int getNoOfCols() {
-        return noOfCols;
+        return layout.getCols();
     }
 
     /**
      * @return Total number of available seats at this venue.
      */
     public int getTotalSeats() {
-        return noOfRows * noOfCols;
+        return layout.getTotalSeats();
+    }
+
+    /**
+     * @return Number of cells in the seating grid, including gaps. Seat identifiers are always below this.
+     */
+    public int getGridSize() {
+        return layout.getRows() * layout.getCols();
+    }
+
+    /**
+     * Packs a seat's array index position into a dense integer identifier, starting from 0.
+     *
+     * @param row Seat row, starting from 0.
+     * @param col Seat column, starting from 0.
+     * @return The seat identifier.
+     */
+    public int getSeatID(int row, int col) {
+        return row * layout.getCols() + col;
+    }
+
+    /**
+     * Packs a worded seat allocation, e.g. B12, into a dense integer identifier.
+     *
+     * @param seatAlloc Worded seat allocation.
+     * @return The seat identifier, or -1 if the venue has no such seat.
+     */
+    public int getSeatID(String seatAlloc) {
+        return layout.getSeatID(seatAlloc);
+    }
+
+    /**
+     * Converts a seat identifier back into a worded seat allocation, e.g. B12.
+     *
+     * @param seatID The seat identifier.
+     * @return Worded seat allocation, or null if the identifier is a gap in the seating.
+     */
+    public String getSeatLabel(int seatID) {
+        return layout.getSeatLabel(seatID);
     }
 
     @Override
@@ -55,4 +112,9 @@ public class Venue {
         if (obj == this) return true;
         return ((Venue) obj).venueNum == this.venueNum;
     }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(venueNum);
+    }
 }
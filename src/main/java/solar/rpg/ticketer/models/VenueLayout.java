@@ -0,0 +1,293 @@
+package solar.rpg.ticketer.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Describes where the seats of a venue are: its sections, its rows, and the aisles and gaps between seats.
+ * The seats sit on a grid of cells, and each cell is either a seat of some class or a gap. Every cell has a dense
+ * identifier, {@code row * cols + col}, so seat bitmaps can be indexed directly; gaps simply never get set.
+ * <p>
+ * Rows are labelled A to Z, then AA, AB, and so on. Seats are numbered from 1 within their row, skipping gaps,
+ * so seat B12 is the twelfth seat of the second row. Converting between labels and identifiers is a couple of
+ * array lookups either way, using tables that are built once when the layout is created.
+ * <p>
+ * Layouts are stored as a row-run encoding, e.g. {@code Stalls:10*4s2.14s2.4s/2*4w2.14s2.4w;Circle:6*6p2.12p2.6p}.
+ * Sections are separated by semicolons and named before the colon. Each section is a list of rows separated by slashes,
+ * and a row may be repeated by prefixing it with a count and an asterisk. A row is a sequence of runs, each a count
+ * followed by a cell type: {@code s} for standard, {@code p} for premium, {@code w} for wheelchair, and {@code .} for a gap.
+ * Rows narrower than the widest row are centred.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see Venue
+ * @since 0.1
+ */
+public final class VenueLayout {
+
+    /**
+     * The classes of seat that a venue can have.
+     */
+    public enum SeatClass {
+        STANDARD('s', "Standard"), PREMIUM('p', "Premium"), WHEELCHAIR('w', "Wheelchair");
+
+        private final char code;
+        private final String friendlyName;
+
+        SeatClass(char code, String friendlyName) {
+            this.code = code;
+            this.friendlyName = friendlyName;
+        }
+
+        /**
+         * @return The name of this seat class, as shown to users.
+         */
+        public String getFriendlyName() {
+            return friendlyName;
+        }
+    }
+
+    // Seat IDs are stored in 16 bits by the ticket store, so the grid cannot be any larger than this.
+    private static final int MAX_CELLS = 1 << 16;
+
+    // Cell type of a gap.
+    private static final byte GAP = -1;
+
+    private final String encoding;
+    private final int rows, cols, totalSeats;
+
+    // Every cell's seat class ordinal, or GAP.
+    private final byte[] cells;
+
+    // Every cell's seat number within its row, starting from 1; 0 for gaps.
+    private final short[] seatNumbers;
+
+    // The cell of every seat, row by row. The seats of a row start at rowOffsets[row].
+    private final int[] seatCells, rowOffsets;
+
+    // The label of each row, and the section that each row belongs to.
+    private final String[] rowLabels;
+    private final String[] rowSections;
+
+    // Every cell that is a gap.
+    private final BitSet gaps;
+
+    private VenueLayout(String encoding, List<String> sections, List<byte[]> rowCells) {
+        this.encoding = encoding;
+        rows = rowCells.size();
+        cols = rowCells.stream().mapToInt(row -> row.length).max().orElse(0);
+        if (rows == 0 || cols == 0) throw new IllegalArgumentException("A layout needs at least one seat");
+        if ((long) rows * cols > MAX_CELLS) throw new IllegalArgumentException("A layout cannot have more than " + MAX_CELLS + " cells");
+
+        cells = new byte[rows * cols];
+        Arrays.fill(cells, GAP);
+        seatNumbers = new short[rows * cols];
+        rowOffsets = new int[rows + 1];
+        rowLabels = new String[rows];
+        rowSections = sections.toArray(new String[0]);
+        int[] seats = new int[rows * cols];
+        int total = 0;
+        for (int row = 0; row < rows; row++) {
+            rowOffsets[row] = total;
+            rowLabels[row] = rowLabel(row);
+            byte[] runs = rowCells.get(row);
+            int offset = row * cols + (cols - runs.length) / 2;
+            for (int i = 0; i < runs.length; i++) {
+                cells[offset + i] = runs[i];
+                if (runs[i] == GAP) continue;
+                seats[total] = offset + i;
+                seatNumbers[offset + i] = (short) (total - rowOffsets[row] + 1);
+                total++;
+            }
+        }
+        rowOffsets[rows] = total;
+        totalSeats = total;
+        seatCells = Arrays.copyOf(seats, total);
+        gaps = new BitSet(cells.length);
+        for (int cell = 0; cell < cells.length; cell++)
+            if (cells[cell] == GAP) gaps.set(cell);
+    }
+
+    /**
+     * @param rows Number of rows.
+     * @param cols Number of seats per row.
+     * @return A plain rectangle of standard seats, without any gaps.
+     */
+    public static VenueLayout rectangle(int rows, int cols) {
+        return parse("Seating:" + rows + "*" + cols + "s");
+    }
+
+    /**
+     * Reads a layout from its row-run encoding.
+     *
+     * @param encoding The encoded layout, as described above.
+     * @return The layout.
+     * @throws IllegalArgumentException If the encoding is malformed.
+     */
+    public static VenueLayout parse(String encoding) throws IllegalArgumentException {
+        List<String> sections = new ArrayList<>();
+        List<byte[]> rowCells = new ArrayList<>();
+        for (String section : encoding.split(";")) {
+            int colon = section.indexOf(':');
+            if (colon == -1) throw new IllegalArgumentException("Section has no name: " + section);
+            String name = section.substring(0, colon).trim();
+            for (String row : section.substring(colon + 1).split("/")) {
+                row = row.trim();
+                int repeat = 1, star = row.indexOf('*');
+                if (star != -1) {
+                    repeat = Integer.parseInt(row.substring(0, star));
+                    row = row.substring(star + 1);
+                }
+                byte[] runs = parseRow(row);
+                for (int i = 0; i < repeat; i++) {
+                    sections.add(name);
+                    rowCells.add(runs);
+                    if (rowCells.size() > MAX_CELLS) throw new IllegalArgumentException("Too many rows");
+                }
+            }
+        }
+        return new VenueLayout(encoding, sections, rowCells);
+    }
+
+    /**
+     * @param row The runs of a single row, e.g. 4s2.14s2.4s.
+     * @return The row's cell types.
+     */
+    private static byte[] parseRow(String row) {
+        byte[] result = new byte[16];
+        int size = 0, count = 0;
+        for (char c : row.toCharArray()) {
+            if (c >= '0' && c <= '9') {
+                count = count * 10 + (c - '0');
+                if (count > MAX_CELLS) throw new IllegalArgumentException("Run is too long: " + row);
+                continue;
+            }
+            if (count == 0) throw new IllegalArgumentException("Run has no length: " + row);
+            byte type = c == '.' ? GAP : -2;
+            for (SeatClass seatClass : SeatClass.values())
+                if (seatClass.code == c) type = (byte) seatClass.ordinal();
+            if (type == -2) throw new IllegalArgumentException("Unknown cell type '" + c + "': " + row);
+            if (size + count > result.length) result = Arrays.copyOf(result, Math.max(result.length * 2, size + count));
+            Arrays.fill(result, size, size + count, type);
+            size += count;
+            count = 0;
+        }
+        if (count != 0) throw new IllegalArgumentException("Run has no cell type: " + row);
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * @param row Row number, starting from 0.
+     * @return The row's label: A to Z, then AA, AB, and so on.
+     */
+    public static String rowLabel(int row) {
+        StringBuilder label = new StringBuilder();
+        for (int i = row + 1; i > 0; i = (i - 1) / 26)
+            label.append((char) ('A' + (i - 1) % 26));
+        return label.reverse().toString();
+    }
+
+    /**
+     * @param label A row label, e.g. AB.
+     * @return The row number, starting from 0, or -1 if the label is not made of capital letters.
+     */
+    public static int rowNumber(String label) {
+        int result = 0;
+        for (char c : label.toCharArray()) {
+            if (c < 'A' || c > 'Z' || result > MAX_CELLS) return -1;
+            result = result * 26 + (c - 'A' + 1);
+        }
+        return result - 1;
+    }
+
+    /**
+     * @return The row-run encoding of this layout.
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * @return Number of rows in the grid.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return Number of cells in each row of the grid, which is the width of the widest row.
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * @return Number of actual seats, excluding gaps.
+     */
+    public int getTotalSeats() {
+        return totalSeats;
+    }
+
+    /**
+     * @param cell The cell identifier.
+     * @return True, if the cell is a seat rather than a gap.
+     */
+    public boolean isSeat(int cell) {
+        return cells[cell] != GAP;
+    }
+
+    /**
+     * @param cell The cell identifier.
+     * @return The seat class of the cell, or null if it is a gap.
+     */
+    public SeatClass getSeatClass(int cell) {
+        return cells[cell] == GAP ? null : SeatClass.values()[cells[cell]];
+    }
+
+    /**
+     * @param row Row number, starting from 0.
+     * @return The name of the section that the row belongs to.
+     */
+    public String getSection(int row) {
+        return rowSections[row];
+    }
+
+    /**
+     * Marks every gap in the grid, i.e. every cell that can never be booked, so that seat searches skip over them.
+     *
+     * @param cells A bitmap of cells, which is modified.
+     * @return The same bitmap.
+     */
+    public BitSet markGaps(BitSet cells) {
+        cells.or(gaps);
+        return cells;
+    }
+
+    /**
+     * @param label Worded seat allocation, e.g. AB12.
+     * @return The seat's cell identifier, or -1 if there is no such seat.
+     */
+    public int getSeatID(String label) {
+        int split = 0;
+        while (split < label.length() && !Character.isDigit(label.charAt(split))) split++;
+        if (split == 0 || split == label.length()) return -1;
+        int row = rowNumber(label.substring(0, split)), number;
+        try {
+            number = Integer.parseInt(label.substring(split));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+        if (row < 0 || row >= rows || number < 1 || number > rowOffsets[row + 1] - rowOffsets[row]) return -1;
+        return seatCells[rowOffsets[row] + number - 1];
+    }
+
+    /**
+     * @param cell The seat's cell identifier.
+     * @return Worded seat allocation, e.g. AB12, or null if the cell is a gap.
+     */
+    public String getSeatLabel(int cell) {
+        return cells[cell] == GAP ? null : rowLabels[cell / cols] + seatNumbers[cell];
+    }
+}
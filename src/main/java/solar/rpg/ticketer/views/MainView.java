@@ -2,6 +2,10 @@ package solar.rpg.ticketer.views;
 
 import solar.rpg.ticketer.controller.DataController;
 import solar.rpg.ticketer.controller.StateController;
+import solar.rpg.ticketer.controller.index.CheckIns;
+import solar.rpg.ticketer.controller.index.FacetIndex;
+import solar.rpg.ticketer.controller.index.SortedScreenings;
+import solar.rpg.ticketer.models.Ticket;
 import solar.rpg.ticketer.views.booking.ArrangementView;
 import solar.rpg.ticketer.views.booking.BookingView;
 import solar.rpg.ticketer.views.booking.TicketView;
@@ -11,8 +15,8 @@ import solar.rpg.ticketer.views.util.View;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.Map;
-import java.util.Set;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 
 /**
  * This JFrame controls each individual sub-view on the screen.
@@ -34,8 +38,8 @@ public final class MainView extends JFrame {
     private View bookingView, selectionView, confirmView, ticketView;
 
     // Menu bar UI elements.
-    private JCheckBoxMenuItem[] sortGenres;
-    private JMenu sort;
+    private EnumMap<FacetIndex.Facet, LinkedHashMap<String, JCheckBoxMenuItem>> filterItems;
+    private JMenu sort, filter;
 
     public MainView() {
         super("MiniTicketer - v0.1");
@@ -79,51 +83,131 @@ public final class MainView extends JFrame {
         help.add(context);
         help.add(source);
 
-        // Create a menu that allows the user to select what genres to see in the grid.
+        // Create a menu that allows the user to filter what screenings to see in the grid.
+        // Any number of values can be selected, and each value shows how many screenings it would match.
+        filter = new JMenu("Filter Movies");
+        filterItems = new EnumMap<>(FacetIndex.Facet.class);
+        fillFilterMenu();
+
+        // Create a menu that allows the user to choose the order that screenings are shown in.
         sort = new JMenu("Sort Movies");
-        // Only allow the user to select genres that have some screenings on them.
-        Set<Map.Entry<String, Integer>> genres = dataController.getCurrentGenreSet();
-        sortGenres = new JCheckBoxMenuItem[genres.size()];
-        for (Map.Entry<String, Integer> entry : genres) {
-            JCheckBoxMenuItem genreItem = new JCheckBoxMenuItem(entry.getKey());
-            sortGenres[entry.getValue()] = genreItem;
-            genreItem.addActionListener((e) -> {
-                // Only allow one item to be selected at a time; so uncheck others if applicable.
-                if (genreItem.isSelected()) {
-                    // This genre is now the sorting target.
-                    clearSortedGenres();
-                    genreItem.setState(true);
-                    state().changeSortBy(entry.getKey());
-                } else state().changeSortBy(""); // Sorting has been disabled.
-            });
-            sort.add(genreItem);
+        ButtonGroup orders = new ButtonGroup();
+        for (SortedScreenings.SortKey key : SortedScreenings.SortKey.values()) {
+            JRadioButtonMenuItem orderItem = new JRadioButtonMenuItem("Order by " + key.getFriendlyName(), key == stateController.getSortKey());
+            orderItem.addActionListener((e) -> state().changeSortKey(key));
+            orders.add(orderItem);
+            sort.add(orderItem);
         }
+        // Create a menu for staff, to check tickets in at the door and see how full the upcoming time slots are.
+        JMenu staff = new JMenu("Staff");
+        JMenuItem checkIn = new JMenuItem("Check In Ticket");
+        checkIn.addActionListener((e) -> {
+            String code = JOptionPane.showInputDialog(null, "Please scan or enter the ticket code:", "Check In Ticket", JOptionPane.QUESTION_MESSAGE);
+            if (code == null || code.trim().isEmpty()) return; // If they clicked cancel
+            CheckIns.Outcome outcome = dataController.checkIn(code);
+            String message = outcome.getResult().getMessage();
+            Ticket ticket = outcome.getTicket();
+            if (ticket != null)
+                message += String.format("\n\nMovie: %s\nTime: %s\nSeat: %s", ticket.getScreening().getMovie().getName(),
+                        dataController.friendlyDate(ticket.getSelectedDate()), ticket.getAllocatedSeat());
+            JOptionPane.showMessageDialog(null, message, "Check In Ticket",
+                    outcome.getResult() == CheckIns.Result.ADMITTED ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.ERROR_MESSAGE);
+        });
+        JMenuItem report = new JMenuItem("Occupancy Report");
+        report.addActionListener((e) -> new OccupancyReport(this, dataController.getBookedSeats(), dataController.calculateOfferedSeats()).setVisible(true));
+        staff.add(checkIn);
+        staff.add(report);
+
         menuBar.add(help);
+        menuBar.add(staff);
+        menuBar.add(filter);
         menuBar.add(sort);
         setJMenuBar(menuBar);
     }
 
     /**
-     * Completely clears selection preference for genre sorting.
+     * Adds an item for every value of every facet to the filter menu, replacing any existing items.
+     * Values that were selected before stay selected, if they still exist.
+     */
+    private void fillFilterMenu() {
+        EnumMap<FacetIndex.Facet, LinkedHashMap<String, JCheckBoxMenuItem>> previous = new EnumMap<>(filterItems);
+        filter.removeAll();
+        filterItems.clear();
+        for (FacetIndex.Facet facet : FacetIndex.Facet.values()) {
+            JMenu facetMenu = new JMenu(facet.getFriendlyName());
+            LinkedHashMap<String, JCheckBoxMenuItem> items = new LinkedHashMap<>();
+            for (String value : dataController.getFacets().values(facet)) {
+                JCheckBoxMenuItem valueItem = new JCheckBoxMenuItem(value);
+                JCheckBoxMenuItem previousItem = previous.containsKey(facet) ? previous.get(facet).get(value) : null;
+                valueItem.setState(previousItem != null && previousItem.isSelected());
+                valueItem.addActionListener((e) -> {
+                    state().changeFilter(facet, value, valueItem.isSelected());
+                    updateFilterCounts();
+                });
+                items.put(value, valueItem);
+                facetMenu.add(valueItem);
+            }
+            filterItems.put(facet, items);
+            filter.add(facetMenu);
+        }
+        filter.addSeparator();
+        JMenuItem clear = new JMenuItem("Clear Filters");
+        clear.addActionListener((e) -> {
+            clearFilterItems();
+            state().clearFilters();
+        });
+        filter.add(clear);
+        updateFilterCounts();
+    }
+
+    /**
+     * Reflects a change to the loaded screenings, e.g. once a screening has ended, without a restart.
+     * The grid's pages and the filter menu are recalculated. If the user was booking a screening that is gone,
+     * they are told so and taken back to the grid.
+     */
+    public void catalogChanged() {
+        stateController.refreshCatalog();
+        fillFilterMenu();
+        if (stateController.getSelectedScreening() != -1 && dataController.getSelectedScreening() == null) {
+            JOptionPane.showMessageDialog(null, "Sorry, the screening you were booking has just ended.\nPlease choose another screening.", "Screening Ended", JOptionPane.WARNING_MESSAGE);
+            updateState(UIState.INITIAL_BOOKING);
+        }
+    }
+
+    /**
+     * Shows how many screenings each filter value would match, given the other selected filters.
+     * Values that would match nothing are disabled, unless they are already selected.
+     */
+    private void updateFilterCounts() {
+        filterItems.forEach((facet, items) -> state().countFilterMatches(facet).forEach((value, count) -> {
+            JCheckBoxMenuItem item = items.get(value);
+            item.setText(value + " (" + count + ")");
+            item.setEnabled(count > 0 || item.isSelected());
+        }));
+    }
+
+    /**
+     * Completely clears selection of filters in the menu.
      */
-    private void clearSortedGenres() {
-        for (JCheckBoxMenuItem item : sortGenres)
-            item.setState(false);
+    private void clearFilterItems() {
+        filterItems.values().forEach(items -> items.values().forEach(item -> item.setState(false)));
+        updateFilterCounts();
     }
 
     /**
-     * Enables or disables the sorting menu.
-     * It should only be enabled when the user is on the "Booking" view.
+     * Enables or disables the sorting & filtering menus.
+     * They should only be enabled when the user is on the "Booking" view.
      *
-     * @param enabled True if sorting menu should be enabled, otherwise false.
+     * @param enabled True if the menus should be enabled, otherwise false.
      */
     private void setSort(boolean enabled) {
         sort.setEnabled(enabled);
+        filter.setEnabled(enabled);
 
-        // When disabled, also clear any sortBy values.
+        // When disabled, also clear any filters.
         if (!enabled) {
-            clearSortedGenres();
-            state().changeSortBy("");
+            clearFilterItems();
+            state().clearFilters();
         }
     }
 
@@ -136,6 +220,7 @@ public final class MainView extends JFrame {
         switch (state) {
             case INITIAL_BOOKING:
                 stateController.setArrangementState(ArrangementView.ArrangementState.UNDECIDED);
+                stateController.refreshTrending();
                 booking().movieGrid().update();
                 setSort(true);
                 swap(bookingView.getPanel());
@@ -0,0 +1,235 @@
+package solar.rpg.ticketer.views;
+
+import solar.rpg.ticketer.controller.index.OccupancyCubes;
+import solar.rpg.ticketer.views.util.SpacedJButton;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.DayOfWeek;
+import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A dialog for staff that shows how full the time slots that have not finished yet are: by venue and weekday, by
+ * venue and hour, and by movie and weekday. Each cell shows the booked seats, the offered seats, and the occupancy
+ * rate between them.
+ * The report can also be exported as a CSV file, e.g. to open in a spreadsheet.
+ * <p>
+ * Everything is read from the pre-aggregated counts that DataController keeps, so opening the report does not
+ * scan the loaded tickets or query the database, and can be done at any time of day.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @see OccupancyCubes
+ * @since 0.1
+ */
+public class OccupancyReport extends JDialog {
+
+    private static final long serialVersionUID = 1L;
+
+    private final OccupancyCubes booked, offered;
+
+    /**
+     * @param owner   The main window.
+     * @param booked  Seats that are booked in the time slots that have not finished yet.
+     * @param offered Seats that are offered in the same time slots.
+     */
+    public OccupancyReport(MainView owner, OccupancyCubes booked, OccupancyCubes offered) {
+        super(owner, "Occupancy Report", true);
+        this.booked = booked;
+        this.offered = offered;
+
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Venue by Weekday", table(venueByWeekday()));
+        tabs.addTab("Venue by Hour", table(venueByHour()));
+        tabs.addTab("Movie by Weekday", table(movieByWeekday()));
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 0, 0));
+        SpacedJButton export = new SpacedJButton("Export CSV", 10, 10, 10, 0);
+        export.get().addActionListener((e) -> export());
+        SpacedJButton close = new SpacedJButton("Close", 10, 10, 10, 0);
+        close.get().addActionListener((e) -> dispose());
+        buttons.add(export);
+        buttons.add(close);
+
+        JPanel content = new JPanel(new BorderLayout());
+        content.setBorder(new EmptyBorder(10, 10, 0, 10));
+        content.add(new JLabel("Booked seats out of offered seats, for every time slot that is showing now or still to come."), BorderLayout.NORTH);
+        content.add(tabs, BorderLayout.CENTER);
+        content.add(buttons, BorderLayout.SOUTH);
+        setContentPane(content);
+        setSize(800, 450);
+        setLocationRelativeTo(owner);
+    }
+
+    /**
+     * @return Every venue, with a column for each weekday.
+     */
+    private DefaultTableModel venueByWeekday() {
+        DefaultTableModel model = model("Venue", weekdays());
+        for (int venueNum : offered.venues()) {
+            List<Object> row = new ArrayList<>();
+            row.add("Venue #" + venueNum);
+            long bookedTotal = 0, offeredTotal = 0;
+            for (DayOfWeek day : DayOfWeek.values()) {
+                long seatsBooked = booked.ofVenue(venueNum, day), seatsOffered = offered.ofVenue(venueNum, day);
+                row.add(cell(seatsBooked, seatsOffered));
+                bookedTotal += seatsBooked;
+                offeredTotal += seatsOffered;
+            }
+            row.add(cell(bookedTotal, offeredTotal));
+            model.addRow(row.toArray());
+        }
+        return model;
+    }
+
+    /**
+     * @return Every venue, with a column for each hour that any time slot starts in.
+     */
+    private DefaultTableModel venueByHour() {
+        List<Integer> hours = new ArrayList<>();
+        for (int hour = 0; hour < 24; hour++)
+            for (int venueNum : offered.venues())
+                if (offeredInHour(venueNum, hour) > 0) {
+                    hours.add(hour);
+                    break;
+                }
+        List<String> columns = new ArrayList<>();
+        hours.forEach(hour -> columns.add(String.format("%02d:00", hour)));
+        DefaultTableModel model = model("Venue", columns);
+        for (int venueNum : offered.venues()) {
+            List<Object> row = new ArrayList<>();
+            row.add("Venue #" + venueNum);
+            long bookedTotal = 0, offeredTotal = 0;
+            for (int hour : hours) {
+                long seatsBooked = bookedInHour(venueNum, hour), seatsOffered = offeredInHour(venueNum, hour);
+                row.add(cell(seatsBooked, seatsOffered));
+                bookedTotal += seatsBooked;
+                offeredTotal += seatsOffered;
+            }
+            row.add(cell(bookedTotal, offeredTotal));
+            model.addRow(row.toArray());
+        }
+        return model;
+    }
+
+    /**
+     * @return Every movie, with a column for each weekday.
+     */
+    private DefaultTableModel movieByWeekday() {
+        DefaultTableModel model = model("Movie", weekdays());
+        for (String movie : offered.movies()) {
+            List<Object> row = new ArrayList<>();
+            row.add(movie);
+            long bookedTotal = 0, offeredTotal = 0;
+            for (DayOfWeek day : DayOfWeek.values()) {
+                long seatsBooked = booked.ofMovie(movie, day), seatsOffered = offered.ofMovie(movie, day);
+                row.add(cell(seatsBooked, seatsOffered));
+                bookedTotal += seatsBooked;
+                offeredTotal += seatsOffered;
+            }
+            row.add(cell(bookedTotal, offeredTotal));
+            model.addRow(row.toArray());
+        }
+        return model;
+    }
+
+    private long bookedInHour(int venueNum, int hour) {
+        long result = 0;
+        for (DayOfWeek day : DayOfWeek.values())
+            result += booked.ofVenue(venueNum, day, hour);
+        return result;
+    }
+
+    private long offeredInHour(int venueNum, int hour) {
+        long result = 0;
+        for (DayOfWeek day : DayOfWeek.values())
+            result += offered.ofVenue(venueNum, day, hour);
+        return result;
+    }
+
+    /**
+     * @return A read-only table model, with a column for row names, the given columns, and a total column.
+     */
+    private static DefaultTableModel model(String rowName, List<String> columns) {
+        List<String> header = new ArrayList<>();
+        header.add(rowName);
+        header.addAll(columns);
+        header.add("Total");
+        return new DefaultTableModel(header.toArray(), 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+    }
+
+    private static JScrollPane table(DefaultTableModel model) {
+        JTable table = new JTable(model);
+        table.getTableHeader().setReorderingAllowed(false);
+        return new JScrollPane(table);
+    }
+
+    /**
+     * @return Short names of the weekdays, Monday first.
+     */
+    private static List<String> weekdays() {
+        List<String> result = new ArrayList<>();
+        for (DayOfWeek day : DayOfWeek.values())
+            result.add(day.getDisplayName(TextStyle.SHORT, Locale.getDefault()));
+        return result;
+    }
+
+    /**
+     * @return The text of a cell, e.g. "45% (120/264)", or a dash if no seats are offered.
+     */
+    private static String cell(long seatsBooked, long seatsOffered) {
+        if (seatsOffered == 0) return "-";
+        return String.format("%d%% (%d/%d)", Math.round(seatsBooked * 100D / seatsOffered), seatsBooked, seatsOffered);
+    }
+
+    /**
+     * Asks where to save the report, then writes every non-empty cell of both cubes to it, one line per cell.
+     */
+    private void export() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("occupancy.csv"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return; // If they clicked cancel
+
+        List<String> lines = new ArrayList<>();
+        lines.add("dimension,name,weekday,hour,booked_seats,offered_seats,occupancy");
+        for (int venueNum : offered.venues())
+            for (DayOfWeek day : DayOfWeek.values())
+                for (int hour = 0; hour < 24; hour++)
+                    line(lines, "venue", String.valueOf(venueNum), day, String.valueOf(hour),
+                            booked.ofVenue(venueNum, day, hour), offered.ofVenue(venueNum, day, hour));
+        for (String movie : offered.movies())
+            for (DayOfWeek day : DayOfWeek.values())
+                line(lines, "movie", '"' + movie.replace("\"", "\"\"") + '"', day, "",
+                        booked.ofMovie(movie, day), offered.ofMovie(movie, day));
+
+        try {
+            Files.write(chooser.getSelectedFile().toPath(), lines, StandardCharsets.UTF_8);
+            System.out.println(String.format(">> Exported %d occupancy rows to %s", lines.size() - 1, chooser.getSelectedFile()));
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, String.format("Unable to export the report, reason:\n%s", ex.getMessage()),
+                    "Unable to Export!", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Adds a line for a cell to the CSV, unless no seats are offered in it.
+     */
+    private static void line(List<String> lines, String dimension, String name, DayOfWeek day, String hour, long seatsBooked, long seatsOffered) {
+        if (seatsOffered == 0) return;
+        lines.add(String.format(Locale.ROOT, "%s,%s,%s,%s,%d,%d,%.4f", dimension, name, day, hour, seatsBooked, seatsOffered, (double) seatsBooked / seatsOffered));
+    }
+}
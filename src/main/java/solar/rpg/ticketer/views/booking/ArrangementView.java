@@ -1,18 +1,26 @@
 package solar.rpg.ticketer.views.booking;
 
+import solar.rpg.ticketer.controller.index.AdjacentSeatSearch;
+import solar.rpg.ticketer.controller.index.AvailabilityIndex;
 import solar.rpg.ticketer.models.Screening;
+import solar.rpg.ticketer.models.Showtime;
 import solar.rpg.ticketer.models.Ticket;
 import solar.rpg.ticketer.views.MainView;
 import solar.rpg.ticketer.views.util.SpacedJButton;
+import solar.rpg.ticketer.views.util.SuggestionField;
 import solar.rpg.ticketer.views.util.View;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.TitledBorder;
 import java.awt.*;
+import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.StringJoiner;
 import java.util.regex.Pattern;
 
 /**
@@ -33,7 +41,7 @@ public class ArrangementView extends View {
     // View elements.
     private JTextPane lStep1, lStep2, lStep3;
     private JTextField tStep2;
-    private JButton cancelAll, confirmNumbers, pickSeats;
+    private JButton cancelAll, groupBooking, confirmNumbers, pickSeats;
     private JComboBox<String> availableTimes;
 
     ArrangementView(MainView main, BookingView booking) {
@@ -117,7 +125,7 @@ public class ArrangementView extends View {
         options.setBorder(BorderFactory.createCompoundBorder(new EmptyBorder(6, 6, 6, 6),
                 BorderFactory.createTitledBorder(BorderFactory.createLineBorder(Color.GRAY, 1), "Miscellaneous", TitledBorder.CENTER, TitledBorder.TOP)));
         JPanel miscBorder = new JPanel();
-        miscBorder.setLayout(new GridLayout(2, 1));
+        miscBorder.setLayout(new GridLayout(4, 1));
         miscBorder.setBorder(new EmptyBorder(6, 6, 6, 6));
         cancelAll = new JButton("Cancel / Reset Selection");
         cancelAll.setEnabled(false);
@@ -126,12 +134,65 @@ public class ArrangementView extends View {
             main.state().setArrangementState(ArrangementState.UNDECIDED);
             booking.movieGrid().update();
         });
+        groupBooking = new JButton("Group Booking (Any Time)");
+        groupBooking.setEnabled(false);
+        groupBooking.addActionListener((e) -> {
+            // Get the party size and username, then let the seats be picked at whichever time slot fits the party best.
+            JTextField partyInput = new JTextField(), nameInput = new JTextField();
+            int decision = JOptionPane.showConfirmDialog(null, new Object[]{"Number of attendees:", partyInput, "Please enter your username:", nameInput},
+                    "Group Booking", JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
+            if (decision != JOptionPane.OK_OPTION) return; // If they clicked cancel
+            Screening selected = main.data().getSelectedScreening();
+            int party;
+            try {
+                party = Integer.parseInt(partyInput.getText().trim());
+                if (party < 1 || selected.getVenue().getTotalSeats() < party) throw new NumberFormatException();
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(null, "Sorry, the input you supplied was invalid.\n" +
+                        "Please supply a number between 1 and " + selected.getVenue().getTotalSeats() + "!", "Invalid Input!", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            String username = nameInput.getText();
+            if (!Pattern.compile("^[a-zA-Z0-9_]{3,16}$").matcher(username).find()) {
+                JOptionPane.showMessageDialog(null, "Your selected username is invalid. Please ensure that:\n" +
+                        "- It is between 3 and 16 characters long.\n- It only contains letters, numbers, and underscores.", "Invalid Username!", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+
+            List<Showtime> candidates = new ArrayList<>();
+            for (Timestamp time : main.state().getAvailableTimes())
+                candidates.add(new Showtime(selected, time));
+            List<Ticket> booked;
+            try {
+                booked = main.data().bookGroup(candidates, party, username);
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(null, String.format("Unable to save your group booking, nothing has been booked. Reason:\n%s\nPlease try again.", ex.getMessage()),
+                        "Unable to Save!", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            if (booked.isEmpty()) {
+                JOptionPane.showMessageDialog(null, "Sorry, but unfortunately no time slot has " + party + " free seats left.\n" +
+                        "Please consider a smaller party or a different movie.", "Not Enough Room!", JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            StringJoiner seats = new StringJoiner(", ");
+            booked.forEach(ticket -> seats.add(ticket.getAllocatedSeat()));
+            JOptionPane.showMessageDialog(null, "Your group booking for " + main.data().friendlyDate(booked.get(0).getSelectedDate()) + " has been saved & confirmed!\n" +
+                    "Seats: " + seats + "\nTo view your tickets, please click \"View Tickets\".\nThank you!", "Booking Success!", JOptionPane.INFORMATION_MESSAGE);
+            main.state().setArrangementState(ArrangementState.UNDECIDED);
+            booking.movieGrid().update();
+        });
+        JButton findTogether = new JButton("Find Seats Together");
+        findTogether.addActionListener((e) -> findSeatsTogether());
         SpacedJButton viewTickets = new SpacedJButton("View Tickets", 5, 0, 5, 0);
         JButton viewTickets1 = viewTickets.get();
         viewTickets1.addActionListener((e) -> {
-            // Get username input before displaying tickets for said username.
-            String result = JOptionPane.showInputDialog(null, "Please enter your username:", "View Tickets", JOptionPane.QUESTION_MESSAGE);
-            if (result == null) return; // If they clicked cancel
+            // Get username input before displaying tickets for said username. Known usernames are suggested while typing.
+            SuggestionField input = new SuggestionField(prefix -> main.data().suggestUsernames(prefix, 8));
+            int decision = JOptionPane.showConfirmDialog(null, new Object[]{"Please enter your username:", input}, "View Tickets", JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
+            if (decision != JOptionPane.OK_OPTION) return; // If they clicked cancel
+            String result = input.getText();
             if (!Pattern.compile("^[a-zA-Z0-9_]{3,16}$").matcher(result).find()) {
                 JOptionPane.showMessageDialog(null, "Your selected username is invalid. Please ensure that:\n" +
                         "- It is between 3 and 16 characters long.\n- It only contains letters, numbers, and underscores.", "Invalid Username!", JOptionPane.ERROR_MESSAGE);
@@ -149,6 +210,8 @@ public class ArrangementView extends View {
             main.updateState(MainView.UIState.TICKET_REVIEW);
         });
         miscBorder.add(cancelAll);
+        miscBorder.add(groupBooking);
+        miscBorder.add(findTogether);
         miscBorder.add(viewTickets);
         options.add(miscBorder);
 
@@ -159,6 +222,69 @@ public class ArrangementView extends View {
         reset();
     }
 
+    /**
+     * Asks for a party size and a time frame, and then lists the showtimes of any movie where the party can sit together.
+     * Picking one of them selects that screening and time, ready for the party's seats to be picked.
+     */
+    private void findSeatsTogether() {
+        JTextField partyInput = new JTextField();
+        JComboBox<String> when = new JComboBox<>(new String[]{"Today", "Next 3 Days", "Any Time"});
+        JComboBox<AdjacentSeatSearch.Order> order = new JComboBox<>(AdjacentSeatSearch.Order.values());
+        order.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                return super.getListCellRendererComponent(list, ((AdjacentSeatSearch.Order) value).getFriendlyName(), index, isSelected, cellHasFocus);
+            }
+        });
+        int decision = JOptionPane.showConfirmDialog(null, new Object[]{"Number of attendees sitting together:", partyInput, "When:", when, "Show:", order},
+                "Find Seats Together", JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
+        if (decision != JOptionPane.OK_OPTION) return; // If they clicked cancel
+        int party;
+        try {
+            party = Integer.parseInt(partyInput.getText().trim());
+            if (party < 1) throw new NumberFormatException();
+        } catch (NumberFormatException ex) {
+            JOptionPane.showMessageDialog(null, "Sorry, the input you supplied was invalid.\nPlease supply a number of at least 1!", "Invalid Input!", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        // Work out the time frame, which always ends at the end of a day.
+        ZonedDateTime now = ZonedDateTime.now();
+        int days = when.getSelectedIndex() == 0 ? 1 : when.getSelectedIndex() == 1 ? 3 : 365;
+        long until = now.toLocalDate().plusDays(days).atStartOfDay(now.getZone()).toInstant().toEpochMilli() - 1;
+        List<AdjacentSeatSearch.Hit> hits = main.data().findSeatsTogether(party, now.toInstant().toEpochMilli(), until, 20, (AdjacentSeatSearch.Order) order.getSelectedItem());
+        if (hits.isEmpty()) {
+            JOptionPane.showMessageDialog(null, "Sorry, but there is nowhere for " + party + " people to sit together at that time.\n" +
+                    "Please consider a smaller party or a later time.", "Not Enough Room!", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+
+        // List the showtimes with the seats that would be picked, and let the user choose one.
+        String[] options = new String[hits.size()];
+        for (int i = 0; i < options.length; i++) {
+            Showtime showtime = hits.get(i).getShowtime();
+            int[] seats = hits.get(i).getAllocation().getSeatIDs();
+            options[i] = showtime.getScreening().getMovie().getName() + " - " + main.data().friendlyDate(showtime.getDate()) + ", Venue " +
+                    showtime.getScreening().getVenue().getVenueNum() + " (seats " + showtime.getScreening().getVenue().getSeatLabel(seats[0]) + " to " +
+                    showtime.getScreening().getVenue().getSeatLabel(seats[seats.length - 1]) + ")";
+        }
+        JList<String> list = new JList<>(options);
+        list.setSelectedIndex(0);
+        decision = JOptionPane.showConfirmDialog(null, new Object[]{"These showtimes have " + party + " seats together:", new JScrollPane(list)},
+                "Find Seats Together", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (decision != JOptionPane.OK_OPTION || list.getSelectedIndex() == -1) return;
+
+        // Select the chosen screening and time, as if they had been picked by hand.
+        Showtime chosen = hits.get(list.getSelectedIndex()).getShowtime();
+        main.state().setSelectedScreening(chosen.getScreening().getID());
+        booking.movieGrid().update();
+        main.state().setArrangementState(ArrangementState.DECIDE_WHEN);
+        int position = main.state().getAvailableTimes().indexOf(chosen.getDate());
+        if (position == -1) return; // The time has passed in the meantime.
+        availableTimes.setSelectedIndex(position + 1);
+        tStep2.setText(String.valueOf(party));
+    }
+
     @Override
     public void reset() {
         // Reset step 1 (picking a date and time) UI elements.
@@ -179,6 +305,7 @@ public class ArrangementView extends View {
 
         // Reset miscellaneous elements.
         cancelAll.setEnabled(false);
+        groupBooking.setEnabled(false);
     }
 
     @Override
@@ -193,10 +320,16 @@ public class ArrangementView extends View {
                 main.state().setAvailableTimes(main.data().calculateTimes(selected));
 
                 // Convert available times into a more human-friendly format before putting them in the combo box.
+                // Each time also shows how many seats it has left, so sold out and nearly full times stand out.
                 LinkedList<String> friendlyTimes = new LinkedList<>();
                 friendlyTimes.add("*please select*");
-                for (Timestamp time : main.state().getAvailableTimes())
-                    friendlyTimes.add(main.data().friendlyDate(time));
+                List<Timestamp> times = main.state().getAvailableTimes();
+                int[] remaining = main.data().calculateAvailability(selected, times);
+                for (int i = 0; i < times.size(); i++) {
+                    String availability = remaining[i] == 0 ? "SOLD OUT" : AvailabilityIndex.isNearlyFull(selected, remaining[i]) ?
+                            "nearly full, " + remaining[i] + " left" : remaining[i] + " seats left";
+                    friendlyTimes.add(main.data().friendlyDate(times.get(i)) + " (" + availability + ")");
+                }
 
                 // Add converted times to combo box for selection.
                 DefaultComboBoxModel<String> model = new DefaultComboBoxModel<>(friendlyTimes.toArray(new String[0]));
@@ -211,6 +344,7 @@ public class ArrangementView extends View {
 
                 // Enable the cancel/reset button at this point, and leave it enabled so that stuff can be reset.
                 cancelAll.setEnabled(true);
+                groupBooking.setEnabled(!main.state().getAvailableTimes().isEmpty());
             }
             break;
             case DECIDE_ATTENDEES: {
@@ -1,11 +1,14 @@
 package solar.rpg.ticketer.views.booking;
 
+import solar.rpg.ticketer.controller.index.SortedScreenings;
 import solar.rpg.ticketer.models.Screening;
 import solar.rpg.ticketer.views.MainView;
 import solar.rpg.ticketer.views.util.View;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
 import java.awt.*;
@@ -15,6 +18,7 @@ import java.util.LinkedList;
  * MovieGridView is a sub-view of BookingView.
  * This view allows the user to view a grid of 6 screenings at a time.
  * The user can navigate to different "pages" of grids using the buttons on the bottom.
+ * The user can also search for movies by title using the search box on the top.
  *
  * @author Joshua Skinner
  * @version 1.0
@@ -68,7 +72,37 @@ public class MovieGridView extends View {
             update();
         });
 
+        // Initialise the search box, which narrows down the grid as the user types.
+        JPanel searchPanel = new JPanel();
+        searchPanel.setLayout(new BorderLayout(5, 0));
+        searchPanel.setBorder(new EmptyBorder(5, 5, 5, 5));
+        JTextField search = new JTextField();
+        search.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                refresh();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                refresh();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                refresh();
+            }
+
+            private void refresh() {
+                // Defer the update as the document cannot be changed while it is notifying listeners.
+                SwingUtilities.invokeLater(() -> main.state().changeSearch(search.getText()));
+            }
+        });
+        searchPanel.add(new JLabel("Search Movies:"), BorderLayout.WEST);
+        searchPanel.add(search, BorderLayout.CENTER);
+
         // Reset everything so it looks normal.
+        mainPanel.add(searchPanel, BorderLayout.NORTH);
         mainPanel.add(moviePanel, BorderLayout.CENTER);
         mainPanel.add(paginationPanel, BorderLayout.SOUTH);
         update();
@@ -130,7 +164,13 @@ public class MovieGridView extends View {
         void display(Screening screening) {
             setVisible(true);
             titleText.setText(screening.getMovie().getName());
-            subtitleText.setText(screening.getMovie().getGenre() + " (" + screening.getMovie().getRunningTime() + " mins), from " + screening.getMovie().getReleaseYear());
+            // Also show how many seats are left across today's remaining time slots.
+            int seatsLeft = main.data().calculateSeatsLeftToday(screening);
+            String today = seatsLeft == -1 ? "No more showings today" : seatsLeft == 0 ? "Sold out today" : seatsLeft + " seat(s) left today";
+            // When ordered by what is trending, show where each trending screening places.
+            int rank = main.state().getSortKey() == SortedScreenings.SortKey.TRENDING ? main.data().findTrendingRank(screening) : 0;
+            if (rank != 0) today = "Trending #" + rank + ", " + today.substring(0, 1).toLowerCase() + today.substring(1);
+            subtitleText.setText(screening.getMovie().getGenre() + " (" + screening.getMovie().getRunningTime() + " mins), from " + screening.getMovie().getReleaseYear() + "\n" + today);
             screeningID = screening.getID();
 
             if (main.state().getSelectedScreening() == screeningID) {
@@ -1,5 +1,6 @@
 package solar.rpg.ticketer.views.booking;
 
+import solar.rpg.ticketer.data.PartialDeleteException;
 import solar.rpg.ticketer.models.Movie;
 import solar.rpg.ticketer.models.Ticket;
 import solar.rpg.ticketer.views.MainView;
@@ -10,8 +11,9 @@ import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.TitledBorder;
 import java.awt.*;
-import java.util.HashMap;
+import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
 
 /**
  * TicketView is a special view that requires setup from BookingView.
@@ -82,7 +84,7 @@ public class TicketView extends View {
         currentTickets.removeAll();
 
         // Movies mapped to lists of tickets.
-        HashMap<Movie, List<Ticket>> remapped = main.data().remapTickets();
+        Map<Movie, List<Ticket>> remapped = main.data().remapTickets();
 
         // Setup grid bag constraints.
         GridBagConstraints grid = new GridBagConstraints();
@@ -133,8 +135,22 @@ public class TicketView extends View {
             deleteAll.get().addActionListener((e) -> {
                 int decision = JOptionPane.showConfirmDialog(null, "Are you sure you want to delete all tickets for this movie?", "Confirmation", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
                 if (decision == 0) {
-                    main.data().deleteTickets(tickets);
-                    JOptionPane.showMessageDialog(null, tickets.size() + " ticket(s) have been deleted.", "Tickets Deleted", JOptionPane.INFORMATION_MESSAGE);
+                    int deleted;
+                    try {
+                        deleted = main.data().deleteTickets(tickets);
+                    } catch (PartialDeleteException ex) {
+                        // Deleting them again only deletes those that are still booked.
+                        ex.printStackTrace();
+                        JOptionPane.showMessageDialog(null, String.format("Only %d of the tickets could be deleted, the rest are still booked. Reason:\n%s\nPlease try again.",
+                                ex.getDeleted().size(), ex.getCause().getMessage()), "Unable to Delete!", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    } catch (SQLException ex) {
+                        ex.printStackTrace();
+                        JOptionPane.showMessageDialog(null, String.format("Unable to delete the tickets, they are all still booked. Reason:\n%s\nPlease try again.", ex.getMessage()),
+                                "Unable to Delete!", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    JOptionPane.showMessageDialog(null, deleted + " ticket(s) have been deleted.", "Tickets Deleted", JOptionPane.INFORMATION_MESSAGE);
                     hideSelf();
                 }
             });
@@ -157,12 +173,20 @@ public class TicketView extends View {
                         "Showing at Venue: Venue #" + ticket.getScreening().getVenue().getVenueNum() +
                         " (" + ticket.getScreening().getVenue().getTotalSeats() + " seats available)\n" +
                         "Seat allocation: Seat " + ticket.getAllocatedSeat() + "\n" +
-                        "Booked by username: \"" + ticket.getUsername() + "\""));
+                        "Booked by username: \"" + ticket.getUsername() + "\"\n" +
+                        "Ticket code: " + main.data().getTicketCode(ticket)));
                 SpacedJButton delete = new SpacedJButton("Delete", 0, 5, 0, 5);
                 delete.get().addActionListener((e) -> {
                     int decision = JOptionPane.showConfirmDialog(null, "Are you sure you want to delete this ticket?", "Confirmation", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
                     if (decision == 0) {
-                        main.data().deleteTicket(ticket);
+                        try {
+                            main.data().deleteTicket(ticket);
+                        } catch (SQLException ex) {
+                            ex.printStackTrace();
+                            JOptionPane.showMessageDialog(null, String.format("Unable to delete this ticket, it is still booked. Reason:\n%s\nPlease try again.", ex.getMessage()),
+                                    "Unable to Delete!", JOptionPane.ERROR_MESSAGE);
+                            return;
+                        }
                         JOptionPane.showMessageDialog(null, "This ticket has been deleted.", "Ticket Deleted", JOptionPane.INFORMATION_MESSAGE);
                         tickets.remove(ticket);
 
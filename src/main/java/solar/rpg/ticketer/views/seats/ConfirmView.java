@@ -100,8 +100,10 @@ public class ConfirmView extends View {
             // Make sure the user can't spam the button while saving a booking.
             if (!this.makeBooking.isEnabled()) return;
             this.makeBooking.setEnabled(false);
-            main.data().compileBooking();
-            main.updateState(MainView.UIState.INITIAL_BOOKING);
+            // If someone else took a selected seat in the meantime, return to seat selection.
+            if (main.data().compileBooking())
+                main.updateState(MainView.UIState.INITIAL_BOOKING);
+            else main.updateState(MainView.UIState.SEAT_SELECTION);
         });
         SpacedJButton goBack = new SpacedJButton("Back to Seat Selection", 10, 10, 10, 10);
         goBack.get().addActionListener((e) -> main.updateState(MainView.UIState.SEAT_SELECTION));
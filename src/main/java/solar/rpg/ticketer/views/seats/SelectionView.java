@@ -1,7 +1,7 @@
 package solar.rpg.ticketer.views.seats;
 
 import solar.rpg.ticketer.models.Screening;
-import solar.rpg.ticketer.models.Ticket;
+import solar.rpg.ticketer.models.VenueLayout;
 import solar.rpg.ticketer.views.MainView;
 import solar.rpg.ticketer.views.util.SpacedJButton;
 import solar.rpg.ticketer.views.util.View;
@@ -9,11 +9,14 @@ import solar.rpg.ticketer.views.util.View;
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
 import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.sql.Timestamp;
 import java.util.List;
 
 /**
  * SelectionView is the follow-up view after successfully choosing a movie screening, time slot, and number of attendees.
- * This view is made up of a 2D array of seats, equivalent to the dimensions of the venue that the screening is shown at.
+ * This view is made up of a map of seats, laid out like the venue that the screening is shown at, including its aisles.
  * The user, based on their input from BookingView, will need to select the appropriate amount of seats using this view.
  * Seat selection can either be done manually by selecting individual seats or automatically by clicking "auto fill".
  *
@@ -24,6 +27,10 @@ import java.util.List;
  */
 public class SelectionView extends View {
 
+    // Colours of selected seats, unavailable seats, and free seats of each seat class.
+    private static final Color SELECTED_COLOR = new Color(124, 196, 41), TAKEN_COLOR = new Color(227, 102, 89);
+    private static final Color[] CLASS_COLORS = {new Color(238, 238, 238), new Color(240, 214, 140), new Color(150, 190, 235)};
+
     // View Elements
     private SeatSelection seatSelection;
     private JButton confirm;
@@ -71,86 +78,165 @@ public class SelectionView extends View {
     /**
      * SeatSelection is a sub-view that represents the grid of seats that the user can select.
      * It is not in an external class because there is no other sub-views to complement this one.
+     * Seats are painted straight onto the panel rather than being a button each, and only the visible ones are painted,
+     * so a venue with thousands of seats costs about as much to show as a small one. Aisles and gaps are left blank.
      *
      * @author Joshua Skinner
      */
-    private class SeatSelection extends JPanel {
+    private class SeatSelection extends JPanel implements Scrollable {
+
+        // Smallest size of a seat, and the width of the row labels down the left side.
+        private static final int SEAT_WIDTH = 40, SEAT_HEIGHT = 24, LABEL_WIDTH = 32;
+
+        // States that a seat can be in.
+        private static final byte FREE = 0, SELECTED = 1, TAKEN = 2;
 
         // Grid dimension information/state.
         private final int rows;
         private final int cols;
-        private final JButton[][] seatButtons;
+        private final byte[] seatStates;
+        private final Screening selected;
+        private final Timestamp time;
+        private final VenueLayout layout;
 
         SeatSelection() {
             // Determine important variables from previous section.
-            Screening selected = main.data().getSelectedScreening();
-            List<Ticket> existing = main.data().findTicketsByScreeningAndTime(selected.getID(), main.state().getSelectedTime());
-            rows = selected.getVenue().getNoOfRows();
-            cols = selected.getVenue().getNoOfCols();
+            selected = main.data().getSelectedScreening();
+            time = main.state().getSelectedTime();
+            layout = selected.getVenue().getLayout();
+            rows = layout.getRows();
+            cols = layout.getCols();
 
             // Change border title of outer view to reflect user selection.
             mainPanel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createLineBorder(Color.GRAY, 1),
                     "Seating Allocation for \"" + selected.getMovie().getName() + "\" (" + selected.getMovie().getReleaseYear() + ") on "
                             + main.data().friendlyDate(main.state().getSelectedTime()) + ", Venue #" + selected.getVenue().getVenueNum(), TitledBorder.CENTER, TitledBorder.TOP));
 
-            setLayout(new GridLayout(rows, cols));
-            seatButtons = new JButton[rows][cols];
-
-            // Initialise each selectable button.
-            Font buttonFont = new Font("Calibri", Font.PLAIN, 11);
-            for (int row = 0; row < rows; row++)
-                for (int col = 0; col < cols; col++) {
-                    String alloc = main.data().seatArrayPosToAlloc(new int[]{row, col});
-                    SpacedJButton seat = new SpacedJButton(alloc, 24, 2, 24, 2);
-                    seat.get().setFont(buttonFont);
-                    // Check if this seat has been pre-booked.
-                    for (Ticket ticket : existing)
-                        if (ticket.getAllocatedSeat().equals(alloc)) {
-                            seat.get().setBackground(new Color(227, 102, 89));
-                            seat.get().setEnabled(false);
-                            break;
-                        }
-
-                    if (main.state().hasSelectedSeat(alloc)) // Also refresh previous selection if returning from confirmation screen.
-                        seat.get().setBackground(new Color(124, 196, 41));
-
-                    // Configure listener to add and remove this seat from the selection.
-                    seat.get().addActionListener((e) -> {
-                        if (main.state().removeSeatSelection(alloc))
-                            seat.get().setBackground(new JButton().getBackground());
-                        else if (main.state().addSeatSelection(alloc))
-                            seat.get().setBackground(new Color(124, 196, 41));
-                        check();
-                    });
-
-                    seatButtons[row][col] = seat.get();
-                    add(seat);
+            setPreferredSize(new Dimension(LABEL_WIDTH + cols * SEAT_WIDTH, rows * SEAT_HEIGHT));
+            setFont(new Font("Calibri", Font.PLAIN, 11));
+            setToolTipText("");
+            seatStates = new byte[rows * cols];
+            refresh();
+
+            // Configure listener to add and remove seats from the selection.
+            addMouseListener(new MouseAdapter() {
+                @Override
+                public void mouseClicked(MouseEvent e) {
+                    int cell = cellAt(e.getPoint());
+                    if (cell == -1 || seatStates[cell] == TAKEN) return;
+                    String alloc = layout.getSeatLabel(cell);
+                    if (main.state().removeSeatSelection(alloc))
+                        seatStates[cell] = FREE;
+                    else if (main.state().addSeatSelection(alloc))
+                        seatStates[cell] = SELECTED;
+                    else if (main.data().isSeatClaimed(selected, time, cell / cols, cell % cols))
+                        seatStates[cell] = TAKEN; // Someone else got to it first.
+                    repaint();
+                    check();
+                }
+            });
+        }
+
+        /**
+         * @return The current size of a seat, which stretches to fill the view when there is room.
+         */
+        Dimension seatSize() {
+            return new Dimension(Math.max(SEAT_WIDTH, (getWidth() - LABEL_WIDTH) / cols), Math.max(SEAT_HEIGHT, getHeight() / rows));
+        }
+
+        /**
+         * @param point A point on this panel.
+         * @return The seat at that point, or -1 if there is no seat there.
+         */
+        int cellAt(Point point) {
+            Dimension seat = seatSize();
+            int row = point.y / seat.height, col = (point.x - LABEL_WIDTH) / seat.width;
+            if (point.x < LABEL_WIDTH || row >= rows || col >= cols) return -1;
+            int cell = row * cols + col;
+            return layout.isSeat(cell) ? cell : -1;
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            Dimension seat = seatSize();
+            FontMetrics metrics = g.getFontMetrics();
+
+            // Only paint the rows and columns that are visible.
+            Rectangle clip = g.getClipBounds();
+            int firstRow = Math.max(0, clip.y / seat.height), lastRow = Math.min(rows - 1, (clip.y + clip.height) / seat.height);
+            int firstCol = Math.max(0, (clip.x - LABEL_WIDTH) / seat.width), lastCol = Math.min(cols - 1, (clip.x + clip.width - LABEL_WIDTH) / seat.width);
+            for (int row = firstRow; row <= lastRow; row++) {
+                int y = row * seat.height;
+                g.setColor(Color.DARK_GRAY);
+                g.drawString(VenueLayout.rowLabel(row), 4, y + (seat.height + metrics.getAscent()) / 2 - 1);
+                for (int col = firstCol; col <= lastCol; col++) {
+                    int cell = row * cols + col;
+                    if (!layout.isSeat(cell)) continue;
+                    int x = LABEL_WIDTH + col * seat.width;
+                    g.setColor(seatStates[cell] == SELECTED ? SELECTED_COLOR : seatStates[cell] == TAKEN ? TAKEN_COLOR : CLASS_COLORS[layout.getSeatClass(cell).ordinal()]);
+                    g.fillRoundRect(x + 2, y + 2, seat.width - 4, seat.height - 4, 6, 6);
+                    g.setColor(Color.GRAY);
+                    g.drawRoundRect(x + 2, y + 2, seat.width - 4, seat.height - 4, 6, 6);
+
+                    String alloc = layout.getSeatLabel(cell);
+                    if (metrics.stringWidth(alloc) > seat.width - 6) continue;
+                    g.setColor(seatStates[cell] == TAKEN ? Color.WHITE : Color.BLACK);
+                    g.drawString(alloc, x + (seat.width - metrics.stringWidth(alloc)) / 2, y + (seat.height + metrics.getAscent()) / 2 - 1);
                 }
+            }
+        }
+
+        @Override
+        public String getToolTipText(MouseEvent e) {
+            int cell = cellAt(e.getPoint());
+            if (cell == -1) return null;
+            return layout.getSeatLabel(cell) + " (" + layout.getSeatClass(cell).getFriendlyName() + ", " + layout.getSection(cell / cols) + ")";
+        }
+
+        @Override
+        public Dimension getPreferredScrollableViewportSize() {
+            return getPreferredSize();
+        }
+
+        @Override
+        public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+            return orientation == SwingConstants.VERTICAL ? SEAT_HEIGHT : SEAT_WIDTH;
+        }
+
+        @Override
+        public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+            return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportWidth() {
+            // Stretch to fill the view if every seat fits, otherwise scroll.
+            return getParent() instanceof JViewport && getParent().getWidth() > getPreferredSize().width;
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportHeight() {
+            return getParent() instanceof JViewport && getParent().getHeight() > getPreferredSize().height;
         }
 
         /**
          * Discards previous user selection and automatically selects the
-         * correct number of seats. The selector will try to select the seats
-         * up front first. Though, ideally, in a movie-watching scenario, you'd
-         * you'd want to select the seats up back first.
+         * correct number of seats. The best available seats are picked, which
+         * keeps the party together towards the middle of the back rows if possible.
+         *
+         * @see solar.rpg.ticketer.controller.index.BestAvailable
          */
         void autoSelect() {
-            // Automatically select seats based on immediate availability.
             main.state().resetSeatSelection();
-            for (int row = 0; row < rows; row++)
-                for (int col = 0; col < cols; col++) {
-                    JButton seat = seatButtons[row][col];
-                    if (!seat.isEnabled()) continue; // Ignore already-booked seats.
-                    String alloc = main.data().seatArrayPosToAlloc(new int[]{row, col});
-                    main.state().addSeatSelection(alloc);
-
-                    // Stop auto-selecting once a seat has been allocated for each attendee & refresh.
-                    if (main.state().getNumOfSelectedSeats() == main.state().getNoOfAttendees()) {
-                        refresh();
-                        check();
-                        return;
-                    }
-                }
+
+            // Another session could claim one of the picked seats first, in which case pick again.
+            for (int attempt = 0; attempt < 3; attempt++) {
+                List<String> best = main.data().findBestSeats(selected, time, main.state().getNoOfAttendees());
+                if (best.isEmpty() || main.state().addSeatSelections(best)) break;
+            }
+            refresh();
+            check();
         }
 
         /**
@@ -158,15 +244,15 @@ public class SelectionView extends View {
          * selected seats, i.e. after auto-selection or clicking reset.
          */
         void refresh() {
-            for (int row = 0; row < rows; row++)
-                for (int col = 0; col < cols; col++) {
-                    JButton seat = seatButtons[row][col];
-                    if (!seat.isEnabled()) continue; // Ignore already-booked seats.
-                    String alloc = main.data().seatArrayPosToAlloc(new int[]{row, col});
-                    if (main.state().hasSelectedSeat(alloc))
-                        seat.setBackground(new Color(124, 196, 41));
-                    else seat.setBackground(new JButton().getBackground());
-                }
+            for (int cell = 0; cell < seatStates.length; cell++) {
+                if (!layout.isSeat(cell) || seatStates[cell] == TAKEN) continue; // Ignore gaps and already-booked seats.
+                if (main.state().hasSelectedSeat(layout.getSeatLabel(cell))) // Also refresh previous selection if returning from confirmation screen.
+                    seatStates[cell] = SELECTED;
+                else if (main.data().isSeatClaimed(selected, time, cell / cols, cell % cols))
+                    seatStates[cell] = TAKEN; // Booked, or selected in another session since the grid was shown.
+                else seatStates[cell] = FREE;
+            }
+            repaint();
         }
 
         /**
@@ -193,6 +279,6 @@ public class SelectionView extends View {
         } catch (IndexOutOfBoundsException ignored) {
             // It may not exist, but still attempt to remove the previous seat selection view if possible.
         }
-        mainPanel.add(seatSelection, BorderLayout.CENTER, 1);
+        mainPanel.add(new JScrollPane(seatSelection), BorderLayout.CENTER, 1);
     }
 }
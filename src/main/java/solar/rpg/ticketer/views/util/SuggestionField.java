@@ -0,0 +1,79 @@
+package solar.rpg.ticketer.views.util;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A text field with a list of suggestions underneath it, which is refreshed on every keystroke.
+ * Clicking on a suggestion copies it into the text field.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @since 0.1
+ */
+public class SuggestionField extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JTextField input;
+    private final DefaultListModel<String> suggestions;
+
+    /**
+     * @param suggester Provides the suggestions for whatever has been typed so far.
+     */
+    public SuggestionField(Function<String, List<String>> suggester) {
+        setLayout(new BorderLayout(0, 4));
+        input = new JTextField();
+        suggestions = new DefaultListModel<>();
+        JList<String> list = new JList<>(suggestions);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setVisibleRowCount(5);
+        list.setPrototypeCellValue("WWWWWWWWWWWWWWWW");
+
+        // Re-calculate suggestions whenever the text changes.
+        input.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                refresh();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                refresh();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                refresh();
+            }
+
+            private void refresh() {
+                // Defer the update as the document cannot be changed while it is notifying listeners.
+                SwingUtilities.invokeLater(() -> {
+                    suggestions.clear();
+                    suggester.apply(input.getText()).forEach(suggestions::addElement);
+                });
+            }
+        });
+
+        // Copy a chosen suggestion into the text field.
+        list.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting() && list.getSelectedValue() != null)
+                input.setText(list.getSelectedValue());
+        });
+
+        add(input, BorderLayout.NORTH);
+        add(new JScrollPane(list), BorderLayout.CENTER);
+    }
+
+    /**
+     * @return The text that has been typed or chosen.
+     */
+    public String getText() {
+        return input.getText();
+    }
+}
@@ -0,0 +1,142 @@
+package solar.rpg.ticketer;
+
+import solar.rpg.ticketer.data.TicketWriter;
+import solar.rpg.ticketer.models.Movie;
+import solar.rpg.ticketer.models.Screening;
+import solar.rpg.ticketer.models.Ticket;
+import solar.rpg.ticketer.models.Venue;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared test fixtures: screenings that run for as long as any test needs, a ticket writer that stands in for the
+ * database, and a harness that runs the same work on several threads at once.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @since 0.1
+ */
+public final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * @param ID    The screening ID.
+     * @param venue The venue that it is shown in.
+     * @return A screening of a movie called "Movie", which started in 1970 and never ends.
+     */
+    public static Screening screening(int ID, Venue venue) {
+        return screening(ID, venue, "Movie");
+    }
+
+    /**
+     * @param ID    The screening ID.
+     * @param venue The venue that it is shown in.
+     * @param title The movie's title.
+     * @return A screening of a 100 minute drama, which started in 1970 and never ends.
+     */
+    public static Screening screening(int ID, Venue venue, String title) {
+        return new Screening(new Movie(title, "Drama", 100, 2000), venue, new Timestamp(0), new Timestamp(Long.MAX_VALUE / 2), ID, new ArrayList<>());
+    }
+
+    /**
+     * Work that is run on each thread by {@link #runConcurrently(int, Work)}.
+     */
+    public interface Work {
+
+        /**
+         * @param thread The thread's number, starting from 0.
+         */
+        void run(int thread) throws Exception;
+    }
+
+    /**
+     * Runs work on several threads, which are all let go at the same moment so that they race each other.
+     * Anything that a thread throws, including failed assertions, is rethrown once every thread has finished.
+     *
+     * @param threads Number of threads.
+     * @param work    What each thread does.
+     * @return How long the threads took, in seconds, from being let go until the last one finished.
+     */
+    public static double runConcurrently(int threads, Work work) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        try {
+            for (int thread = 0; thread < threads; thread++) {
+                int number = thread;
+                workers.add(pool.submit(() -> {
+                    start.await();
+                    work.run(number);
+                    return null;
+                }));
+            }
+            long started = System.nanoTime();
+            start.countDown();
+            for (Future<?> worker : workers)
+                try {
+                    worker.get();
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof Exception) throw (Exception) ex.getCause();
+                    if (ex.getCause() instanceof Error) throw (Error) ex.getCause();
+                    throw ex;
+                }
+            return (System.nanoTime() - started) / 1e9;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Stands in for the database by keeping the saved tickets in memory. Like the database, it refuses to save a seat
+     * twice, and it can be told to fail.
+     */
+    public static final class MemoryWriter implements TicketWriter {
+
+        private final Set<Ticket> stored = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile int failEvery;
+
+        /**
+         * @param failEvery Every n-th save or delete fails with an SQLException, or 0 if none should.
+         */
+        public void failEvery(int failEvery) {
+            this.failEvery = failEvery;
+        }
+
+        @Override
+        public synchronized void saveTickets(List<Ticket> toSave) throws SQLException {
+            check();
+            for (Ticket ticket : toSave)
+                if (stored.contains(ticket)) throw new SQLException("Duplicate entry for seat " + ticket.getAllocatedSeat());
+            stored.addAll(toSave);
+        }
+
+        @Override
+        public synchronized void deleteTickets(List<Ticket> toDelete) throws SQLException {
+            check();
+            stored.removeAll(toDelete);
+        }
+
+        private void check() throws SQLException {
+            int every = failEvery;
+            if (every != 0 && calls.incrementAndGet() % every == 0)
+                throw new SQLException("Simulated failure");
+        }
+
+        /**
+         * @return The tickets that are saved.
+         */
+        public Set<Ticket> getStored() {
+            return Collections.unmodifiableSet(stored);
+        }
+    }
+}
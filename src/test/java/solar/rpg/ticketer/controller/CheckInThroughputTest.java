@@ -0,0 +1,146 @@
+package solar.rpg.ticketer.controller;
+
+import org.junit.Before;
+import org.junit.Test;
+import solar.rpg.ticketer.Fixtures;
+import solar.rpg.ticketer.controller.index.CheckIns;
+import solar.rpg.ticketer.controller.index.TicketCodes;
+import solar.rpg.ticketer.models.Screening;
+import solar.rpg.ticketer.models.Ticket;
+import solar.rpg.ticketer.models.Venue;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests DataController's check-ins: codes must be genuine, booked, and scanned while their screening is letting
+ * people in. Also benchmarks several kiosks scanning the codes of a full venue over and over at the same time.
+ * Exactly one scan of each ticket may be admitted, and the achieved rate is printed.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @since 0.1
+ */
+public class CheckInThroughputTest {
+
+    private static final int THREADS = 4, ROUNDS = 50;
+
+    // Well below what a single core manages, so that the test only fails if check-ins become much slower.
+    private static final double MINIMUM_PER_SECOND = 5000;
+
+    private Venue venue;
+    private Screening screening;
+    private TicketCodes codes;
+    private DataController controller;
+    private String[] issued;
+
+    @Before
+    public void setUp() throws Exception {
+        venue = new Venue(1, 1, 20, 30);
+        screening = Fixtures.screening(7, venue);
+        // The time slot started ten minutes ago, so its tickets are being checked in.
+        Timestamp date = slotFromNow(-10);
+        codes = new TicketCodes("secret".getBytes(StandardCharsets.UTF_8));
+        controller = new DataController(new Fixtures.MemoryWriter(), codes, Collections.singletonList(screening));
+
+        // Book every seat of the venue, each under its own username.
+        issued = new String[venue.getTotalSeats()];
+        for (int seatID = 0; seatID < issued.length; seatID++) {
+            String username = "user" + seatID;
+            assertTrue(controller.book(screening, date, Collections.singletonList(venue.getSeatLabel(seatID)), username).isEmpty());
+            issued[seatID] = controller.getTicketCode(new Ticket(screening, date, venue.getSeatLabel(seatID), username));
+        }
+    }
+
+    @Test
+    public void tamperedCodesAreRejected() {
+        TicketCodes.Code code = codes.verify(issued[0]);
+        assertNotNull(code);
+        assertEquals(0, code.getSeatID());
+        assertTrue(code.isFor("user0"));
+        assertFalse(code.isFor("user1"));
+
+        char[] tampered = issued[0].toCharArray();
+        tampered[3] = tampered[3] == 'A' ? 'B' : 'A';
+        assertEquals(CheckIns.Result.INVALID, controller.checkIn(new String(tampered)).getResult());
+        assertNull(new TicketCodes("another_secret".getBytes(StandardCharsets.UTF_8)).verify(issued[0]));
+    }
+
+    @Test
+    public void cancelledTicketsAreNotAdmitted() throws Exception {
+        Ticket ticket = controller.findTicketsByUsername("user0").get(0);
+        assertEquals(1, controller.deleteTickets(Collections.singletonList(ticket)));
+        assertEquals(CheckIns.Result.NOT_BOOKED, controller.checkIn(issued[0]).getResult());
+
+        // Someone else booking the seat does not make the old code valid again.
+        assertTrue(controller.book(screening, ticket.getSelectedDate(), Collections.singletonList(ticket.getAllocatedSeat()), "someone").isEmpty());
+        assertEquals(CheckIns.Result.NOT_BOOKED, controller.checkIn(issued[0]).getResult());
+    }
+
+    @Test
+    public void ticketsAreOnlyAdmittedWhileTheirScreeningIsLettingPeopleIn() throws Exception {
+        // Two hours early is too early, and once the 100 minute movie has finished it is too late.
+        Timestamp later = slotFromNow(120);
+        String early = bookAndIssue(later), late = bookAndIssue(slotFromNow(-101));
+        for (int scan = 0; scan < 2; scan++) {
+            CheckIns.Outcome tooEarly = controller.checkIn(early);
+            assertEquals(CheckIns.Result.TOO_EARLY, tooEarly.getResult());
+            assertEquals(later, tooEarly.getTicket().getSelectedDate());
+            assertEquals(CheckIns.Result.FINISHED, controller.checkIn(late).getResult());
+        }
+
+        // Doors open an hour before the movie starts, and the ticket is handed back so staff can see where to go.
+        CheckIns.Outcome admitted = controller.checkIn(bookAndIssue(slotFromNow(50)));
+        assertEquals(CheckIns.Result.ADMITTED, admitted.getResult());
+        assertEquals(venue.getSeatLabel(0), admitted.getTicket().getAllocatedSeat());
+        assertSame(screening, admitted.getTicket().getScreening());
+        assertNull(controller.checkIn("not a code").getTicket());
+    }
+
+    /**
+     * @param minutes Minutes from now, rounded down to the minute.
+     * @return The time slot.
+     */
+    private static Timestamp slotFromNow(long minutes) {
+        return new Timestamp(TimeUnit.MINUTES.toMillis(TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis()) + minutes));
+    }
+
+    /**
+     * Books the first seat of a time slot, and issues its ticket code.
+     */
+    private String bookAndIssue(Timestamp date) throws Exception {
+        assertTrue(controller.book(screening, date, Collections.singletonList(venue.getSeatLabel(0)), "user0").isEmpty());
+        return controller.getTicketCode(new Ticket(screening, date, venue.getSeatLabel(0), "user0"));
+    }
+
+    @Test
+    public void concurrentCheckInsAdmitEachTicketOnce() throws Exception {
+        AtomicIntegerArray admissions = new AtomicIntegerArray(issued.length);
+        AtomicInteger rejected = new AtomicInteger();
+        double seconds = Fixtures.runConcurrently(THREADS, thread -> {
+            for (int round = 0; round < ROUNDS; round++)
+                for (int seatID = 0; seatID < issued.length; seatID++) {
+                    CheckIns.Result result = controller.checkIn(issued[seatID]).getResult();
+                    if (result == CheckIns.Result.ADMITTED) admissions.incrementAndGet(seatID);
+                    else {
+                        assertEquals(CheckIns.Result.ALREADY_USED, result);
+                        rejected.incrementAndGet();
+                    }
+                }
+        });
+
+        int scans = THREADS * ROUNDS * issued.length;
+        System.out.println(String.format(">> %d check-ins on %d threads took %.2fs, %.0f per second", scans, THREADS, seconds, scans / seconds));
+
+        for (int seatID = 0; seatID < issued.length; seatID++)
+            assertEquals("Seat " + venue.getSeatLabel(seatID) + " should be admitted exactly once", 1, admissions.get(seatID));
+        assertEquals(scans - issued.length, rejected.get());
+        assertTrue("Check-ins are much slower than expected", scans / seconds > MINIMUM_PER_SECOND);
+    }
+}
@@ -0,0 +1,157 @@
+package solar.rpg.ticketer.controller;
+
+import org.junit.Before;
+import org.junit.Test;
+import solar.rpg.ticketer.Fixtures;
+import solar.rpg.ticketer.controller.index.TicketCodes;
+import solar.rpg.ticketer.data.PartialDeleteException;
+import solar.rpg.ticketer.data.TicketWriter;
+import solar.rpg.ticketer.models.Screening;
+import solar.rpg.ticketer.models.Ticket;
+import solar.rpg.ticketer.models.Venue;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Stress tests DataController's bookings and cancellations: many sessions booking and cancelling seats of a few hot
+ * time slots at the same time, while some of the writes to the database fail. Every booking and cancellation that
+ * succeeded must be reflected in every index, and every one that failed must have left no trace.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @since 0.1
+ */
+public class ConcurrentBookingTest {
+
+    private static final int THREADS = 8, OPERATIONS = 10000, USERNAMES = 50;
+
+    private Venue venue;
+    private List<Screening> screenings;
+    private Timestamp[] times;
+    private Fixtures.MemoryWriter writer;
+    private DataController controller;
+
+    @Before
+    public void setUp() {
+        venue = new Venue(1, 1, 10, 20);
+        screenings = new ArrayList<>();
+        for (int ID = 0; ID < 4; ID++)
+            screenings.add(Fixtures.screening(ID, venue));
+        times = new Timestamp[]{new Timestamp(60000L * 1000), new Timestamp(60000L * 2000)};
+        writer = new Fixtures.MemoryWriter();
+        controller = new DataController(writer, new TicketCodes("secret".getBytes(StandardCharsets.UTF_8)), screenings);
+    }
+
+    @Test
+    public void concurrentBookingsAndCancellationsAreNeverLost() throws Exception {
+        writer.failEvery(7);
+        AtomicInteger booked = new AtomicInteger(), cancelled = new AtomicInteger(), failed = new AtomicInteger();
+        Fixtures.runConcurrently(THREADS, thread -> {
+            Random random = new Random(thread);
+            for (int i = 0; i < OPERATIONS; i++) {
+                Screening screening = screenings.get(random.nextInt(screenings.size()));
+                Timestamp date = times[random.nextInt(times.length)];
+                int seatID = random.nextInt(venue.getTotalSeats());
+                String seat = venue.getSeatLabel(seatID);
+                // Each seat is always booked under the same username, so that a cancellation matches the booked ticket.
+                String username = "user" + seatID % USERNAMES;
+                try {
+                    if (random.nextBoolean()) {
+                        // Book the seat; this books nothing if it is already booked.
+                        if (controller.book(screening, date, Collections.singletonList(seat), username).isEmpty())
+                            booked.incrementAndGet();
+                    } else
+                        cancelled.addAndGet(controller.deleteTickets(Collections.singletonList(new Ticket(screening, date, seat, username))));
+                } catch (SQLException ex) {
+                    failed.incrementAndGet();
+                }
+            }
+        });
+
+        int expected = booked.get() - cancelled.get();
+        assertTrue("The test should book more than it cancels", expected > 0);
+        assertTrue("Some writes should fail", failed.get() > 0);
+
+        int occupied = 0, inTimeline = 0, remaining = 0;
+        for (Screening screening : screenings)
+            for (Timestamp date : times) {
+                inTimeline += controller.findTicketsByScreeningAndTime(screening.getID(), date).size();
+                remaining += controller.calculateNumberOfAvailableSeats(screening, date);
+
+                // Every booked seat must be claimed, and no failed booking may have left a seat claimed.
+                for (int row = 0; row < venue.getNoOfRows(); row++)
+                    for (int col = 0; col < venue.getNoOfCols(); col++) {
+                        // The database must agree with what is loaded.
+                        boolean taken = controller.isSeatTaken(screening, date, row, col);
+                        assertEquals(taken, controller.isSeatClaimed(screening, date, row, col));
+                        assertEquals(taken, writer.getStored().contains(new Ticket(screening, date, venue.getSeatLabel(venue.getSeatID(row, col)), "")));
+                        if (taken) occupied++;
+                    }
+            }
+        assertEquals(expected, occupied);
+        assertEquals(expected, inTimeline);
+        assertEquals(expected, writer.getStored().size());
+        assertEquals(screenings.size() * times.length * venue.getTotalSeats() - expected, remaining);
+
+        int byUsername = 0;
+        for (int user = 0; user < USERNAMES; user++)
+            byUsername += controller.findTicketsByUsername("user" + user).size();
+        assertEquals(expected, byUsername);
+    }
+
+    @Test
+    public void partlyDeletedCancellationOnlyFreesTheDeletedSeats() throws Exception {
+        // The first venue's tickets are deleted, and then the second venue's shard fails.
+        Venue other = new Venue(2, 1, 10, 20);
+        Screening elsewhere = Fixtures.screening(9, other);
+        List<Screening> catalog = new ArrayList<>(screenings);
+        catalog.add(elsewhere);
+        DataController sharded = new DataController(new TicketWriter() {
+            @Override
+            public void saveTickets(List<Ticket> toSave) throws SQLException {
+                writer.saveTickets(toSave);
+            }
+
+            @Override
+            public void deleteTickets(List<Ticket> toDelete) throws SQLException {
+                List<Ticket> first = new ArrayList<>();
+                for (Ticket ticket : toDelete)
+                    if (ticket.getScreening().getVenue() == venue) first.add(ticket);
+                writer.deleteTickets(first);
+                if (first.size() != toDelete.size())
+                    throw new PartialDeleteException(new SQLException("Shard is down"), first);
+            }
+        }, new TicketCodes("secret".getBytes(StandardCharsets.UTF_8)), catalog);
+
+        Timestamp date = times[0];
+        assertTrue(sharded.book(screenings.get(0), date, Arrays.asList("A1", "A2"), "user").isEmpty());
+        assertTrue(sharded.book(elsewhere, date, Arrays.asList("B1", "B2"), "user").isEmpty());
+        List<Ticket> all = sharded.findTicketsByUsername("user");
+        assertEquals(4, all.size());
+
+        try {
+            sharded.deleteTickets(all);
+            fail("The second shard should have failed");
+        } catch (PartialDeleteException ex) {
+            assertEquals(2, ex.getDeleted().size());
+        }
+
+        // Only the tickets that were deleted are gone from memory too; the others can still be cancelled.
+        assertFalse(sharded.isSeatTaken(screenings.get(0), date, 0, 0));
+        assertFalse(sharded.isSeatClaimed(screenings.get(0), date, 0, 1));
+        assertTrue(sharded.isSeatTaken(elsewhere, date, 1, 0));
+        assertEquals(2, sharded.findTicketsByUsername("user").size());
+        assertEquals(2, writer.getStored().size());
+        assertTrue(sharded.book(screenings.get(0), date, Collections.singletonList("A1"), "someone").isEmpty());
+    }
+}
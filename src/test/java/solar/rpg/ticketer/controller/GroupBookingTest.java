@@ -0,0 +1,141 @@
+package solar.rpg.ticketer.controller;
+
+import org.junit.Before;
+import org.junit.Test;
+import solar.rpg.ticketer.Fixtures;
+import solar.rpg.ticketer.controller.index.BestAvailable;
+import solar.rpg.ticketer.controller.index.TicketCodes;
+import solar.rpg.ticketer.models.Screening;
+import solar.rpg.ticketer.models.Showtime;
+import solar.rpg.ticketer.models.Ticket;
+import solar.rpg.ticketer.models.Venue;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests booking a party of 500 at the best of 36 showtimes of a large venue, most of which are half booked already.
+ * The showtime that splits the party the least must be picked, a seat that is taken while the party is being booked
+ * must make it search again, and the whole booking must take well under a second.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @since 0.1
+ */
+public class GroupBookingTest {
+
+    private static final int PARTY = 500, SCREENINGS = 6, TIMES = 6, EMPTY_SHOWTIME = 17;
+    private static final long TIME_LIMIT_MILLIS = 1000;
+
+    private Venue venue;
+    private List<Screening> screenings;
+    private List<Showtime> showtimes;
+    private Fixtures.MemoryWriter writer;
+
+    @Before
+    public void setUp() {
+        venue = new Venue(1, 1, 40, 60);
+        screenings = new ArrayList<>();
+        showtimes = new ArrayList<>();
+        for (int ID = 0; ID < SCREENINGS; ID++) {
+            Screening screening = Fixtures.screening(ID, venue, "Movie " + ID);
+            screenings.add(screening);
+            for (int time = 0; time < TIMES; time++)
+                showtimes.add(new Showtime(screening, new Timestamp(60000L * 1000 * (time + 1))));
+        }
+        writer = new Fixtures.MemoryWriter();
+    }
+
+    /**
+     * Books half of the seats of every showtime at random, except for one showtime that is left empty.
+     */
+    private void bookHalf(DataController controller) throws Exception {
+        for (int i = 0; i < showtimes.size(); i++) {
+            if (i == EMPTY_SHOWTIME) continue;
+            Random random = new Random(i);
+            List<String> seats = new ArrayList<>();
+            for (int seatID = 0; seatID < venue.getTotalSeats(); seatID++)
+                if (random.nextBoolean()) seats.add(venue.getSeatLabel(seatID));
+            Showtime showtime = showtimes.get(i);
+            assertTrue(controller.book(showtime.getScreening(), showtime.getDate(), seats, "earlier").isEmpty());
+        }
+    }
+
+    @Test
+    public void partyIsBookedAtTheBestShowtime() throws Exception {
+        DataController controller = new DataController(writer, new TicketCodes("secret".getBytes(StandardCharsets.UTF_8)), screenings);
+        bookHalf(controller);
+
+        long started = System.nanoTime();
+        List<Ticket> booked = controller.bookGroup(showtimes, PARTY, "party");
+        long millis = (System.nanoTime() - started) / 1000000;
+        System.out.println(String.format(">> Booked %d seats at the best of %d showtimes in %dms", PARTY, showtimes.size(), millis));
+
+        // The empty showtime fits the party in the fewest blocks, at exactly the seats that it would be allocated on its own.
+        Showtime best = showtimes.get(EMPTY_SHOWTIME);
+        BestAvailable.Allocation expected = BestAvailable.allocate(new BitSet(), venue.getNoOfRows(), venue.getNoOfCols(), PARTY);
+        assertEquals(PARTY, booked.size());
+        Set<String> seats = new HashSet<>();
+        for (Ticket ticket : booked) {
+            assertSame(best.getScreening(), ticket.getScreening());
+            assertEquals(best.getDate(), ticket.getSelectedDate());
+            seats.add(ticket.getAllocatedSeat());
+        }
+        Set<String> expectedSeats = new HashSet<>();
+        for (int seatID : expected.getSeatIDs())
+            expectedSeats.add(venue.getSeatLabel(seatID));
+        assertEquals(expectedSeats, seats);
+        assertEquals(venue.getTotalSeats() - PARTY, controller.calculateNumberOfAvailableSeats(best.getScreening(), best.getDate()));
+        assertTrue(writer.getStored().containsAll(booked));
+        assertTrue("Booking the party took " + millis + "ms", millis < TIME_LIMIT_MILLIS);
+
+        // A party larger than the seats that are left cannot be booked there.
+        assertTrue(controller.bookGroup(Collections.singletonList(best), venue.getTotalSeats() - PARTY + 1, "too many").isEmpty());
+    }
+
+    @Test
+    public void partySearchesAgainIfASeatIsTakenWhileBooking() throws Exception {
+        // Another session takes one of the picked seats just before the party's seats are claimed, but only the first time.
+        List<String> stolen = new ArrayList<>();
+        DataController controller = new DataController(writer, new TicketCodes("secret".getBytes(StandardCharsets.UTF_8)), screenings) {
+            @Override
+            public List<String> claimSeats(Screening screening, Timestamp date, Collection<String> seats) {
+                if (stolen.isEmpty()) {
+                    String seat = seats.iterator().next();
+                    assertTrue(claimSeat(screening, date, seat));
+                    stolen.add(seat);
+                }
+                return super.claimSeats(screening, date, seats);
+            }
+        };
+        bookHalf(controller);
+
+        long started = System.nanoTime();
+        List<Ticket> booked = controller.bookGroup(showtimes, PARTY, "party");
+        long millis = (System.nanoTime() - started) / 1000000;
+
+        // The second search still picks the empty showtime, but around the taken seat, which stays with the other session.
+        assertEquals(1, stolen.size());
+        assertEquals(PARTY, booked.size());
+        Showtime best = showtimes.get(EMPTY_SHOWTIME);
+        for (Ticket ticket : booked) {
+            assertSame(best.getScreening(), ticket.getScreening());
+            assertNotEquals(stolen.get(0), ticket.getAllocatedSeat());
+        }
+        int seatID = venue.getSeatID(stolen.get(0)), row = seatID / venue.getNoOfCols(), col = seatID % venue.getNoOfCols();
+        assertTrue(controller.isSeatClaimed(best.getScreening(), best.getDate(), row, col));
+        assertFalse(controller.isSeatTaken(best.getScreening(), best.getDate(), row, col));
+        assertEquals(venue.getTotalSeats() - PARTY, controller.calculateNumberOfAvailableSeats(best.getScreening(), best.getDate()));
+
+        // Nothing is left claimed from the first attempt.
+        int claimed = 0;
+        for (int r = 0; r < venue.getNoOfRows(); r++)
+            for (int c = 0; c < venue.getNoOfCols(); c++)
+                if (controller.isSeatClaimed(best.getScreening(), best.getDate(), r, c)) claimed++;
+        assertEquals(PARTY + 1, claimed);
+        assertTrue("Booking the party took " + millis + "ms", millis < TIME_LIMIT_MILLIS);
+    }
+}
@@ -0,0 +1,108 @@
+package solar.rpg.ticketer.controller;
+
+import org.junit.Before;
+import org.junit.Test;
+import solar.rpg.ticketer.Fixtures;
+import solar.rpg.ticketer.controller.index.OccupancyCubes;
+import solar.rpg.ticketer.controller.index.TicketCodes;
+import solar.rpg.ticketer.models.Screening;
+import solar.rpg.ticketer.models.ScreeningTime;
+import solar.rpg.ticketer.models.Venue;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the offered seats of the occupancy report cover every time slot that booked seats are counted for:
+ * those that are showing right now, and those that have tickets but are not in the schedule. No cell may ever have
+ * more seats booked than offered.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @since 0.1
+ */
+public class OccupancyTest {
+
+    private Venue venue;
+    private Screening screening;
+    private Timestamp showing, later;
+    private DataController controller;
+
+    @Before
+    public void setUp() {
+        venue = new Venue(1, 1, 10, 20);
+        screening = Fixtures.screening(1, venue);
+        // The 100 minute movie started 10 minutes ago, and is shown again in an hour.
+        showing = slotFromNow(-10);
+        later = slotFromNow(60);
+        screening.getScreeningTimes().add(timeOf(showing));
+        screening.getScreeningTimes().add(timeOf(later));
+        controller = new DataController(new Fixtures.MemoryWriter(), new TicketCodes("secret".getBytes(StandardCharsets.UTF_8)), Collections.singletonList(screening));
+    }
+
+    @Test
+    public void timeSlotsThatAreShowingAreOffered() throws Exception {
+        List<String> seats = new ArrayList<>();
+        for (int seatID = 0; seatID < venue.getTotalSeats(); seatID++)
+            seats.add(venue.getSeatLabel(seatID));
+        assertTrue(controller.book(screening, showing, seats, "user").isEmpty());
+
+        // This week's time slot, which is still showing, and the same time slot in one and two weeks.
+        OccupancyCubes offered = controller.calculateOfferedSeats();
+        ZonedDateTime at = zoned(showing);
+        assertEquals(3L * venue.getTotalSeats(), offered.ofVenue(venue.getVenueNum(), at.getDayOfWeek(), at.getHour()));
+        assertNoCellIsOverbooked(controller.getBookedSeats(), offered);
+    }
+
+    @Test
+    public void timeSlotsBeyondTheScheduleAreOffered() throws Exception {
+        // E.g. booked before the booking horizon was lowered, two days off the weekly schedule.
+        Timestamp beyond = slotFromNow(TimeUnit.DAYS.toMinutes(30));
+        assertTrue(controller.book(screening, beyond, Collections.singletonList(venue.getSeatLabel(0)), "user").isEmpty());
+
+        OccupancyCubes offered = controller.calculateOfferedSeats();
+        ZonedDateTime at = zoned(beyond);
+        assertEquals(venue.getTotalSeats(), offered.ofVenue(venue.getVenueNum(), at.getDayOfWeek(), at.getHour()));
+        assertNoCellIsOverbooked(controller.getBookedSeats(), offered);
+    }
+
+    private static void assertNoCellIsOverbooked(OccupancyCubes booked, OccupancyCubes offered) {
+        for (int venueNum : booked.venues())
+            for (DayOfWeek day : DayOfWeek.values())
+                for (int hour = 0; hour < 24; hour++)
+                    assertTrue(day + " at " + hour, booked.ofVenue(venueNum, day, hour) <= offered.ofVenue(venueNum, day, hour));
+        for (String movie : booked.movies())
+            for (DayOfWeek day : DayOfWeek.values())
+                assertTrue(movie + " on " + day, booked.ofMovie(movie, day) <= offered.ofMovie(movie, day));
+    }
+
+    /**
+     * @param minutes Minutes from now, rounded down to the minute.
+     * @return The time slot.
+     */
+    private static Timestamp slotFromNow(long minutes) {
+        return new Timestamp(TimeUnit.MINUTES.toMillis(TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis()) + minutes));
+    }
+
+    private static ZonedDateTime zoned(Timestamp date) {
+        return Instant.ofEpochMilli(date.getTime()).atZone(ZoneId.systemDefault());
+    }
+
+    /**
+     * @return The weekly screening time that a time slot is an occurrence of.
+     */
+    private static ScreeningTime timeOf(Timestamp date) {
+        ZonedDateTime at = zoned(date);
+        return new ScreeningTime(at.getDayOfWeek().name(), String.format("%02d:%02d", at.getHour(), at.getMinute()));
+    }
+}
@@ -0,0 +1,143 @@
+package solar.rpg.ticketer.controller.index;
+
+import org.junit.Test;
+import solar.rpg.ticketer.models.VenueLayout;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests how the best available seats are found: runs of free seats within rows, the fallback of splitting a party
+ * that does not fit in any row, and skipping the gaps of a layout. Also benchmarks picking seats in a 5,000 seat
+ * venue that is mostly booked, and prints the achieved rate.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @since 0.1
+ */
+public class BestAvailableTest {
+
+    private static final int BENCHMARK_ROWS = 50, BENCHMARK_COLS = 100, BENCHMARK_PICKS = 5000;
+
+    // Well below what a single core manages, so that the test only fails if picking seats becomes much slower.
+    private static final double MINIMUM_PER_SECOND = 1000;
+
+    @Test
+    public void partySitsTogetherClosestToTheIdealSeat() {
+        // The ideal seat is two thirds of the way back and in the middle: row 3 of 5, between columns 4 and 5.
+        BestAvailable.Allocation pick = BestAvailable.allocate(new BitSet(), 5, 10, 4);
+        assertTrue(pick.isFound());
+        assertEquals(1, pick.getBlocks());
+        assertArrayEquals(new int[]{33, 34, 35, 36}, pick.getSeatIDs());
+
+        // With the middle of that row taken, the middle of the row in front is closer than the side of the same row.
+        BitSet taken = new BitSet();
+        taken.set(34, 37);
+        assertArrayEquals(new int[]{23, 24, 25, 26}, BestAvailable.find(taken, 5, 10, 4));
+
+        // Once the row in front is full too, the row behind still beats the side of the ideal row.
+        taken.set(20, 30);
+        assertArrayEquals(new int[]{43, 44, 45, 46}, BestAvailable.find(taken, 5, 10, 4));
+    }
+
+    @Test
+    public void runsAreFoundAcrossWordsButNotAcrossRows() {
+        // One row of 200 seats, with a single run of free seats that spans two 64-seat words.
+        BitSet taken = new BitSet();
+        taken.set(0, 200);
+        taken.clear(60, 71);
+        assertArrayEquals(new int[]{66, 67, 68, 69, 70}, BestAvailable.find(taken, 1, 200, 5));
+        assertTrue(BestAvailable.fitsTogether(taken, 1, 200, 11));
+        assertFalse(BestAvailable.fitsTogether(taken, 1, 200, 12));
+
+        // The end of one row and the start of the next have consecutive seat IDs, but are not adjacent.
+        taken = new BitSet();
+        taken.set(0, 20);
+        taken.clear(8, 12);
+        BestAvailable.Allocation pick = BestAvailable.allocate(taken, 2, 10, 4);
+        assertTrue(pick.isFound());
+        assertEquals(2, pick.getBlocks());
+        assertEquals(setOf(8, 9, 10, 11), setOf(pick.getSeatIDs()));
+        assertFalse(BestAvailable.fitsTogether(taken, 2, 10, 3));
+    }
+
+    @Test
+    public void partyIsSplitOverTheLongestRunsWhenNoRowFitsIt() {
+        // Row 0 has runs of 3 and 1, row 1 has a run of 2 and row 2 is full.
+        BitSet taken = new BitSet();
+        taken.set(0, 30);
+        taken.clear(0, 3);
+        taken.clear(5);
+        taken.clear(14, 16);
+        BestAvailable.Allocation pick = BestAvailable.allocate(taken, 3, 10, 5);
+        assertEquals(2, pick.getBlocks());
+        assertEquals(setOf(0, 1, 2, 14, 15), setOf(pick.getSeatIDs()));
+
+        // Splitting is always worse than sitting together.
+        assertTrue(BestAvailable.allocate(new BitSet(), 3, 10, 5).compareTo(pick) < 0);
+
+        // With fewer free seats than the party, nothing is picked.
+        BestAvailable.Allocation none = BestAvailable.allocate(taken, 3, 10, 7);
+        assertFalse(none.isFound());
+        assertEquals(0, none.getSeatIDs().length);
+        assertTrue(pick.compareTo(none) < 0);
+    }
+
+    @Test
+    public void gapsAreNeverPicked() {
+        // Three rows of four seats, an aisle of two, and four more seats.
+        VenueLayout layout = VenueLayout.parse("Stalls:3*4s2.4s");
+        int rows = layout.getRows(), cols = layout.getCols();
+
+        // Without the gaps marked, the aisle would look like free seats.
+        assertEquals(1, BestAvailable.allocate(new BitSet(), rows, cols, 6).getBlocks());
+
+        BestAvailable.Allocation pick = BestAvailable.allocate(layout.markGaps(new BitSet()), rows, cols, 6);
+        assertTrue(pick.isFound());
+        assertEquals(2, pick.getBlocks());
+        for (int seatID : pick.getSeatIDs())
+            assertTrue("Cell " + seatID + " is not a seat", layout.isSeat(seatID));
+
+        // Every seat can still be picked, and not one more.
+        assertEquals(layout.getTotalSeats(), BestAvailable.find(layout.markGaps(new BitSet()), rows, cols, layout.getTotalSeats()).length);
+        assertEquals(0, BestAvailable.find(layout.markGaps(new BitSet()), rows, cols, layout.getTotalSeats() + 1).length);
+    }
+
+    @Test
+    public void benchmarkLargeVenue() {
+        // A 5,000 seat venue with three quarters of its seats booked at random.
+        int seats = BENCHMARK_ROWS * BENCHMARK_COLS;
+        Random random = new Random(5000);
+        BitSet taken = new BitSet(seats);
+        for (int seatID = 0; seatID < seats; seatID++)
+            if (random.nextInt(4) != 0) taken.set(seatID);
+
+        long started = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < BENCHMARK_PICKS; i++) {
+            int party = 1 + i % 10;
+            int[] pick = BestAvailable.find(taken, BENCHMARK_ROWS, BENCHMARK_COLS, party);
+            assertEquals(party, pick.length);
+            found += pick.length;
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.println(String.format(">> %d picks in a %d seat venue took %.2fs, %.0f per second", BENCHMARK_PICKS, seats, seconds, BENCHMARK_PICKS / seconds));
+
+        // Every pick is made of distinct, free seats.
+        int[] pick = BestAvailable.find(taken, BENCHMARK_ROWS, BENCHMARK_COLS, 10);
+        assertEquals(10, setOf(pick).cardinality());
+        for (int seatID : pick)
+            assertFalse(taken.get(seatID));
+        assertTrue(found > 0);
+        assertTrue("Picking seats is much slower than expected", BENCHMARK_PICKS / seconds > MINIMUM_PER_SECOND);
+    }
+
+    private static BitSet setOf(int... seatIDs) {
+        BitSet result = new BitSet();
+        Arrays.stream(seatIDs).forEach(result::set);
+        return result;
+    }
+}
@@ -0,0 +1,125 @@
+package solar.rpg.ticketer.controller.index;
+
+import org.junit.Before;
+import org.junit.Test;
+import solar.rpg.ticketer.Fixtures;
+import solar.rpg.ticketer.models.Screening;
+import solar.rpg.ticketer.models.Ticket;
+import solar.rpg.ticketer.models.Venue;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that cancelling a ticket takes away exactly the weight that it added to the popularity scores, however long
+ * after booking it is cancelled, and that the top lists stay in order as scores go up and down. Time only passes
+ * when a test steps the clock.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @since 0.1
+ */
+public class PopularityIndexTest {
+
+    private static final long HALF_LIFE_MILLIS = 100;
+
+    private Venue venue;
+    private Screening screening;
+    private Timestamp date;
+    private long now;
+    private PopularityIndex popularity;
+
+    @Before
+    public void setUp() {
+        venue = new Venue(1, 1, 10, 20);
+        screening = Fixtures.screening(1, venue);
+        date = new Timestamp(60000L * 1000);
+        now = 60000L * 500;
+        popularity = new PopularityIndex(HALF_LIFE_MILLIS, 10, () -> now);
+    }
+
+    private Ticket ticket(int seatID) {
+        return new Ticket(screening, date, venue.getSeatLabel(seatID), "user" + seatID);
+    }
+
+    @Test
+    public void cancellingAnOldBookingLeavesNewerOnes() {
+        popularity.booked(ticket(0));
+        now += 3 * HALF_LIFE_MILLIS;
+        popularity.booked(ticket(1));
+        assertEquals(1.125, popularity.scoreOfScreening(screening.getID()), 1e-9);
+
+        // Only the newer booking is left, and it was made just now.
+        popularity.cancelled(ticket(0));
+        assertEquals(1, popularity.scoreOfScreening(screening.getID()), 1e-9);
+        assertEquals(1, popularity.scoreOfMovie("Movie"), 1e-9);
+
+        popularity.cancelled(ticket(1));
+        assertEquals(0, popularity.scoreOfScreening(screening.getID()), 1e-9);
+        assertEquals(Collections.emptyList(), popularity.topScreenings(10));
+    }
+
+    @Test
+    public void loadedTicketsAreWeighedAtTheLandmark() {
+        popularity.loaded(ticket(0));
+        popularity.loaded(ticket(1));
+        now += 2 * HALF_LIFE_MILLIS;
+        popularity.booked(ticket(2));
+
+        popularity.cancelled(ticket(2));
+        popularity.cancelled(ticket(0));
+        // One loaded ticket is left, which has decayed for two half-lives.
+        assertEquals(0.25, popularity.scoreOfScreening(screening.getID()), 1e-9);
+
+        // Cancelling a ticket that is not counted, or twice, takes nothing away.
+        popularity.cancelled(ticket(0));
+        popularity.cancelled(ticket(3));
+        assertEquals(0.25, popularity.scoreOfScreening(screening.getID()), 1e-9);
+    }
+
+    @Test
+    public void expiredTimeSlotsStillCountButCannotBeCancelled() {
+        popularity.booked(ticket(0));
+        popularity.expire(screening.getID(), date.getTime());
+        popularity.cancelled(ticket(0));
+        assertEquals(Collections.singletonList(screening.getID()), popularity.topScreenings(10));
+    }
+
+    @Test
+    public void scoresStayComparableAcrossRescaling() {
+        popularity.booked(ticket(0));
+        // Far enough ahead that every score is scaled down to a new landmark.
+        now += 100 * HALF_LIFE_MILLIS;
+        popularity.booked(ticket(1));
+        assertEquals(1, popularity.scoreOfScreening(screening.getID()), 1e-9);
+
+        popularity.cancelled(ticket(1));
+        assertEquals(Collections.emptyList(), popularity.topScreenings(10));
+    }
+
+    @Test
+    public void entryThatGoesDownIsOvertakenFromOutsideTheTopList() {
+        popularity = new PopularityIndex(HALF_LIFE_MILLIS, 1, () -> now);
+        Screening first = Fixtures.screening(1, venue, "A"), second = Fixtures.screening(2, venue, "B");
+        for (int seatID = 0; seatID < 5; seatID++)
+            popularity.loaded(new Ticket(first, date, venue.getSeatLabel(seatID), "user"));
+        for (int seatID = 0; seatID < 3; seatID++)
+            popularity.loaded(new Ticket(second, date, venue.getSeatLabel(seatID), "user"));
+        assertEquals(Collections.singletonList("A"), popularity.topMovies(1));
+
+        // With 1 seat left, A falls behind B, which was not in the top list.
+        for (int seatID = 0; seatID < 4; seatID++)
+            popularity.cancelled(new Ticket(first, date, venue.getSeatLabel(seatID), "user"));
+        assertEquals(Collections.singletonList("B"), popularity.topMovies(1));
+        assertEquals(Collections.singletonList(2), popularity.topScreenings(1));
+
+        // Going up again puts it back in front.
+        now += HALF_LIFE_MILLIS;
+        for (int seatID = 5; seatID < 7; seatID++)
+            popularity.booked(new Ticket(first, date, venue.getSeatLabel(seatID), "user"));
+        assertEquals(Collections.singletonList("A"), popularity.topMovies(1));
+        assertEquals(Collections.singletonList(1), popularity.topScreenings(10));
+    }
+}
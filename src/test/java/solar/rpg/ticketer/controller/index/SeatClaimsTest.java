@@ -0,0 +1,129 @@
+package solar.rpg.ticketer.controller.index;
+
+import org.junit.Before;
+import org.junit.Test;
+import solar.rpg.ticketer.Fixtures;
+import solar.rpg.ticketer.models.Screening;
+import solar.rpg.ticketer.models.Venue;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that claiming several seats at once is all or nothing, even while many sessions race for the same seats,
+ * and that a failed claim reports exactly the seats that were in the way.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @since 0.1
+ */
+public class SeatClaimsTest {
+
+    private static final int THREADS = 8, ATTEMPTS = 20000;
+    private static final long DATE = 60000L * 1000;
+
+    private Venue venue;
+    private Screening screening;
+    private SeatClaims claims;
+
+    @Before
+    public void setUp() {
+        // 200 seats, so a group of seats often spans more than one 64-seat word.
+        venue = new Venue(1, 1, 10, 20);
+        screening = Fixtures.screening(1, venue);
+        claims = new SeatClaims();
+    }
+
+    @Test
+    public void racingClaimsNeverShareASeat() throws Exception {
+        // The session that currently holds each seat, or -1.
+        AtomicIntegerArray owners = new AtomicIntegerArray(venue.getTotalSeats());
+        for (int seatID = 0; seatID < owners.length(); seatID++)
+            owners.set(seatID, -1);
+        AtomicInteger succeeded = new AtomicInteger(), failed = new AtomicInteger();
+        Map<Integer, List<int[]>> heldBy = new ConcurrentHashMap<>();
+
+        Fixtures.runConcurrently(THREADS, session -> {
+            Random random = new Random(session);
+            List<int[]> held = new ArrayList<>();
+            for (int i = 0; i < ATTEMPTS; i++) {
+                if (held.size() > 3 || (!held.isEmpty() && random.nextBoolean())) {
+                    // Give up a group of seats: stop owning them first, then release the claims.
+                    for (int seatID : held.remove(random.nextInt(held.size()))) {
+                        assertTrue(owners.compareAndSet(seatID, session, -1));
+                        claims.release(screening, DATE, seatID);
+                    }
+                    continue;
+                }
+                int[] seats = distinctSeats(random, 3);
+                int[] clashes = claims.claimAll(screening, DATE, seats);
+                if (clashes.length == 0) {
+                    // Nobody else may own any of the seats.
+                    for (int seatID : seats)
+                        assertTrue("Seat " + seatID + " was claimed twice", owners.compareAndSet(seatID, -1, session));
+                    held.add(seats);
+                    succeeded.incrementAndGet();
+                } else {
+                    // Only seats that were asked for can be reported, and any of them that this session holds must be.
+                    for (int seatID : clashes)
+                        assertTrue(contains(seats, seatID));
+                    for (int seatID : seats)
+                        if (owners.get(seatID) == session) assertTrue(contains(clashes, seatID));
+                    failed.incrementAndGet();
+                }
+            }
+            heldBy.put(session, held);
+        });
+
+        assertTrue("The sessions should both win and lose races", succeeded.get() > 0 && failed.get() > 0);
+
+        // Once everything has settled, exactly the held seats are claimed: failed attempts left nothing behind.
+        BitSet expected = new BitSet();
+        heldBy.values().forEach(groups -> groups.forEach(group -> Arrays.stream(group).forEach(expected::set)));
+        assertEquals(expected, claims.snapshot(screening, DATE));
+        for (int seatID = 0; seatID < owners.length(); seatID++)
+            assertEquals(expected.get(seatID), owners.get(seatID) != -1);
+    }
+
+    @Test
+    public void failedClaimReportsEveryClashAndRollsBack() {
+        // Seats in the first, second and last words are already taken.
+        assertTrue(claims.claim(screening, DATE, 3));
+        assertTrue(claims.claim(screening, DATE, 70));
+        assertTrue(claims.claim(screening, DATE, 199));
+
+        int[] clashes = claims.claimAll(screening, DATE, 1, 3, 64, 70, 130, 199);
+        assertArrayEquals(new int[]{3, 70, 199}, clashes);
+
+        // Nothing else may stay claimed, including seats in words before and after the first clash.
+        BitSet expected = new BitSet();
+        expected.set(3);
+        expected.set(70);
+        expected.set(199);
+        assertEquals(expected, claims.snapshot(screening, DATE));
+
+        // Once the seats are released, the same group can be claimed in full.
+        claims.release(screening, DATE, 3);
+        claims.release(screening, DATE, 70);
+        claims.release(screening, DATE, 199);
+        assertEquals(0, claims.claimAll(screening, DATE, 1, 3, 64, 70, 130, 199).length);
+        assertEquals(6, claims.snapshot(screening, DATE).cardinality());
+    }
+
+    private int[] distinctSeats(Random random, int count) {
+        Set<Integer> seats = new LinkedHashSet<>();
+        while (seats.size() < count)
+            seats.add(random.nextInt(venue.getTotalSeats()));
+        return seats.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static boolean contains(int[] seats, int seatID) {
+        for (int seat : seats)
+            if (seat == seatID) return true;
+        return false;
+    }
+}
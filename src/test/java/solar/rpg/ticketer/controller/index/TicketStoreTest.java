@@ -0,0 +1,64 @@
+package solar.rpg.ticketer.controller.index;
+
+import org.junit.Test;
+import solar.rpg.ticketer.Fixtures;
+import solar.rpg.ticketer.models.Screening;
+import solar.rpg.ticketer.models.Ticket;
+import solar.rpg.ticketer.models.Venue;
+
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Tests that the ticket store's own lock keeps every change, when several threads add and remove tickets at once
+ * without any outside locking.
+ *
+ * @author Joshua Skinner
+ * @version 1.0
+ * @since 0.1
+ */
+public class TicketStoreTest {
+
+    private static final int THREADS = 8, OPERATIONS = 20000;
+
+    @Test
+    public void ticketStoreKeepsEveryConcurrentAddAndRemove() throws Exception {
+        Venue venue = new Venue(2, 1, 100, 100);
+        Screening screening = Fixtures.screening(9, venue);
+        TicketStore store = new TicketStore(ID -> ID == screening.getID() ? screening : null);
+        Timestamp date = new Timestamp(60000L * 1000);
+        long minute = TicketStore.toMinute(date);
+
+        // Each thread books its own seats.
+        Map<Integer, Set<Integer>> seatsOf = new ConcurrentHashMap<>();
+        Fixtures.runConcurrently(THREADS, owner -> {
+            Random random = new Random(owner);
+            Set<Integer> mine = new HashSet<>();
+            for (int i = 0; i < OPERATIONS; i++) {
+                // Seat IDs are split between the threads, so threads never touch each other's rows.
+                int seatID = owner + THREADS * random.nextInt(venue.getTotalSeats() / THREADS);
+                if (random.nextInt(3) > 0) {
+                    assertEquals(!mine.contains(seatID), store.add(screening.getID(), minute, seatID, "user" + owner));
+                    mine.add(seatID);
+                } else {
+                    Ticket ticket = new Ticket(screening, date, venue.getSeatLabel(seatID), "user" + owner);
+                    assertEquals(mine.remove(seatID), store.remove(ticket));
+                }
+            }
+            seatsOf.put(owner, mine);
+        });
+
+        int expected = 0;
+        for (Map.Entry<Integer, Set<Integer>> entry : seatsOf.entrySet()) {
+            expected += entry.getValue().size();
+            assertEquals(entry.getValue().size(), store.countOfUsername("user" + entry.getKey()));
+            for (int seatID : entry.getValue())
+                assertNotEquals(-1, store.find(screening.getID(), minute, seatID));
+        }
+        assertEquals(expected, store.size());
+    }
+}